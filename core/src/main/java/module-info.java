@@ -0,0 +1,17 @@
+/**
+ * The progress monitors, their events and listeners, and the services built on
+ * them. This module depends on nothing but <code>java.base</code>, so using it
+ * loads no AWT or Swing classes. Where <code>jdk.jfr</code> is present, the
+ * monitors emit Java Flight Recorder events, which are disabled by default,
+ * and where <code>jdk.management</code> is present, they can account the CPU
+ * time and the bytes allocated by their threads.
+ * 
+ * @author Erich Schroeter
+ */
+module usr.erichschroeter.progressive {
+	requires static jdk.jfr;
+	requires static java.management;
+	requires static jdk.management;
+
+	exports usr.erichschroeter.progressive;
+}
@@ -0,0 +1,749 @@
+package usr.erichschroeter.progressive;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.ReferenceQueue;
+import java.util.Arrays;
+import java.util.EventListener;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Monitors the progress of some action. This class used in conjunction with
+ * the <code>ProgressDialog</code> of the Swing module can be used to notify an
+ * end user of the progress of an action being performed in the background.
+ * 
+ * @author Erich Schroeter
+ */
+public abstract class AbstractProgressMonitor implements ProgressMonitor {
+
+	/** The lifecycle states of a monitor. */
+	public enum State {
+		/** The monitor has not been started. */
+		NEW,
+		/** The monitor has been started and has not finished. */
+		RUNNING,
+		/** The progress has completed. */
+		COMPLETED,
+		/** The progress has been canceled. */
+		CANCELED
+	}
+
+	private static final AtomicLongFieldUpdater<AbstractProgressMonitor> LAST_PROGRESS = AtomicLongFieldUpdater
+			.newUpdater(AbstractProgressMonitor.class, "lastProgressNanos");
+	private static final AtomicIntegerFieldUpdater<AbstractProgressMonitor> PROGRESS_TIMERS = AtomicIntegerFieldUpdater
+			.newUpdater(AbstractProgressMonitor.class, "progressTimers");
+
+	private static final VarHandle VERSION;
+	static {
+		try {
+			VERSION = MethodHandles.lookup().findVarHandle(
+					AbstractProgressMonitor.class, "version", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/** The source of monitor ids. */
+	private static final AtomicLong IDS = new AtomicLong();
+
+	private static final ProgressListener[] NO_PROGRESS_LISTENERS = new ProgressListener[0];
+	private static final StallListener[] NO_STALL_LISTENERS = new StallListener[0];
+
+	/**
+	 * The listeners are copied on write, so firing an event neither locks nor
+	 * copies them.
+	 */
+	private volatile ProgressListener[] progressListeners = NO_PROGRESS_LISTENERS;
+	private volatile StallListener[] stallListeners = NO_STALL_LISTENERS;
+	/**
+	 * The references of this monitor's collected weak listeners, or
+	 * <code>null</code> until a weak listener is registered. The queue is only
+	 * reachable through this monitor, so it never keeps the monitor reachable.
+	 */
+	private volatile ReferenceQueue<EventListener> collectedListeners;
+	/** Number of milliseconds to wait before a dialog displays. */
+	private int milliSecondsToWait;
+	/** Identifies the monitor in logs and registries. */
+	private final long id = IDS.incrementAndGet();
+	/** The lifecycle state, only written when it changes. */
+	private volatile State state = State.NEW;
+	/** The number of services which need {@link #lastProgressNanos}. */
+	private volatile int progressTimers;
+	/** The {@link System#nanoTime()} of the latest progress. */
+	private volatile long lastProgressNanos;
+	/**
+	 * The version of the progress values, odd while they are being written.
+	 * Readers of a {@link #snapshot()} retry until they read the same even
+	 * version before and after reading the values.
+	 */
+	@SuppressWarnings("unused")
+	private long version;
+	/** The deadline from starting in nanoseconds, or 0 if none. */
+	private long deadlineNanos;
+	/** The idle timeout in nanoseconds, or 0 if none. */
+	private long idleTimeoutNanos;
+	/** Accounts the resources used, or <code>null</code> if not enabled. */
+	private volatile ResourceAccount resourceAccount;
+	/** The armed timeouts, guarded by this monitor. */
+	private Timeout deadline;
+	private Timeout idleTimeout;
+
+	/**
+	 * Constructs a default <code>ProgressMonitor</code> specifying negative
+	 * values for the progress, which means this monitor is indeterminate.
+	 * 
+	 * @param milliSecondsToWait
+	 *            time to wait before dialog is displayed
+	 */
+	public AbstractProgressMonitor(int milliSecondsToWait) {
+		this.milliSecondsToWait = milliSecondsToWait;
+	}
+
+	/**
+	 * Returns the id of this monitor, unique within the JVM, which identifies
+	 * it in logs and registries.
+	 * 
+	 * @return the monitor's id
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the number of milliseconds to wait before displaying a progress
+	 * dialog.
+	 * 
+	 * @return number of milliseconds to wait before displaying dialog
+	 */
+	public int getMilliSecondsToWait() {
+		return milliSecondsToWait;
+	}
+
+	/**
+	 * Adds the progress listener to receive status events on the progress.
+	 * 
+	 * @param listener
+	 *            the progress listener to add
+	 */
+	public synchronized void addProgressListener(ProgressListener listener) {
+		if (listener == null) {
+			return;
+		}
+		progressListeners = added(progressListeners, listener);
+	}
+
+	/**
+	 * Removes the progress listener from the list to receive status events on
+	 * the progress. A listener registered with a {@link ListenerRegistration}
+	 * is removed by closing the registration instead.
+	 * 
+	 * @param listener
+	 *            the progress listener to remove
+	 */
+	public synchronized void removeProgressListener(ProgressListener listener) {
+		if (listener == null) {
+			return;
+		}
+		progressListeners = removed(progressListeners, listener);
+	}
+
+	/**
+	 * Adds the stall listener to receive events when a {@link StallWatchdog}
+	 * watching this monitor detects it stalled or resumed.
+	 * 
+	 * @param listener
+	 *            the stall listener to add
+	 */
+	public synchronized void addStallListener(StallListener listener) {
+		if (listener == null) {
+			return;
+		}
+		stallListeners = added(stallListeners, listener);
+	}
+
+	/**
+	 * Removes the stall listener from the list to receive stall events.
+	 * 
+	 * @param listener
+	 *            the stall listener to remove
+	 */
+	public synchronized void removeStallListener(StallListener listener) {
+		if (listener == null) {
+			return;
+		}
+		stallListeners = removed(stallListeners, listener);
+	}
+
+	/**
+	 * Sets whether to account the CPU time and the bytes allocated by the
+	 * threads working for this monitor, available from
+	 * {@link #getResourceUsage()}, status events and snapshots. Enabling it
+	 * starts the accounting afresh, and has no effect if
+	 * {@link ResourceUsage#isSupported() not supported}.
+	 * <p>
+	 * A thread is accounted from when it calls {@link #beginWork()}, or else
+	 * from its first update of this monitor, until it calls
+	 * {@link #endWork()} or finishes this monitor. The thread starting this
+	 * monitor begins working for it, and the workers of the library's runners,
+	 * pipelines and tree walkers begin and end working for the monitor they
+	 * report to. Updates from the library's shared background thread are not
+	 * accounted. A thread updating the monitor often reads its counters at
+	 * most once a millisecond, so accounting is cheap enough for long running
+	 * tasks.
+	 * 
+	 * @param enabled
+	 *            <code>true</code> to account, else <code>false</code>
+	 */
+	public void setResourceAccounting(boolean enabled) {
+		resourceAccount = enabled && ResourceUsage.isSupported() ? new ResourceAccount()
+				: null;
+	}
+
+	/**
+	 * Begins accounting the current thread as working for this monitor, such
+	 * as a pooled thread taking a chunk of its work.
+	 * 
+	 * @see #setResourceAccounting(boolean)
+	 */
+	public void beginWork() {
+		ResourceAccount account = resourceAccount;
+		if (account != null) {
+			account.begin();
+		}
+	}
+
+	/**
+	 * Ends accounting the current thread as working for this monitor, such as
+	 * a pooled thread finishing a chunk of its work.
+	 * 
+	 * @see #setResourceAccounting(boolean)
+	 */
+	public void endWork() {
+		ResourceAccount account = resourceAccount;
+		if (account != null) {
+			account.end();
+		}
+	}
+
+	/**
+	 * Reads the counters of the current thread working for this monitor, at
+	 * most once per {@link ResourceAccount#MIN_SAMPLE_NANOS}, for workers
+	 * which do not update the monitor themselves.
+	 */
+	void sampleWork() {
+		ResourceAccount account = resourceAccount;
+		if (account != null) {
+			account.sample(false);
+		}
+	}
+
+	/**
+	 * Returns the CPU time and the bytes allocated by the threads working for
+	 * this monitor so far.
+	 * 
+	 * @return the resource usage, or <code>null</code> if not accounting
+	 * @see #setResourceAccounting(boolean)
+	 */
+	public ResourceUsage getResourceUsage() {
+		ResourceAccount account = resourceAccount;
+		if (account == null) {
+			return null;
+		}
+		return new ResourceUsage(account.getCpuNanos(),
+				account.getAllocatedBytes(), getProgressUnits());
+	}
+
+	/**
+	 * Returns the units of progress made, which resource usage is divided by.
+	 * An indeterminate monitor has none.
+	 */
+	long getProgressUnits() {
+		return 0;
+	}
+
+	/**
+	 * Sets a deadline, after which this monitor is canceled if it has not
+	 * finished. The deadline runs from when the monitor is started, or from
+	 * now if it is running. The monitor is canceled on the library's shared
+	 * background thread, with a status text giving the reason, so its cancel
+	 * listeners must return quickly.
+	 * 
+	 * @param timeout
+	 *            the time the monitor may run, or 0 for no deadline
+	 * @param unit
+	 *            the unit of <code>timeout</code>
+	 */
+	public synchronized void setDeadline(long timeout, TimeUnit unit) {
+		deadlineNanos = unit.toNanos(timeout);
+		if (deadline != null) {
+			deadline.disarm();
+			deadline = null;
+		}
+		if (state == State.RUNNING && deadlineNanos > 0) {
+			deadline = new Timeout(this, deadlineNanos, false);
+			deadline.arm();
+		}
+	}
+
+	/**
+	 * Sets an idle timeout, after which this monitor is canceled if it has
+	 * made no progress. Progress is any status event, and only records a
+	 * timestamp, so a timeout costs nothing on each update. The monitor is
+	 * canceled on the library's shared background thread, with a status text
+	 * giving the reason, so its cancel listeners must return quickly.
+	 * 
+	 * @param timeout
+	 *            the time the monitor may go without progress, or 0 for no
+	 *            idle timeout
+	 * @param unit
+	 *            the unit of <code>timeout</code>
+	 */
+	public synchronized void setIdleTimeout(long timeout, TimeUnit unit) {
+		idleTimeoutNanos = unit.toNanos(timeout);
+		if (idleTimeout != null) {
+			idleTimeout.disarm();
+			idleTimeout = null;
+		}
+		if (state == State.RUNNING && idleTimeoutNanos > 0) {
+			idleTimeout = new Timeout(this, idleTimeoutNanos, true);
+			idleTimeout.arm();
+		}
+	}
+
+	/** Arms the timeouts which are set, called whenever started. */
+	private synchronized void armTimeouts() {
+		if (deadline != null) {
+			deadline.disarm();
+			deadline = null;
+		}
+		if (idleTimeout != null) {
+			idleTimeout.disarm();
+			idleTimeout = null;
+		}
+		if (deadlineNanos > 0) {
+			deadline = new Timeout(this, deadlineNanos, false);
+			deadline.arm();
+		}
+		if (idleTimeoutNanos > 0) {
+			idleTimeout = new Timeout(this, idleTimeoutNanos, true);
+			idleTimeout.arm();
+		}
+	}
+
+	/**
+	 * Registers the progress listener until this monitor completes or is
+	 * canceled. The listener receives the completed or canceled event and is
+	 * then detached, unless the returned handle is closed first.
+	 * 
+	 * @param listener
+	 *            the progress listener to register
+	 * @return the handle detaching the listener
+	 */
+	public ListenerRegistration registerProgressListener(
+			ProgressListener listener) {
+		if (listener == null) {
+			throw new NullPointerException("listener");
+		}
+		Registration registration = Registration.untilFinished(this, listener);
+		addProgressListener(registration);
+		return registration;
+	}
+
+	/**
+	 * Registers a {@link ProgressListener}, a {@link StallListener}, or a
+	 * listener implementing both, holding it only weakly. The listener is
+	 * detached once it is garbage collected or the returned handle is closed,
+	 * so a monitor outliving its listeners never keeps them reachable.
+	 * 
+	 * @param listener
+	 *            the progress or stall listener to register
+	 * @return the handle detaching the listener
+	 * @throws IllegalArgumentException
+	 *             if the listener is neither a progress nor a stall listener
+	 */
+	public ListenerRegistration registerWeakListener(EventListener listener) {
+		boolean progress = listener instanceof ProgressListener;
+		boolean stall = listener instanceof StallListener;
+		if (!progress && !stall) {
+			throw new IllegalArgumentException(
+					"listener must be a ProgressListener or StallListener");
+		}
+		Registration registration = Registration.weak(this, listener);
+		if (progress) {
+			addProgressListener(registration);
+		}
+		if (stall) {
+			addStallListener(registration);
+		}
+		return registration;
+	}
+
+	/** Returns the queue of this monitor's collected weak listeners. */
+	synchronized ReferenceQueue<EventListener> collectedListeners() {
+		if (collectedListeners == null) {
+			collectedListeners = new ReferenceQueue<EventListener>();
+		}
+		return collectedListeners;
+	}
+
+	/** Closes the registrations of this monitor's collected weak listeners. */
+	void expungeCollectedListeners() {
+		ReferenceQueue<EventListener> queue = collectedListeners;
+		if (queue != null) {
+			Registration.expunge(queue);
+		}
+	}
+
+	/** Removes the registration from both listener lists. */
+	synchronized void removeRegistration(Registration registration) {
+		progressListeners = removed(progressListeners, registration);
+		stallListeners = removed(stallListeners, registration);
+	}
+
+	/** Returns a copy of <code>listeners</code> with the listener appended. */
+	private static <T> T[] added(T[] listeners, T listener) {
+		T[] copy = Arrays.copyOf(listeners, listeners.length + 1);
+		copy[listeners.length] = listener;
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of <code>listeners</code> without the last occurrence of
+	 * the listener, or <code>listeners</code> if it does not contain it.
+	 */
+	private static <T> T[] removed(T[] listeners, T listener) {
+		for (int i = listeners.length - 1; i >= 0; i--) {
+			if (listener.equals(listeners[i])) {
+				T[] copy = Arrays.copyOf(listeners, listeners.length - 1);
+				System.arraycopy(listeners, i + 1, copy, i, copy.length - i);
+				return copy;
+			}
+		}
+		return listeners;
+	}
+
+	/**
+	 * Returns the lifecycle state of this monitor. The state is derived from
+	 * the events fired: any status event means the monitor is running, a
+	 * completed status event means it has completed, and a canceled event
+	 * means it has been canceled.
+	 * 
+	 * @return the monitor's state
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Returns whether this monitor has been canceled. This is a cheap read
+	 * which workers may poll to stop promptly.
+	 * 
+	 * @return <code>true</code> if canceled, else <code>false</code>
+	 */
+	public boolean isCanceled() {
+		return state == State.CANCELED;
+	}
+
+	/**
+	 * Returns whether this monitor has completed or been canceled.
+	 * 
+	 * @return <code>true</code> if finished, else <code>false</code>
+	 */
+	public boolean isFinished() {
+		State state = this.state;
+		return state == State.COMPLETED || state == State.CANCELED;
+	}
+
+	/**
+	 * Returns a consistent snapshot of this monitor's progress. This never
+	 * blocks, and never slows down the thread updating the monitor.
+	 * 
+	 * @return a new snapshot of the progress
+	 * @see #snapshot(ProgressSnapshot)
+	 */
+	public ProgressSnapshot snapshot() {
+		return snapshot(new ProgressSnapshot());
+	}
+
+	/**
+	 * Fills <code>snapshot</code> with a consistent view of this monitor's
+	 * progress without allocating. This never blocks, and never slows down
+	 * the thread updating the monitor.
+	 * 
+	 * @param snapshot
+	 *            the snapshot to fill
+	 * @return <code>snapshot</code>
+	 */
+	public ProgressSnapshot snapshot(ProgressSnapshot snapshot) {
+		for (;;) {
+			long before = (long) VERSION.getAcquire(this);
+			if ((before & 1) == 0) {
+				snapshot.version = before;
+				snapshot.state = state;
+				fillSnapshot(snapshot);
+				ResourceAccount account = resourceAccount;
+				snapshot.accounted = account != null;
+				snapshot.cpuNanos = account == null ? 0 : account
+						.getCpuNanos();
+				snapshot.allocatedBytes = account == null ? 0 : account
+						.getAllocatedBytes();
+				// the values must be read before the version is read again
+				VarHandle.loadLoadFence();
+				if ((long) VERSION.getOpaque(this) == before) {
+					return snapshot;
+				}
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Returns a copy of a status event fired by this monitor, read as
+	 * consistently as a snapshot, so its values are never torn by a
+	 * concurrent update.
+	 * 
+	 * @see StatusEvent#copy()
+	 */
+	StatusEvent copyEvent(StatusEvent e) {
+		for (;;) {
+			long before = (long) VERSION.getAcquire(this);
+			if ((before & 1) == 0) {
+				StatusEvent copy = e.copy();
+				// the values must be read before the version is read again
+				VarHandle.loadLoadFence();
+				if ((long) VERSION.getOpaque(this) == before) {
+					return copy;
+				}
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Copies the progress values into the snapshot, while a snapshot is being
+	 * read. Monitors without progress values leave the snapshot
+	 * indeterminate.
+	 */
+	void fillSnapshot(ProgressSnapshot snapshot) {
+		snapshot.determinate = false;
+		snapshot.min = 0;
+		snapshot.max = 0;
+		snapshot.current = 0;
+		snapshot.totalKnown = false;
+		snapshot.text = null;
+	}
+
+	/**
+	 * Begins writing the values read by a snapshot, which must be followed by
+	 * {@link #endWrite(long)} in a <code>finally</code> block. Concurrent
+	 * writers wait for each other, and writes must not be nested.
+	 * 
+	 * @return the stamp to pass to {@link #endWrite(long)}
+	 */
+	long beginWrite() {
+		for (;;) {
+			long current = (long) VERSION.getOpaque(this);
+			if ((current & 1) == 0
+					&& VERSION.compareAndSet(this, current, current + 1)) {
+				return current + 1;
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	/** Ends writing the values read by a snapshot. */
+	void endWrite(long stamp) {
+		VERSION.setRelease(this, stamp + 1);
+	}
+
+	/** Marks this monitor as running, called whenever it is started. */
+	void started() {
+		long stamp = beginWrite();
+		try {
+			state = State.RUNNING;
+		} finally {
+			endWrite(stamp);
+		}
+		if (JfrSupport.enabled()) {
+			JfrEvents.started(this);
+		}
+		ResourceAccount account = resourceAccount;
+		if (account != null) {
+			account.begin();
+		}
+		armTimeouts();
+	}
+
+	/**
+	 * Moves to the state following the event, called while writing. Only
+	 * starting again leaves the canceled state.
+	 */
+	void transition(StatusEvent e) {
+		State next = e.isCompleted() ? State.COMPLETED : State.RUNNING;
+		State current = state;
+		if (current != next && current != State.CANCELED) {
+			state = next;
+			if (next == State.COMPLETED && JfrSupport.enabled()) {
+				JfrEvents.completed(this);
+			}
+		}
+	}
+
+	/**
+	 * Starts recording the time of the latest progress, for services such as
+	 * the {@link StallWatchdog}. Each call must be paired with a call to
+	 * {@link #releaseProgressTime()}.
+	 */
+	void retainProgressTime() {
+		LAST_PROGRESS.set(this, System.nanoTime());
+		PROGRESS_TIMERS.incrementAndGet(this);
+	}
+
+	/** Stops recording the time of the latest progress. */
+	void releaseProgressTime() {
+		PROGRESS_TIMERS.decrementAndGet(this);
+	}
+
+	/**
+	 * Returns the {@link System#nanoTime()} of the latest status event, only
+	 * recorded while retained.
+	 * 
+	 * @see #retainProgressTime()
+	 */
+	long getLastProgressNanos() {
+		return lastProgressNanos;
+	}
+
+	/**
+	 * Starts the progress monitor.
+	 * <p>
+	 * This is equivalent to <code>start(null)</code>.
+	 * 
+	 * @see #start(String)
+	 */
+	@Override
+	public void start() {
+		start(null);
+	}
+
+	/**
+	 * Starts the progress monitor also specifying a status message and then
+	 * fires a status event.
+	 * 
+	 * @param status
+	 *            the message to display to the user
+	 */
+	public void start(String status) {
+		started();
+		fireProgressEvent(new StatusEvent(this, status));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This is equivalent to <code>cancel(null)</code>.
+	 * 
+	 * @see #cancel(String)
+	 */
+	@Override
+	public void cancel() {
+		cancel(null);
+	}
+
+	/**
+	 * Cancels monitoring the progress by firing a progress canceled event and
+	 * specifies a status message.
+	 * 
+	 * @param status
+	 *            the status message for canceling
+	 */
+	public void cancel(String status) {
+		fireProgressCanceledEvent(new StatusEvent(this, status));
+	}
+
+	/** Fires a status changed event. */
+	protected void fireProgressEvent(StatusEvent e) {
+		if (e == null) {
+			return;
+		}
+		if (progressTimers > 0) {
+			LAST_PROGRESS.lazySet(this, System.nanoTime());
+		}
+		// the monitors transition while writing their values, this covers
+		// events fired by other subclasses
+		State current = state;
+		if (current != State.CANCELED
+				&& current != (e.isCompleted() ? State.COMPLETED
+						: State.RUNNING)) {
+			long stamp = beginWrite();
+			try {
+				transition(e);
+			} finally {
+				endWrite(stamp);
+			}
+		}
+		expungeCollectedListeners();
+		ResourceAccount account = resourceAccount;
+		if (account != null) {
+			if (e.isCompleted()) {
+				account.end();
+			} else {
+				account.sample(false);
+			}
+		}
+		ProgressListener[] listeners = progressListeners;
+		Object dispatch = JfrSupport.enabled() ? JfrEvents.beginDispatch()
+				: null;
+		for (ProgressListener l : listeners) {
+			l.statusChanged(e);
+		}
+		if (dispatch != null) {
+			JfrEvents.endDispatch(dispatch, this, listeners.length);
+		}
+	}
+
+	/** Fires a progress canceled status event. */
+	protected void fireProgressCanceledEvent(StatusEvent e) {
+		if (e == null) {
+			return;
+		}
+		long stamp = beginWrite();
+		try {
+			state = State.CANCELED;
+		} finally {
+			endWrite(stamp);
+		}
+		expungeCollectedListeners();
+		ResourceAccount account = resourceAccount;
+		if (account != null) {
+			account.end();
+		}
+		if (JfrSupport.enabled()) {
+			JfrEvents.canceled(this, e);
+		}
+		for (ProgressListener l : progressListeners) {
+			l.canceled(e);
+		}
+	}
+
+	/** Fires a stalled or resumed stall event. */
+	protected void fireStallEvent(StallEvent e) {
+		if (e == null) {
+			return;
+		}
+		expungeCollectedListeners();
+		if (JfrSupport.enabled()) {
+			JfrEvents.stalled(this, e);
+		}
+		for (StallListener l : stallListeners) {
+			if (e.isStalled()) {
+				l.stalled(e);
+			} else {
+				l.resumed(e);
+			}
+		}
+	}
+}
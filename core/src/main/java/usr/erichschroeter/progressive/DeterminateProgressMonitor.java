@@ -0,0 +1,469 @@
+package usr.erichschroeter.progressive;
+
+import java.util.function.Supplier;
+
+/**
+ * Monitors the progress of some action. This class used in conjunction with
+ * the <code>ProgressDialog</code> of the Swing module can be used to notify an
+ * end user of the progress of an action being performed in the background.
+ * 
+ * @author Erich Schroeter
+ */
+public class DeterminateProgressMonitor extends AbstractProgressMonitor {
+
+	private DeterminateStatusEvent statusEvent;
+	/** Records the time between updates of the current value (optional). */
+	private volatile LatencyHistogram latencyHistogram;
+	/** The {@link System#nanoTime()} of the previous update. */
+	private long previousUpdateNanos;
+	/** Measures the latency of displaying updates (optional). */
+	private volatile DisplayLatencyProbe displayLatencyProbe;
+	/** The {@link System#nanoTime()} of the latest update, while probed. */
+	private volatile long updateNanos;
+
+	/**
+	 * Constructs a default <code>ProgressMonitor</code> specifying 0 for
+	 * default progress values.
+	 * 
+	 * @param milliSecondsToWait
+	 *            time to wait before dialog is displayed
+	 * @see #DeterminateProgressMonitor(int, int, int, int)
+	 */
+	public DeterminateProgressMonitor(int milliSecondsToWait) {
+		this(0, 0, 0, milliSecondsToWait);
+	}
+
+	/**
+	 * Constructs a <code>ProgressMonitor</code> specifying the total amount of
+	 * progress to monitor and 0 milliseconds to wait before displaying a
+	 * dialog.
+	 * 
+	 * @param min
+	 *            the minimum boundary for the status value
+	 * @param max
+	 *            the maximum boundary for the status value
+	 * @param current
+	 *            the current status value
+	 * @see #DeterminateProgressMonitor(int, int, int, int)
+	 */
+	public DeterminateProgressMonitor(int min, int max, int current) {
+		this(min, max, current, 0);
+	}
+
+	/**
+	 * Constructs a <code>ProgressMonitor</code> specifying the total amount of
+	 * progress to monitor and the milliseconds to wait before displaying a
+	 * dialog.
+	 * 
+	 * @param min
+	 *            the minimum boundary for the status value
+	 * @param max
+	 *            the maximum boundary for the status value
+	 * @param current
+	 *            the current status value
+	 * @param milliSecondsToWait
+	 *            time to wait before dialog is displayed
+	 * @see AbstractProgressMonitor#AbstractProgressMonitor(int)
+	 */
+	public DeterminateProgressMonitor(int min, int max, int current,
+			int milliSecondsToWait) {
+		super(milliSecondsToWait);
+		this.statusEvent = new DeterminateStatusEvent(this, min, max, current);
+	}
+
+	/**
+	 * Constructs a <code>ProgressMonitor</code> which is new and whose total
+	 * may not be known yet, without firing an event as
+	 * {@link #setTotalKnown(boolean)} would.
+	 */
+	DeterminateProgressMonitor(int min, int max, int current,
+			boolean totalKnown) {
+		this(min, max, current, 0);
+		statusEvent.totalKnown = totalKnown;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The event fired is an {@link DeterminateStatusEvent}.
+	 */
+	@Override
+	public void start(String status) {
+		started();
+		previousUpdateNanos = System.nanoTime();
+		fireProgressEvent(newEvent(status));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The event fired is an {@link DeterminateStatusEvent}.
+	 */
+	@Override
+	public void cancel(String status) {
+		fireProgressCanceledEvent(newEvent(status));
+	}
+
+	/**
+	 * Returns the minimum progress value. This is often the value at the start
+	 * of monitoring.
+	 * 
+	 * @return the minimum progress value
+	 */
+	public int getMin() {
+		return statusEvent.min;
+	}
+
+	/**
+	 * Returns the maximum progress value. Once the current progress value
+	 * reaches this value, the progress monitor has completed.
+	 * 
+	 * @return the maximum progress value
+	 */
+	public int getMax() {
+		return statusEvent.max;
+	}
+
+	/**
+	 * Sets the maximum progress value and fires a status event.
+	 * 
+	 * @param max
+	 *            the maximum progress value
+	 */
+	public void setMax(int max) {
+		long stamp = beginWrite();
+		try {
+			statusEvent.max = max;
+			transition(statusEvent);
+		} finally {
+			endWrite(stamp);
+		}
+		fireProgressEvent(statusEvent);
+	}
+
+	/**
+	 * Raises the maximum progress value by <code>delta</code> and fires a
+	 * status event. Unlike {@link #setMax(int)}, this is safe while other
+	 * threads are updating the progress, for work which is discovered while it
+	 * is being processed.
+	 * 
+	 * @param delta
+	 *            the progress discovered
+	 * @see #setTotalKnown(boolean)
+	 */
+	public void growMax(int delta) {
+		long stamp = beginWrite();
+		try {
+			statusEvent.max += delta;
+			transition(statusEvent);
+		} finally {
+			endWrite(stamp);
+		}
+		fireProgressEvent(statusEvent);
+	}
+
+	/**
+	 * Returns whether the maximum progress value is the final total.
+	 * 
+	 * @return <code>true</code> if the total is known, else <code>false</code>
+	 * @see #setTotalKnown(boolean)
+	 */
+	public boolean isTotalKnown() {
+		return statusEvent.totalKnown;
+	}
+
+	/**
+	 * Sets whether the maximum progress value is the final total, and fires a
+	 * status event. While the total is not known the maximum is the work
+	 * discovered so far, which may {@link #growMax(int) grow}, and the monitor
+	 * does not complete even if the current value reaches it. The total is
+	 * known by default.
+	 * 
+	 * @param totalKnown
+	 *            <code>true</code> once the total is known, else
+	 *            <code>false</code>
+	 */
+	public void setTotalKnown(boolean totalKnown) {
+		long stamp = beginWrite();
+		try {
+			statusEvent.totalKnown = totalKnown;
+			transition(statusEvent);
+		} finally {
+			endWrite(stamp);
+		}
+		fireProgressEvent(statusEvent);
+	}
+
+	/**
+	 * Returns the current progress value.
+	 * 
+	 * @return the current progress value
+	 */
+	public int getCurrent() {
+		return statusEvent.current;
+	}
+
+	/**
+	 * Sets the current progress and fires a status event.
+	 * 
+	 * @param current
+	 *            the current progress value
+	 */
+	public void setCurrent(int current) {
+		setCurrent(current, null);
+	}
+
+	/**
+	 * Sets the current progress and the status text and fires a status event.
+	 * The text is information often useful to display to the end user to notify
+	 * them on what is occurring in the background.
+	 * 
+	 * @param current
+	 *            the current progress value
+	 * @param status
+	 *            the status text
+	 */
+	public void setCurrent(int current, String status) {
+		long stamp = beginWrite();
+		try {
+			updateCurrent(current);
+			statusEvent.setText(status);
+			transition(statusEvent);
+		} finally {
+			endWrite(stamp);
+		}
+		fireProgressEvent(statusEvent);
+	}
+
+	/**
+	 * Sets the current progress and a status text which is only built if a
+	 * listener reads it, and fires a status event. This avoids building text
+	 * for updates which are never displayed.
+	 * 
+	 * @param current
+	 *            the current progress value
+	 * @param status
+	 *            supplies the status text
+	 * @see StatusEvent#getText()
+	 */
+	public void setCurrentLazy(int current, Supplier<String> status) {
+		long stamp = beginWrite();
+		try {
+			updateCurrent(current);
+			statusEvent.setText(status);
+			transition(statusEvent);
+		} finally {
+			endWrite(stamp);
+		}
+		fireProgressEvent(statusEvent);
+	}
+
+	/**
+	 * Sets the current progress and a status text which is only formatted if
+	 * a listener reads it, and fires a status event. The arguments must not be
+	 * modified after calling this method.
+	 * 
+	 * @param current
+	 *            the current progress value
+	 * @param format
+	 *            the status text format string
+	 * @param args
+	 *            the arguments referenced by the format string
+	 * @see String#format(String, Object...)
+	 * @see StatusEvent#getText()
+	 */
+	public void setCurrent(int current, String format, Object... args) {
+		long stamp = beginWrite();
+		try {
+			updateCurrent(current);
+			statusEvent.setText(format, args);
+			transition(statusEvent);
+		} finally {
+			endWrite(stamp);
+		}
+		fireProgressEvent(statusEvent);
+	}
+
+	/**
+	 * Sets the histogram to record the time between updates of the current
+	 * value in, which for a monitor updated once per item is the latency of
+	 * each item. Recording is allocation free.
+	 * 
+	 * @param latencyHistogram
+	 *            the histogram to record in, or <code>null</code> to stop
+	 *            recording
+	 */
+	public void setLatencyHistogram(LatencyHistogram latencyHistogram) {
+		this.latencyHistogram = latencyHistogram;
+	}
+
+	/**
+	 * Returns the histogram the time between updates of the current value is
+	 * recorded in.
+	 * 
+	 * @return the latency histogram, or <code>null</code> if not recording
+	 */
+	public LatencyHistogram getLatencyHistogram() {
+		return latencyHistogram;
+	}
+
+	/**
+	 * Sets the probe measuring the latency from updating the current value to
+	 * a display, such as a <code>ProgressDialog</code>, displaying it. While a
+	 * probe is set, every update of the current value is timestamped.
+	 * 
+	 * @param displayLatencyProbe
+	 *            the probe, or <code>null</code> to stop timestamping
+	 * @see #getUpdateNanos()
+	 */
+	public void setDisplayLatencyProbe(DisplayLatencyProbe displayLatencyProbe) {
+		this.displayLatencyProbe = displayLatencyProbe;
+		if (displayLatencyProbe == null) {
+			updateNanos = 0;
+		}
+	}
+
+	/**
+	 * Returns the probe measuring the latency of displaying updates.
+	 * 
+	 * @return the probe, or <code>null</code> if not measuring
+	 */
+	public DisplayLatencyProbe getDisplayLatencyProbe() {
+		return displayLatencyProbe;
+	}
+
+	/**
+	 * Returns the {@link System#nanoTime()} of the latest update of the
+	 * current value, which a display passes to
+	 * {@link DisplayLatencyProbe#recordDisplayed(long)} once it displays the
+	 * value. A display should read the time before reading the value, so a
+	 * newer value is never credited to an older update.
+	 * 
+	 * @return the time of the latest update, or 0 if no display latency probe
+	 *         is set
+	 */
+	public long getUpdateNanos() {
+		return updateNanos;
+	}
+
+	/**
+	 * Sets the current value, recording the time since the previous one and
+	 * the time of the update.
+	 */
+	private void updateCurrent(int current) {
+		statusEvent.current = current;
+		LatencyHistogram histogram = latencyHistogram;
+		boolean probed = displayLatencyProbe != null;
+		if (histogram != null || probed) {
+			long now = System.nanoTime();
+			if (probed) {
+				updateNanos = now;
+			}
+			if (histogram != null) {
+				long previous = previousUpdateNanos;
+				previousUpdateNanos = now;
+				if (previous != 0) {
+					histogram.record(now - previous);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the text of the status event. This is information often useful to
+	 * display to the end user to notify them on what is occurring in the
+	 * background.
+	 * 
+	 * @return the status text
+	 */
+	public String getStatusText() {
+		return statusEvent.getText();
+	}
+
+	/**
+	 * Sets the status text and fires a status event. This is information often
+	 * useful to display to the end user to notify them on what is occurring in
+	 * the background.
+	 * 
+	 * @param status
+	 *            the status text
+	 */
+	public void updateStatusText(String status) {
+		long stamp = beginWrite();
+		try {
+			statusEvent.setText(status);
+		} finally {
+			endWrite(stamp);
+		}
+		fireStatusTextEvent();
+	}
+
+	/**
+	 * Sets a status text which is only built if a listener reads it, and fires
+	 * a status event.
+	 * 
+	 * @param status
+	 *            supplies the status text
+	 * @see #updateStatusText(String)
+	 */
+	public void updateStatusTextLazy(Supplier<String> status) {
+		long stamp = beginWrite();
+		try {
+			statusEvent.setText(status);
+		} finally {
+			endWrite(stamp);
+		}
+		fireStatusTextEvent();
+	}
+
+	/**
+	 * Sets a status text which is only formatted if a listener reads it, and
+	 * fires a status event. The arguments must not be modified after calling
+	 * this method.
+	 * 
+	 * @param format
+	 *            the status text format string
+	 * @param args
+	 *            the arguments referenced by the format string
+	 * @see #updateStatusText(String)
+	 */
+	public void updateStatusText(String format, Object... args) {
+		long stamp = beginWrite();
+		try {
+			statusEvent.setText(format, args);
+		} finally {
+			endWrite(stamp);
+		}
+		fireStatusTextEvent();
+	}
+
+	@Override
+	long getProgressUnits() {
+		return (long) statusEvent.current - statusEvent.min;
+	}
+
+	@Override
+	void fillSnapshot(ProgressSnapshot snapshot) {
+		snapshot.determinate = true;
+		snapshot.min = statusEvent.min;
+		snapshot.max = statusEvent.max;
+		snapshot.current = statusEvent.current;
+		snapshot.totalKnown = statusEvent.totalKnown;
+		snapshot.text = statusEvent.text;
+	}
+
+	/** Fires a status event carrying the current status text. */
+	private void fireStatusTextEvent() {
+		DeterminateStatusEvent e = newEvent(null);
+		e.text = statusEvent.text;
+		fireProgressEvent(e);
+	}
+
+	/** Returns a new event of the current progress values. */
+	private DeterminateStatusEvent newEvent(String status) {
+		DeterminateStatusEvent e = new DeterminateStatusEvent(this,
+				statusEvent.min, statusEvent.max, statusEvent.current, status);
+		e.totalKnown = statusEvent.totalKnown;
+		return e;
+	}
+}
@@ -13,6 +13,7 @@ public class DeterminateStatusEvent extends StatusEvent {
 	int min;
 	int max;
 	int current;
+	boolean totalKnown = true;
 
 	/**
 	 * Constructs a <code>StatusEvent</code> specifying the current status value
@@ -80,15 +81,40 @@ public class DeterminateStatusEvent extends StatusEvent {
 		return current;
 	}
 
+	/**
+	 * Returns whether the maximum progress value is the final total. While
+	 * work is still being discovered the maximum may grow, and the progress is
+	 * never completed.
+	 * 
+	 * @return <code>true</code> if the total is known, else <code>false</code>
+	 * @see DeterminateProgressMonitor#setTotalKnown(boolean)
+	 */
+	public boolean isTotalKnown() {
+		return totalKnown;
+	}
+
+	@Override
+	StatusEvent copy() {
+		if (getClass() != DeterminateStatusEvent.class) {
+			return this;
+		}
+		DeterminateStatusEvent e = new DeterminateStatusEvent(getSource(), min,
+				max, current);
+		e.text = text;
+		e.totalKnown = totalKnown;
+		return e;
+	}
+
 	/**
 	 * Returns <code>true</code> when the current progress value is greater than
-	 * or equal to the max progress value.
+	 * or equal to the max progress value and the total is known.
 	 * 
 	 * @return <code>true</code> when <code>getCurrent()</code> return value
 	 *         &gt;= <code>getMax()</code> return value, else <code>false</code>
+	 * @see #isTotalKnown()
 	 */
 	@Override
 	public boolean isCompleted() {
-		return current >= max;
+		return totalKnown && current >= max;
 	}
 }
@@ -0,0 +1,177 @@
+package usr.erichschroeter.progressive;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how far a display of a monitor lags behind the monitor: the
+ * latency from updating the current value of a
+ * {@link DeterminateProgressMonitor} to the value being displayed, and the
+ * delay of the display's updates in the queue of its UI thread.
+ * <p>
+ * The latencies are kept in a rolling window, so they describe the recent
+ * behavior rather than the whole run: each histogram returned covers the
+ * latest one to two windows. Recording is lock free and allocation free, and
+ * a monitor with a probe only records a timestamp per update, so a probe can
+ * be left enabled in production.
+ *
+ * <pre>
+ * monitor.setDisplayLatencyProbe(new DisplayLatencyProbe());
+ * ...
+ * System.out.println(monitor.getDisplayLatencyProbe());
+ * </pre>
+ *
+ * @author Erich Schroeter
+ * @see DeterminateProgressMonitor#setDisplayLatencyProbe(DisplayLatencyProbe)
+ */
+public class DisplayLatencyProbe {
+
+	/** The default milliseconds of each window of latencies. */
+	public static final long DEFAULT_WINDOW_MILLIS = 10000;
+
+	private final long windowNanos;
+	private final Window display;
+	private final Window queue;
+
+	/**
+	 * Constructs a <code>DisplayLatencyProbe</code> with windows of
+	 * {@link #DEFAULT_WINDOW_MILLIS} milliseconds.
+	 */
+	public DisplayLatencyProbe() {
+		this(DEFAULT_WINDOW_MILLIS);
+	}
+
+	/**
+	 * Constructs a <code>DisplayLatencyProbe</code> specifying the length of
+	 * its windows.
+	 *
+	 * @param windowMillis
+	 *            the milliseconds of each window of latencies
+	 */
+	public DisplayLatencyProbe(long windowMillis) {
+		if (windowMillis <= 0) {
+			throw new IllegalArgumentException("window must be positive");
+		}
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		long now = System.nanoTime();
+		display = new Window(now);
+		queue = new Window(now);
+	}
+
+	/**
+	 * Records that an update has been displayed.
+	 *
+	 * @param updateNanos
+	 *            the {@link System#nanoTime()} of the update, as returned by
+	 *            {@link DeterminateProgressMonitor#getUpdateNanos()}; 0 is
+	 *            ignored
+	 */
+	public void recordDisplayed(long updateNanos) {
+		if (updateNanos != 0) {
+			long now = System.nanoTime();
+			display.record(now, now - updateNanos);
+		}
+	}
+
+	/**
+	 * Records the time an update waited in the queue of the UI thread.
+	 *
+	 * @param nanos
+	 *            the delay in nanoseconds
+	 */
+	public void recordQueueDelay(long nanos) {
+		queue.record(System.nanoTime(), nanos);
+	}
+
+	/**
+	 * Returns the latencies from updating a monitor to displaying the update,
+	 * over the latest one to two windows.
+	 *
+	 * @return a copy of the display latencies
+	 */
+	public LatencyHistogram getDisplayLatency() {
+		return display.snapshot(System.nanoTime());
+	}
+
+	/**
+	 * Returns the delays of updates in the queue of the UI thread, over the
+	 * latest one to two windows.
+	 *
+	 * @return a copy of the queue delays
+	 */
+	public LatencyHistogram getQueueDelay() {
+		return queue.snapshot(System.nanoTime());
+	}
+
+	/** Discards the recorded latencies. */
+	public void reset() {
+		long now = System.nanoTime();
+		display.reset(now);
+		queue.reset(now);
+	}
+
+	/**
+	 * Returns the percentiles of the display latencies and the queue delays.
+	 */
+	@Override
+	public String toString() {
+		return String.format("display: %s; queue: %s", getDisplayLatency(),
+				getQueueDelay());
+	}
+
+	/**
+	 * A histogram of the current window, and of the previous one. The
+	 * histograms are swapped rather than allocated, so a latency recorded
+	 * while rotating may be counted in either window.
+	 */
+	private class Window {
+
+		private volatile LatencyHistogram current = new LatencyHistogram();
+		private volatile LatencyHistogram previous = new LatencyHistogram();
+		private volatile long startNanos;
+
+		Window(long now) {
+			startNanos = now;
+		}
+
+		void record(long now, long nanos) {
+			rotate(now);
+			current.record(nanos);
+		}
+
+		LatencyHistogram snapshot(long now) {
+			rotate(now);
+			LatencyHistogram copy = previous.snapshot();
+			copy.add(current);
+			return copy;
+		}
+
+		/** Starts a new window once the current one is over. */
+		private void rotate(long now) {
+			if (now - startNanos < windowNanos) {
+				return;
+			}
+			synchronized (this) {
+				long elapsed = now - startNanos;
+				if (elapsed < windowNanos) {
+					return;
+				}
+				LatencyHistogram expired = previous;
+				expired.reset();
+				if (elapsed >= 2 * windowNanos) {
+					// the current window ended over a window ago, so it has
+					// expired too
+					current.reset();
+				}
+				previous = current;
+				current = expired;
+				startNanos = now;
+			}
+		}
+
+		synchronized void reset(long now) {
+			current.reset();
+			previous.reset();
+			startNanos = now;
+		}
+	}
+}
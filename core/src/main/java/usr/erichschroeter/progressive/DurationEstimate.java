@@ -0,0 +1,86 @@
+package usr.erichschroeter.progressive;
+
+/**
+ * An estimate of how far along a task is, based on how long previous runs of
+ * the task took.
+ *
+ * @author Erich Schroeter
+ * @see DurationHistory
+ * @see IndeterminateProgressMonitor#getEstimate()
+ */
+public class DurationEstimate {
+
+	/**
+	 * The largest fraction an estimate will report, since only the task knows
+	 * when it has actually completed.
+	 */
+	public static final double MAX_FRACTION = 0.99;
+
+	private final long position;
+	private final long expected;
+	private final long elapsed;
+
+	/**
+	 * Constructs a <code>DurationEstimate</code>.
+	 *
+	 * @param position
+	 *            the estimated milliseconds of work done, relative to the
+	 *            expected duration
+	 * @param expected
+	 *            the expected duration in milliseconds
+	 * @param elapsed
+	 *            the milliseconds since the task started
+	 */
+	public DurationEstimate(long position, long expected, long elapsed) {
+		this.position = Math.max(0, position);
+		this.expected = Math.max(0, expected);
+		this.elapsed = Math.max(0, elapsed);
+	}
+
+	/**
+	 * Returns the estimated fraction of the task completed, between 0 and
+	 * {@link #MAX_FRACTION}.
+	 *
+	 * @return the estimated fraction completed
+	 */
+	public double getFraction() {
+		if (expected == 0) {
+			return MAX_FRACTION;
+		}
+		return Math.min(MAX_FRACTION, (double) position / expected);
+	}
+
+	/**
+	 * Returns the estimated milliseconds remaining until the task completes.
+	 * Once a task runs longer than expected this is 0.
+	 *
+	 * @return the estimated milliseconds remaining
+	 */
+	public long getRemainingMillis() {
+		return Math.max(0, expected - position);
+	}
+
+	/**
+	 * Returns the milliseconds the task is expected to take in total.
+	 *
+	 * @return the expected duration in milliseconds
+	 */
+	public long getExpectedMillis() {
+		return expected;
+	}
+
+	/**
+	 * Returns the milliseconds since the task started.
+	 *
+	 * @return the elapsed milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d%% (%d ms remaining)",
+				Math.round(getFraction() * 100), getRemainingMillis());
+	}
+}
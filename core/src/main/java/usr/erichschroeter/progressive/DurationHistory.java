@@ -0,0 +1,502 @@
+package usr.erichschroeter.progressive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A small file backed store of how long previous runs of a task took. The
+ * history is keyed by task name and records the total duration of each run
+ * along with the offsets at which each phase of the run started.
+ * <p>
+ * An {@link IndeterminateProgressMonitor} given a history uses it to turn its
+ * otherwise unknown progress into a {@link DurationEstimate}.
+ * <p>
+ * The store is bounded to <code>maxTasks</code> tasks, each keeping its
+ * latest <code>maxRunsPerTask</code> runs. The file is only read once an
+ * estimate is first needed, and all file access happens on a background
+ * thread so monitoring threads never wait on disk. Updates are merged with
+ * the current file contents while holding a {@link FileLock}, so the same
+ * file may be shared between JVMs on the same machine. A corrupt file is
+ * started over, and the first failure to read or write the file is kept for
+ * {@link #getFailure()}.
+ *
+ * @author Erich Schroeter
+ * @see IndeterminateProgressMonitor#setDurationHistory(DurationHistory,
+ *      String)
+ */
+public class DurationHistory {
+
+	/** The default maximum number of tasks kept in the history. */
+	public static final int DEFAULT_MAX_TASKS = 256;
+	/** The default maximum number of runs kept per task. */
+	public static final int DEFAULT_MAX_RUNS = 16;
+	/** The maximum number of phases recorded per run. */
+	static final int MAX_PHASES = 32;
+
+	private static final int MAGIC = 0x50444853;
+	private static final int VERSION = 1;
+
+	/** Performs all file access, serializing it within this JVM. */
+	private static ExecutorService executor;
+
+	private final File file;
+	private final int maxTasks;
+	private final int maxRunsPerTask;
+	private final AtomicBoolean loadRequested = new AtomicBoolean();
+	/** The profiles by task name, <code>null</code> until loaded. */
+	private volatile Map<String, Profile> profiles;
+	private volatile Exception failure;
+
+	/**
+	 * Constructs a <code>DurationHistory</code> stored in <code>file</code>
+	 * using the default bounds.
+	 *
+	 * @param file
+	 *            the file to store the history in
+	 * @see #DurationHistory(File, int, int)
+	 */
+	public DurationHistory(File file) {
+		this(file, DEFAULT_MAX_TASKS, DEFAULT_MAX_RUNS);
+	}
+
+	/**
+	 * Constructs a <code>DurationHistory</code> stored in <code>file</code>.
+	 * The file does not need to exist yet.
+	 *
+	 * @param file
+	 *            the file to store the history in
+	 * @param maxTasks
+	 *            the maximum number of tasks to keep, the least recently run
+	 *            tasks are dropped first
+	 * @param maxRunsPerTask
+	 *            the maximum number of runs to keep for each task
+	 */
+	public DurationHistory(File file, int maxTasks, int maxRunsPerTask) {
+		if (file == null) {
+			throw new IllegalArgumentException("file cannot be null");
+		}
+		if (maxTasks < 1 || maxRunsPerTask < 1) {
+			throw new IllegalArgumentException("bounds must be positive");
+		}
+		this.file = file;
+		this.maxTasks = maxTasks;
+		this.maxRunsPerTask = maxRunsPerTask;
+	}
+
+	/**
+	 * Returns the file the history is stored in.
+	 *
+	 * @return the history file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the first failure to read or write the history file, such as
+	 * the file not being writable. The history keeps working in memory from
+	 * what it could read.
+	 *
+	 * @return the failure, or <code>null</code> if none
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Returns whether the history has been read from its file yet.
+	 *
+	 * @return <code>true</code> if the history is loaded, else
+	 *         <code>false</code>
+	 */
+	public boolean isLoaded() {
+		return profiles != null;
+	}
+
+	/**
+	 * Requests the history be read from its file in the background. Calling
+	 * this more than once has no effect.
+	 */
+	public void load() {
+		if (!loadRequested.compareAndSet(false, true)) {
+			return;
+		}
+		executor().execute(new Runnable() {
+			@Override
+			public void run() {
+				Map<String, Profile> loaded;
+				try {
+					loaded = toProfiles(read());
+				} catch (IOException e) {
+					failed(e);
+					loaded = Collections.emptyMap();
+				} catch (RuntimeException e) {
+					// a bad entry must not leave the history unloaded
+					failed(e);
+					loaded = Collections.emptyMap();
+				}
+				profiles = loaded;
+			}
+		});
+	}
+
+	/**
+	 * Returns the expected duration of <code>task</code>, which is the median
+	 * of its recorded durations.
+	 * <p>
+	 * If the history has not been loaded yet, loading is started and
+	 * <code>-1</code> is returned.
+	 *
+	 * @param task
+	 *            the task name
+	 * @return the expected duration in milliseconds, or <code>-1</code> if
+	 *         unknown
+	 */
+	public long getExpectedDuration(String task) {
+		Profile profile = getProfile(task);
+		return profile == null ? -1 : profile.expected;
+	}
+
+	/**
+	 * Records a completed run of <code>task</code>. The file is updated in the
+	 * background.
+	 *
+	 * @param task
+	 *            the task name
+	 * @param durationMillis
+	 *            how long the run took
+	 * @param phases
+	 *            the names of the phases in the order they started
+	 *            (<code>null</code> permitted)
+	 * @param phaseOffsets
+	 *            the milliseconds after the start of the run each phase
+	 *            started
+	 */
+	public void record(final String task, long durationMillis,
+			String[] phases, long[] phaseOffsets) {
+		if (task == null || durationMillis < 0) {
+			return;
+		}
+		int count = phases == null ? 0 : Math.min(phases.length, MAX_PHASES);
+		final Run run = new Run(System.currentTimeMillis(), durationMillis,
+				Arrays.copyOf(phases == null ? new String[0] : phases, count),
+				Arrays.copyOf(phaseOffsets == null ? new long[0]
+						: phaseOffsets, count));
+		loadRequested.set(true);
+		executor().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					update(task, run);
+				} catch (IOException e) {
+					failed(e);
+				} catch (RuntimeException e) {
+					failed(e);
+				}
+			}
+		});
+	}
+
+	/** Keeps the first failure, run on the history thread. */
+	private void failed(Exception e) {
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Returns the profile for <code>task</code>, or <code>null</code> if it is
+	 * unknown or the history is not loaded yet.
+	 */
+	Profile getProfile(String task) {
+		Map<String, Profile> profiles = this.profiles;
+		if (profiles == null) {
+			load();
+			return null;
+		}
+		return task == null ? null : profiles.get(task);
+	}
+
+	/** Merges <code>run</code> into the file contents and rewrites the file. */
+	private void update(String task, Run run) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			FileLock lock = channel.lock();
+			try {
+				Map<String, List<Run>> runs;
+				try {
+					runs = decode(readFully(channel));
+				} catch (IOException e) {
+					// a corrupt history is simply started over
+					runs = new LinkedHashMap<String, List<Run>>();
+				}
+				List<Run> taskRuns = runs.remove(task);
+				if (taskRuns == null) {
+					taskRuns = new ArrayList<Run>();
+				}
+				taskRuns.add(run);
+				while (taskRuns.size() > maxRunsPerTask) {
+					taskRuns.remove(0);
+				}
+				// re-inserting keeps the tasks ordered least recently run first
+				runs.put(task, taskRuns);
+				Iterator<String> it = runs.keySet().iterator();
+				while (runs.size() > maxTasks && it.hasNext()) {
+					it.next();
+					it.remove();
+				}
+				// profiled before writing, so a run which cannot be profiled is
+				// never persisted
+				Map<String, Profile> updated = toProfiles(runs);
+				ByteBuffer bytes = ByteBuffer.wrap(encode(runs));
+				channel.position(0);
+				while (bytes.hasRemaining()) {
+					channel.write(bytes);
+				}
+				channel.truncate(bytes.limit());
+				profiles = updated;
+			} finally {
+				lock.release();
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/** Reads the file contents while holding a shared lock. */
+	private Map<String, List<Run>> read() throws IOException {
+		if (!file.exists()) {
+			return new LinkedHashMap<String, List<Run>>();
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+			try {
+				return decode(readFully(channel));
+			} finally {
+				lock.release();
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static byte[] readFully(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("history file too large");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		channel.position(0);
+		while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+		}
+		return buffer.array();
+	}
+
+	private static Map<String, List<Run>> decode(byte[] bytes)
+			throws IOException {
+		Map<String, List<Run>> runs = new LinkedHashMap<String, List<Run>>();
+		if (bytes.length == 0) {
+			return runs;
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("unrecognized history file");
+		}
+		// every task and run takes more than a byte, which bounds the counts
+		int tasks = in.readInt();
+		if (tasks < 0 || tasks > bytes.length) {
+			throw new IOException("corrupt history file");
+		}
+		for (int t = 0; t < tasks; t++) {
+			String task = in.readUTF();
+			int count = in.readInt();
+			if (count < 0 || count > bytes.length) {
+				throw new IOException("corrupt history file");
+			}
+			List<Run> taskRuns = new ArrayList<Run>(count);
+			for (int r = 0; r < count; r++) {
+				long recorded = in.readLong();
+				long duration = in.readLong();
+				int phaseCount = in.readInt();
+				if (phaseCount < 0 || phaseCount > MAX_PHASES) {
+					throw new IOException("corrupt history file");
+				}
+				String[] phases = new String[phaseCount];
+				long[] offsets = new long[phaseCount];
+				for (int p = 0; p < phaseCount; p++) {
+					phases[p] = in.readUTF();
+					offsets[p] = in.readLong();
+				}
+				taskRuns.add(new Run(recorded, duration, phases, offsets));
+			}
+			runs.put(task, taskRuns);
+		}
+		return runs;
+	}
+
+	private static byte[] encode(Map<String, List<Run>> runs)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(runs.size());
+		for (Map.Entry<String, List<Run>> entry : runs.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (Run run : entry.getValue()) {
+				out.writeLong(run.recorded);
+				out.writeLong(run.duration);
+				out.writeInt(run.phases.length);
+				for (int p = 0; p < run.phases.length; p++) {
+					out.writeUTF(run.phases[p]);
+					out.writeLong(run.offsets[p]);
+				}
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static Map<String, Profile> toProfiles(Map<String, List<Run>> runs) {
+		Map<String, Profile> profiles = new HashMap<String, Profile>();
+		for (Map.Entry<String, List<Run>> entry : runs.entrySet()) {
+			if (!entry.getValue().isEmpty()) {
+				profiles.put(entry.getKey(), new Profile(entry.getValue()));
+			}
+		}
+		return Collections.unmodifiableMap(profiles);
+	}
+
+	private static long median(long[] values, int count) {
+		Arrays.sort(values, 0, count);
+		return values[count / 2];
+	}
+
+	private static synchronized ExecutorService executor() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "progressive-history");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/** A single recorded run of a task. */
+	private static class Run {
+
+		final long recorded;
+		final long duration;
+		final String[] phases;
+		final long[] offsets;
+
+		Run(long recorded, long duration, String[] phases, long[] offsets) {
+			this.recorded = recorded;
+			this.duration = duration;
+			this.phases = phases;
+			this.offsets = offsets;
+		}
+	}
+
+	/**
+	 * The expected timings of a task, derived from the medians of its recorded
+	 * runs.
+	 */
+	static class Profile {
+
+		/** The expected duration in milliseconds. */
+		final long expected;
+		/** The expected start offset of each phase by name. */
+		final Map<String, Long> phaseOffsets;
+
+		Profile(List<Run> runs) {
+			long[] durations = new long[runs.size()];
+			Map<String, long[]> offsets = new HashMap<String, long[]>();
+			Map<String, Integer> counts = new HashMap<String, Integer>();
+			for (int r = 0; r < runs.size(); r++) {
+				Run run = runs.get(r);
+				durations[r] = run.duration;
+				Set<String> seen = new HashSet<String>();
+				for (int p = 0; p < run.phases.length; p++) {
+					if (!seen.add(run.phases[p])) {
+						// a phase entered again within a run is anchored to
+						// where it first started
+						continue;
+					}
+					long[] values = offsets.get(run.phases[p]);
+					Integer count = counts.get(run.phases[p]);
+					if (values == null) {
+						values = new long[runs.size()];
+						offsets.put(run.phases[p], values);
+						count = 0;
+					}
+					values[count] = run.offsets[p];
+					counts.put(run.phases[p], count + 1);
+				}
+			}
+			expected = median(durations, durations.length);
+			phaseOffsets = new HashMap<String, Long>();
+			for (Map.Entry<String, long[]> entry : offsets.entrySet()) {
+				phaseOffsets.put(entry.getKey(), median(entry.getValue(),
+						counts.get(entry.getKey())));
+			}
+		}
+
+		/**
+		 * Estimates the progress of a run which has been running for
+		 * <code>elapsed</code> milliseconds and has been in
+		 * <code>phase</code> for <code>inPhase</code> milliseconds.
+		 */
+		DurationEstimate estimate(String phase, long elapsed, long inPhase) {
+			long position = elapsed;
+			Long phaseOffset = phase == null ? null : phaseOffsets.get(phase);
+			if (phaseOffset != null) {
+				// the run is anchored to where the phase usually starts, and
+				// not allowed past where the next phase usually starts
+				long phaseEnd = expected;
+				for (Long offset : phaseOffsets.values()) {
+					if (offset > phaseOffset && offset < phaseEnd) {
+						phaseEnd = offset;
+					}
+				}
+				position = Math.min(phaseOffset + inPhase, phaseEnd);
+			}
+			return new DurationEstimate(position, expected, elapsed);
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package usr.erichschroeter.progressive;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Monitors the progress of some action. This class used in conjunction with
+ * the <code>ProgressDialog</code> of the Swing module can be used to notify an
+ * end user of the progress of an action being performed in the background.
+ * 
+ * @author Erich Schroeter
+ */
+public class IndeterminateProgressMonitor extends AbstractProgressMonitor {
+
+	private IndeterminateStatusEvent statusEvent;
+	/** The history used to estimate progress (optional). */
+	private DurationHistory history;
+	/** The name the task is recorded as in the history. */
+	private String taskName;
+	/** When the current run started, or 0 if not running. */
+	private volatile long startNanos;
+	/** The phase the current run is in, or <code>null</code> if none. */
+	private volatile Phase phase;
+	/** The phases of the current run, recorded once it completes. */
+	private String[] phases;
+	private long[] phaseOffsets;
+	private int phaseCount;
+
+	/**
+	 * Constructs a default <code>ProgressMonitor</code> specifying 0
+	 * milliseconds to wait for a dialog to display.
+	 * 
+	 * @see #IndeterminateProgressMonitor(int)
+	 */
+	public IndeterminateProgressMonitor() {
+		this(0);
+	}
+
+	/**
+	 * Constructs a <code>ProgressMonitor</code> specifying the milliseconds to
+	 * wait before displaying a dialog.
+	 * 
+	 * @param milliSecondsToWait
+	 *            time to wait before dialog is displayed
+	 * @see AbstractProgressMonitor#AbstractProgressMonitor(int)
+	 */
+	public IndeterminateProgressMonitor(int milliSecondsToWait) {
+		super(milliSecondsToWait);
+		this.statusEvent = new IndeterminateStatusEvent(this);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The event fired is an {@link IndeterminateStatusEvent}.
+	 */
+	@Override
+	public void start(String status) {
+		started();
+		if (history != null) {
+			history.load();
+			phases = new String[DurationHistory.MAX_PHASES];
+			phaseOffsets = new long[DurationHistory.MAX_PHASES];
+			phaseCount = 0;
+			phase = null;
+			startNanos = System.nanoTime();
+		}
+		fireProgressEvent(new IndeterminateStatusEvent(this, status));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The event fired is an {@link IndeterminateStatusEvent}.
+	 */
+	@Override
+	public void cancel(String status) {
+		fireProgressCanceledEvent(new IndeterminateStatusEvent(this, status));
+	}
+
+	/**
+	 * Returns the text of the status event. This is information often useful to
+	 * display to the end user to notify them on what is occurring in the
+	 * background.
+	 * 
+	 * @return the status text
+	 */
+	public String getStatusText() {
+		return statusEvent.getText();
+	}
+
+	/**
+	 * Sets the status text and fires a status event. This is information often
+	 * useful to display to the end user to notify them on what is occurring in
+	 * the background.
+	 * 
+	 * @param status
+	 *            the status text
+	 */
+	public void updateStatusText(String status) {
+		long stamp = beginWrite();
+		try {
+			statusEvent.setText(status);
+			transition(statusEvent);
+		} finally {
+			endWrite(stamp);
+		}
+		fireProgressEvent(statusEvent);
+	}
+
+	/**
+	 * Sets a status text which is only built if a listener reads it, and fires
+	 * a status event. This avoids building text for updates which are never
+	 * displayed.
+	 * 
+	 * @param status
+	 *            supplies the status text
+	 * @see StatusEvent#getText()
+	 */
+	public void updateStatusTextLazy(Supplier<String> status) {
+		long stamp = beginWrite();
+		try {
+			statusEvent.setText(status);
+			transition(statusEvent);
+		} finally {
+			endWrite(stamp);
+		}
+		fireProgressEvent(statusEvent);
+	}
+
+	/**
+	 * Sets a status text which is only formatted if a listener reads it, and
+	 * fires a status event. The arguments must not be modified after calling
+	 * this method.
+	 * 
+	 * @param format
+	 *            the status text format string
+	 * @param args
+	 *            the arguments referenced by the format string
+	 * @see String#format(String, Object...)
+	 * @see StatusEvent#getText()
+	 */
+	public void updateStatusText(String format, Object... args) {
+		long stamp = beginWrite();
+		try {
+			statusEvent.setText(format, args);
+			transition(statusEvent);
+		} finally {
+			endWrite(stamp);
+		}
+		fireProgressEvent(statusEvent);
+	}
+
+	/**
+	 * Sets whether the progress has completed and fires a status event.
+	 * <p>
+	 * An indeterminate progress is considered complete when the user specifies
+	 * it is complete. Thus it is left up to the developer to specify that the
+	 * progress is completed, else the progress will continue on indefinitely.
+	 * 
+	 * @param complete
+	 *            <code>true</code> if progress is completed, else
+	 *            <code>false</code>
+	 */
+	public void setCompleted(boolean complete) {
+		long stamp = beginWrite();
+		try {
+			statusEvent.complete = complete;
+			transition(statusEvent);
+		} finally {
+			endWrite(stamp);
+		}
+		long start = startNanos;
+		if (complete && start != 0) {
+			startNanos = 0;
+			history.record(taskName, millisSince(start),
+					Arrays.copyOf(phases, phaseCount),
+					Arrays.copyOf(phaseOffsets, phaseCount));
+		}
+		fireProgressEvent(statusEvent);
+	}
+
+	@Override
+	void fillSnapshot(ProgressSnapshot snapshot) {
+		super.fillSnapshot(snapshot);
+		snapshot.text = statusEvent.text;
+	}
+
+	/**
+	 * Sets the history used to estimate the progress of this monitor and to
+	 * record its duration once completed. The history must be set before the
+	 * monitor is started.
+	 * 
+	 * @param history
+	 *            the duration history (<code>null</code> permitted)
+	 * @param taskName
+	 *            the name the task is recorded as in the history
+	 * @see #getEstimate()
+	 */
+	public void setDurationHistory(DurationHistory history, String taskName) {
+		this.history = history;
+		this.taskName = taskName;
+	}
+
+	/**
+	 * Returns the history used to estimate the progress of this monitor.
+	 * 
+	 * @return the duration history, or <code>null</code> if there is none
+	 */
+	public DurationHistory getDurationHistory() {
+		return history;
+	}
+
+	/**
+	 * Marks the start of a new phase of the task and sets the status text to
+	 * the phase name. Phase timings are recorded in the duration history and
+	 * allow estimates to correct themselves as a run moves through the same
+	 * phases as previous runs.
+	 * 
+	 * @param name
+	 *            the phase name
+	 * @see #updateStatusText(String)
+	 */
+	public void startPhase(String name) {
+		long start = startNanos;
+		if (start != 0 && name != null) {
+			long now = System.nanoTime();
+			if (phaseCount < phases.length) {
+				phases[phaseCount] = name;
+				phaseOffsets[phaseCount] = (now - start) / 1000000L;
+				phaseCount++;
+			}
+			phase = new Phase(name, now);
+		}
+		updateStatusText(name);
+	}
+
+	/**
+	 * Returns an estimate of how far along the task is based on its duration
+	 * history.
+	 * 
+	 * @return the estimate, or <code>null</code> if the monitor is not running
+	 *         or the history has no record of the task (yet)
+	 * @see #setDurationHistory(DurationHistory, String)
+	 */
+	public DurationEstimate getEstimate() {
+		long start = startNanos;
+		if (start == 0) {
+			return null;
+		}
+		DurationHistory.Profile profile = history.getProfile(taskName);
+		if (profile == null) {
+			return null;
+		}
+		Phase phase = this.phase;
+		return profile.estimate(phase == null ? null : phase.name,
+				millisSince(start),
+				phase == null ? 0 : millisSince(phase.startNanos));
+	}
+
+	private static long millisSince(long nanos) {
+		return (System.nanoTime() - nanos) / 1000000L;
+	}
+
+	/** The phase a run is in. */
+	private static class Phase {
+
+		final String name;
+		final long startNanos;
+
+		Phase(String name, long startNanos) {
+			this.name = name;
+			this.startNanos = startNanos;
+		}
+	}
+}
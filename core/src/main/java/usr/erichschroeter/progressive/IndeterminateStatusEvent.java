@@ -35,6 +35,17 @@ public class IndeterminateStatusEvent extends StatusEvent {
 		super(source, text);
 	}
 
+	@Override
+	StatusEvent copy() {
+		if (getClass() != IndeterminateStatusEvent.class) {
+			return this;
+		}
+		IndeterminateStatusEvent e = new IndeterminateStatusEvent(getSource());
+		e.text = text;
+		e.complete = complete;
+		return e;
+	}
+
 	/**
 	 * Returns the value of the package protected complete variable.
 	 * 
@@ -0,0 +1,271 @@
+package usr.erichschroeter.progressive;
+
+import java.util.function.Consumer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the monitors, so their progress can be lined
+ * up with GC, lock and I/O events in a recording. Only used while
+ * {@link JfrSupport#enabled()}.
+ * <p>
+ * Every event is disabled by default, and is enabled by recording with the
+ * <code>progressive.jfc</code> settings bundled with this library:
+ *
+ * <pre>
+ * jcmd &lt;pid&gt; JFR.start settings=/path/to/progressive.jfc
+ * </pre>
+ *
+ * While an event is disabled, emitting it is a single check of a flag, and
+ * nothing is allocated. The progress of the monitors registered in the
+ * {@link MonitorRegistry#getDefault() default registry} is sampled once per
+ * period of the progress event.
+ *
+ * @author Erich Schroeter
+ */
+final class JfrEvents {
+
+	/** The prefix of the names of the events. */
+	static final String PREFIX = "usr.erichschroeter.progressive.";
+
+	// instances only asked whether their type is enabled
+	private static final MonitorStart START = new MonitorStart();
+	private static final MonitorComplete COMPLETE = new MonitorComplete();
+	private static final MonitorCancel CANCEL = new MonitorCancel();
+	private static final MonitorStall STALL = new MonitorStall();
+	private static final ListenerDispatch DISPATCH = new ListenerDispatch();
+
+	static {
+		FlightRecorder.addPeriodicEvent(Progress.class, new Runnable() {
+			@Override
+			public void run() {
+				sampleProgress();
+			}
+		});
+	}
+
+	private JfrEvents() {
+	}
+
+	/** Emits the start of a monitor. */
+	static void started(AbstractProgressMonitor monitor) {
+		if (START.isEnabled()) {
+			MonitorStart e = new MonitorStart();
+			e.monitorId = monitor.getId();
+			e.monitorClass = monitor.getClass();
+			e.commit();
+		}
+	}
+
+	/** Emits the completion of a monitor. */
+	static void completed(AbstractProgressMonitor monitor) {
+		if (COMPLETE.isEnabled()) {
+			MonitorComplete e = new MonitorComplete();
+			e.monitorId = monitor.getId();
+			e.monitorClass = monitor.getClass();
+			e.commit();
+		}
+	}
+
+	/** Emits the cancellation of a monitor. */
+	static void canceled(AbstractProgressMonitor monitor, StatusEvent status) {
+		if (CANCEL.isEnabled()) {
+			MonitorCancel e = new MonitorCancel();
+			e.monitorId = monitor.getId();
+			e.monitorClass = monitor.getClass();
+			e.reason = status.getText();
+			e.commit();
+		}
+	}
+
+	/** Emits a stall or resumption of a monitor. */
+	static void stalled(AbstractProgressMonitor monitor, StallEvent stall) {
+		if (STALL.isEnabled()) {
+			MonitorStall e = new MonitorStall();
+			e.monitorId = monitor.getId();
+			e.stalled = stall.isStalled();
+			e.idle = stall.getIdleMillis();
+			e.commit();
+		}
+	}
+
+	/**
+	 * Begins timing the dispatch of a status event to the listeners.
+	 *
+	 * @return the event to pass to {@link #endDispatch}, or <code>null</code>
+	 *         if the event is disabled
+	 */
+	static Object beginDispatch() {
+		if (!DISPATCH.isEnabled()) {
+			return null;
+		}
+		ListenerDispatch e = new ListenerDispatch();
+		e.begin();
+		return e;
+	}
+
+	/**
+	 * Ends timing the dispatch of a status event, emitting it if it took
+	 * longer than the threshold.
+	 */
+	static void endDispatch(Object dispatch, AbstractProgressMonitor monitor,
+			int listeners) {
+		ListenerDispatch e = (ListenerDispatch) dispatch;
+		e.end();
+		if (e.shouldCommit()) {
+			e.monitorId = monitor.getId();
+			e.listeners = listeners;
+			e.commit();
+		}
+	}
+
+	/**
+	 * Emits the progress of every monitor registered in the
+	 * {@link MonitorRegistry#getDefault() default registry}, run by the
+	 * recorder once per period of the progress event.
+	 */
+	private static void sampleProgress() {
+		final ProgressSnapshot snapshot = new ProgressSnapshot();
+		MonitorRegistry.getDefault().forEach(
+				new Consumer<MonitorRegistry.Entry>() {
+					@Override
+					public void accept(MonitorRegistry.Entry entry) {
+						AbstractProgressMonitor monitor = entry.getMonitor();
+						if (monitor == null) {
+							return;
+						}
+						monitor.snapshot(snapshot);
+						Progress e = new Progress();
+						e.monitorId = monitor.getId();
+						e.parentId = entry.getParentId();
+						e.state = snapshot.getState().name();
+						e.determinate = snapshot.isDeterminate();
+						e.current = snapshot.getCurrent();
+						e.max = snapshot.getMax();
+						e.fraction = snapshot.getFraction();
+						e.commit();
+					}
+				});
+	}
+
+	@Name(PREFIX + "MonitorStart")
+	@Label("Monitor Start")
+	@Category({ "Progressive", "Monitor" })
+	@Enabled(false)
+	@StackTrace(false)
+	static class MonitorStart extends Event {
+
+		@Label("Monitor Id")
+		long monitorId;
+
+		@Label("Monitor Class")
+		Class<?> monitorClass;
+	}
+
+	@Name(PREFIX + "MonitorComplete")
+	@Label("Monitor Complete")
+	@Category({ "Progressive", "Monitor" })
+	@Enabled(false)
+	@StackTrace(false)
+	static class MonitorComplete extends Event {
+
+		@Label("Monitor Id")
+		long monitorId;
+
+		@Label("Monitor Class")
+		Class<?> monitorClass;
+	}
+
+	@Name(PREFIX + "MonitorCancel")
+	@Label("Monitor Cancel")
+	@Category({ "Progressive", "Monitor" })
+	@Enabled(false)
+	static class MonitorCancel extends Event {
+
+		@Label("Monitor Id")
+		long monitorId;
+
+		@Label("Monitor Class")
+		Class<?> monitorClass;
+
+		@Label("Reason")
+		String reason;
+	}
+
+	@Name(PREFIX + "MonitorStall")
+	@Label("Monitor Stall")
+	@Description("A monitor stalled or resumed, as detected by the stall watchdog")
+	@Category({ "Progressive", "Monitor" })
+	@Enabled(false)
+	@StackTrace(false)
+	static class MonitorStall extends Event {
+
+		@Label("Monitor Id")
+		long monitorId;
+
+		@Label("Stalled")
+		boolean stalled;
+
+		@Label("Idle")
+		@Timespan(Timespan.MILLISECONDS)
+		long idle;
+	}
+
+	@Name(PREFIX + "ListenerDispatch")
+	@Label("Listener Dispatch")
+	@Description("Dispatching a status event to the listeners of a monitor took longer than the threshold")
+	@Category({ "Progressive", "Monitor" })
+	@Enabled(false)
+	@Threshold("1 ms")
+	static class ListenerDispatch extends Event {
+
+		@Label("Monitor Id")
+		long monitorId;
+
+		@Label("Listeners")
+		int listeners;
+	}
+
+	@Name(PREFIX + "Progress")
+	@Label("Progress")
+	@Description("The progress of a monitor registered in the default monitor registry")
+	@Category({ "Progressive", "Monitor" })
+	@Enabled(false)
+	@StackTrace(false)
+	@Period("1 s")
+	static class Progress extends Event {
+
+		@Label("Monitor Id")
+		long monitorId;
+
+		@Label("Parent Id")
+		long parentId;
+
+		@Label("State")
+		String state;
+
+		@Label("Determinate")
+		boolean determinate;
+
+		@Label("Current")
+		int current;
+
+		@Label("Max")
+		int max;
+
+		@Label("Fraction")
+		@Percentage
+		double fraction;
+	}
+}
@@ -0,0 +1,49 @@
+package usr.erichschroeter.progressive;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Guards the use of {@link JfrEvents}, which needs the optional
+ * <code>jdk.jfr</code> module. Where the module is missing, such as in a
+ * runtime image of <code>java.base</code> alone, {@link #AVAILABLE} is
+ * <code>false</code> and no class of the module is ever loaded.
+ * <p>
+ * Loading an event class loads much of the recorder, so the events are not
+ * touched until a recording has been started, such as by
+ * <code>jcmd JFR.start</code>. Until then a check costs a read of a constant
+ * and of a field.
+ *
+ * @author Erich Schroeter
+ */
+final class JfrSupport {
+
+	/** Whether the <code>jdk.jfr</code> module can be used. */
+	static final boolean AVAILABLE = isAvailable();
+
+	private JfrSupport() {
+	}
+
+	/**
+	 * Returns whether the events may be emitted, once a recording has been
+	 * started in this JVM.
+	 *
+	 * @return <code>true</code> if the events may be emitted, else
+	 *         <code>false</code>
+	 */
+	static boolean enabled() {
+		return AVAILABLE && FlightRecorder.isInitialized();
+	}
+
+	private static boolean isAvailable() {
+		try {
+			Class<?> event = Class.forName("jdk.jfr.Event", false,
+					JfrSupport.class.getClassLoader());
+			// a named module only reads jdk.jfr if the module was resolved
+			return JfrSupport.class.getModule().canRead(event.getModule());
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package usr.erichschroeter.progressive;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A progress listener logging status events as newline-delimited JSON, one
+ * record per line, for log pipelines:
+ *
+ * <pre>
+ * {"ts":1700000000000,"monitor":7,"event":"progress","current":40,"max":100,"text":"Copying"}
+ * </pre>
+ * <p>
+ * The <code>event</code> is <code>start</code> for the first event of a
+ * monitor, <code>progress</code>, <code>complete</code> or
+ * <code>cancel</code>. Determinate monitors also have <code>min</code>,
+ * <code>current</code> and <code>max</code> values, and
+ * <code>"totalKnown":false</code> while their total is still growing.
+ * Progress records are rate limited per monitor, while start, complete and
+ * cancel records are always logged. A monitor is logged as complete once, when
+ * it completes, and events of a finished monitor are only logged again once
+ * it starts again.
+ * <p>
+ * Listening only captures the values of an event and queues them, so the
+ * thread firing the event never waits for I/O, and lazily set status text is
+ * only built for records which are logged. A background thread encodes the
+ * records by hand into a reused buffer and writes them buffered. Once more
+ * than {@link #MAX_PENDING} records are waiting, further progress
+ * records are dropped and counted.
+ * <p>
+ * One log may listen to any number of monitors. Each monitor is tracked by
+ * its id while it is referenced, and is not kept reachable by the log.
+ *
+ * @author Erich Schroeter
+ */
+public class JsonLinesProgressLog implements ProgressListener, Closeable {
+
+	/** The default milliseconds between progress records of a monitor. */
+	public static final long DEFAULT_MIN_INTERVAL_MILLIS = 1000;
+	/** The number of records waiting to be written before dropping any. */
+	public static final int MAX_PENDING = 65536;
+
+	/** Tells the writer thread to finish. */
+	private static final Record CLOSE = new Record();
+	/** The time of the latest record of a monitor which has finished. */
+	private static final long FINISHED = Long.MIN_VALUE;
+
+	private final Writer out;
+	private final long minIntervalNanos;
+	private final BlockingQueue<Record> queue = new LinkedBlockingQueue<Record>();
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+	/** The time of each monitor's latest record by monitor id. */
+	private final Map<Long, Tracked> tracked = new ConcurrentHashMap<Long, Tracked>();
+	/** The entries of collected monitors. */
+	private final ReferenceQueue<AbstractProgressMonitor> collected = new ReferenceQueue<AbstractProgressMonitor>();
+	private final Thread writer;
+	private volatile IOException failure;
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a <code>JsonLinesProgressLog</code> writing to a channel,
+	 * such as a <code>FileChannel</code>, encoded as UTF-8.
+	 *
+	 * @param channel
+	 *            the channel to write to
+	 * @param minIntervalMillis
+	 *            the minimum milliseconds between progress records of a
+	 *            monitor
+	 */
+	public JsonLinesProgressLog(WritableByteChannel channel,
+			long minIntervalMillis) {
+		this(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(),
+				-1), minIntervalMillis);
+	}
+
+	/**
+	 * Constructs a <code>JsonLinesProgressLog</code> writing to a writer,
+	 * which is closed when the log is.
+	 *
+	 * @param out
+	 *            the writer to write to
+	 * @param minIntervalMillis
+	 *            the minimum milliseconds between progress records of a
+	 *            monitor
+	 */
+	public JsonLinesProgressLog(Writer out, long minIntervalMillis) {
+		this.out = out instanceof BufferedWriter ? out : new BufferedWriter(
+				out, 64 * 1024);
+		this.minIntervalNanos = TimeUnit.MILLISECONDS
+				.toNanos(minIntervalMillis);
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "progressive-json-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Returns the number of progress records dropped because too many records
+	 * were waiting to be written.
+	 *
+	 * @return the number of dropped records
+	 */
+	public long getDroppedRecords() {
+		return dropped.get();
+	}
+
+	@Override
+	public void statusChanged(StatusEvent e) {
+		AbstractProgressMonitor monitor = (AbstractProgressMonitor) e
+				.getSource();
+		long now = System.nanoTime();
+		boolean completed = e.isCompleted();
+		AtomicLong last = track(monitor, completed ? FINISHED : now);
+		String event;
+		if (last == null) {
+			// the first event of the monitor
+			event = completed ? "complete" : "start";
+		} else {
+			event = null;
+			while (event == null) {
+				long previous = last.get();
+				if (completed) {
+					if (previous == FINISHED) {
+						return;
+					}
+					if (last.compareAndSet(previous, FINISHED)) {
+						event = "complete";
+					}
+				} else if (previous == FINISHED) {
+					// started again, unless another thread logged it
+					if (!last.compareAndSet(previous, now)) {
+						return;
+					}
+					event = "start";
+				} else {
+					if (now - previous < minIntervalNanos
+							|| !last.compareAndSet(previous, now)) {
+						return;
+					}
+					event = "progress";
+				}
+			}
+		}
+		enqueue(monitor, event, e, !"progress".equals(event));
+	}
+
+	@Override
+	public void canceled(StatusEvent e) {
+		AbstractProgressMonitor monitor = (AbstractProgressMonitor) e
+				.getSource();
+		AtomicLong last = track(monitor, FINISHED);
+		if (last != null) {
+			last.set(FINISHED);
+		}
+		enqueue(monitor, "cancel", e, true);
+	}
+
+	/**
+	 * Starts tracking a monitor with the time of its first record, returning
+	 * the time of its latest record if it is tracked already.
+	 */
+	private AtomicLong track(AbstractProgressMonitor monitor, long first) {
+		expungeCollected();
+		Long id = monitor.getId();
+		Tracked existing = tracked.get(id);
+		if (existing == null) {
+			existing = tracked.putIfAbsent(id, new Tracked(monitor, collected,
+					first));
+		}
+		return existing == null ? null : existing.last;
+	}
+
+	/**
+	 * Stops tracking every collected monitor, which costs a single read while
+	 * there are none.
+	 */
+	private void expungeCollected() {
+		Tracked entry;
+		while ((entry = (Tracked) collected.poll()) != null) {
+			tracked.remove(entry.id, entry);
+		}
+	}
+
+	/** Captures the values of the event and queues them for writing. */
+	private void enqueue(AbstractProgressMonitor monitor, String event,
+			StatusEvent e, boolean always) {
+		if (closed) {
+			return;
+		}
+		if (pending.incrementAndGet() > MAX_PENDING && !always) {
+			pending.decrementAndGet();
+			dropped.incrementAndGet();
+			return;
+		}
+		Record record = new Record();
+		record.millis = System.currentTimeMillis();
+		record.monitor = monitor.getId();
+		record.event = event;
+		// lazy text is built by the writer thread, if at all
+		record.text = e.text;
+		if (e instanceof DeterminateStatusEvent) {
+			DeterminateStatusEvent d = (DeterminateStatusEvent) e;
+			record.determinate = true;
+			record.min = d.min;
+			record.current = d.current;
+			record.max = d.max;
+			record.totalKnown = d.totalKnown;
+		}
+		queue.add(record);
+	}
+
+	/** Writes the queued records, run on the writer thread. */
+	private void write() {
+		StringBuilder line = new StringBuilder(256);
+		try {
+			for (;;) {
+				Record record = queue.take();
+				if (record == CLOSE) {
+					break;
+				}
+				pending.decrementAndGet();
+				try {
+					encode(record, line);
+					out.append(line);
+					if (queue.isEmpty()) {
+						out.flush();
+					}
+				} catch (IOException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+			out.flush();
+		} catch (InterruptedException e) {
+			// closing
+		} catch (IOException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+	}
+
+	/** Encodes the record as a line of JSON into <code>line</code>. */
+	static void encode(Record record, StringBuilder line) {
+		line.setLength(0);
+		line.append("{\"ts\":").append(record.millis);
+		line.append(",\"monitor\":").append(record.monitor);
+		line.append(",\"event\":\"").append(record.event).append('"');
+		if (record.determinate) {
+			line.append(",\"min\":").append(record.min);
+			line.append(",\"current\":").append(record.current);
+			line.append(",\"max\":").append(record.max);
+			if (!record.totalKnown) {
+				line.append(",\"totalKnown\":false");
+			}
+		}
+		Object text = record.text;
+		if (text instanceof LazyText) {
+			text = ((LazyText) text).evaluate();
+		}
+		if (text != null) {
+			line.append(",\"text\":\"");
+			appendEscaped((String) text, line);
+			line.append('"');
+		}
+		line.append("}\n");
+	}
+
+	/** Appends the string escaped for a JSON string literal. */
+	private static void appendEscaped(String s, StringBuilder line) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				line.append("\\\"");
+				break;
+			case '\\':
+				line.append("\\\\");
+				break;
+			case '\n':
+				line.append("\\n");
+				break;
+			case '\r':
+				line.append("\\r");
+				break;
+			case '\t':
+				line.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					line.append("\\u00");
+					line.append(Character.forDigit(c >> 4, 16));
+					line.append(Character.forDigit(c & 0xf, 16));
+				} else {
+					line.append(c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the records queued so far and closes the writer. Records of
+	 * events fired after closing are discarded.
+	 *
+	 * @throws IOException
+	 *             if writing any record failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		queue.add(CLOSE);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		out.close();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/** A monitor being logged, holding the monitor weakly. */
+	private static class Tracked extends WeakReference<AbstractProgressMonitor> {
+
+		final long id;
+		/** The time of the latest record, or {@link #FINISHED}. */
+		final AtomicLong last;
+
+		Tracked(AbstractProgressMonitor monitor,
+				ReferenceQueue<AbstractProgressMonitor> queue, long first) {
+			super(monitor, queue);
+			this.id = monitor.getId();
+			this.last = new AtomicLong(first);
+		}
+	}
+
+	/** The values of a status event to log. */
+	static class Record {
+
+		long millis;
+		long monitor;
+		String event;
+		/** Either a <code>String</code> or a {@link LazyText}. */
+		Object text;
+		boolean determinate;
+		int min;
+		int current;
+		int max;
+		boolean totalKnown;
+	}
+}
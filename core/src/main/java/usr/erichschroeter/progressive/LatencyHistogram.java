@@ -0,0 +1,231 @@
+package usr.erichschroeter.progressive;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size histogram of latencies in nanoseconds, with log scaled buckets
+ * in the manner of HDR histograms. Values below 64 have their own bucket, and
+ * above that every power of two is split into 32 buckets, so any value is
+ * reported within about 3% of its actual value.
+ * <p>
+ * Recording is lock free and allocation free, and may be done from any number
+ * of threads. Reading while recording returns approximately consistent
+ * results.
+ *
+ * @author Erich Schroeter
+ * @see DeterminateProgressMonitor#setLatencyHistogram(LatencyHistogram)
+ */
+public class LatencyHistogram {
+
+	/** The number of values with their own bucket. */
+	private static final int LINEAR = 64;
+	/** The number of buckets each power of two is split into. */
+	private static final int HALF = LINEAR / 2;
+	/** Enough buckets for every positive <code>long</code>. */
+	private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts;
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong();
+
+	/** Constructs an empty <code>LatencyHistogram</code>. */
+	public LatencyHistogram() {
+		counts = new AtomicLongArray(BUCKETS);
+	}
+
+	/**
+	 * Records a latency. Negative values are recorded as 0.
+	 *
+	 * @param nanos
+	 *            the latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(index(value));
+		total.addAndGet(value);
+		long current;
+		while (value > (current = max.get())
+				&& !max.compareAndSet(current, value)) {
+		}
+		while (value < (current = min.get())
+				&& !min.compareAndSet(current, value)) {
+		}
+	}
+
+	/**
+	 * Returns the number of latencies recorded.
+	 *
+	 * @return the number of latencies recorded
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the smallest latency recorded.
+	 *
+	 * @return the smallest latency in nanoseconds, or 0 if none recorded
+	 */
+	public long getMin() {
+		long value = min.get();
+		return value == Long.MAX_VALUE ? 0 : value;
+	}
+
+	/**
+	 * Returns the largest latency recorded.
+	 *
+	 * @return the largest latency in nanoseconds, or 0 if none recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the mean latency recorded.
+	 *
+	 * @return the mean latency in nanoseconds, or 0 if none recorded
+	 */
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : (double) total.get() / count;
+	}
+
+	/**
+	 * Returns the latency which <code>percentile</code> percent of the
+	 * recorded latencies are less than or equal to, such as 50 for the median
+	 * or 99.9 for the 99.9th percentile.
+	 *
+	 * @param percentile
+	 *            the percentile, from 0 to 100
+	 * @return the latency in nanoseconds, or 0 if none recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		double fraction = Math.max(0, Math.min(100, percentile)) / 100;
+		// the epsilon keeps rounding errors such as 99.9 / 100 * 1000 from
+		// skipping to the next rank
+		long rank = Math.max(1, (long) Math.ceil(fraction * count - 1e-9));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(highestValue(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Returns a copy of this histogram.
+	 *
+	 * @return a copy of the recorded latencies
+	 */
+	public LatencyHistogram snapshot() {
+		LatencyHistogram copy = new LatencyHistogram();
+		for (int i = 0; i < BUCKETS; i++) {
+			copy.counts.set(i, counts.get(i));
+		}
+		copy.total.set(total.get());
+		copy.min.set(min.get());
+		copy.max.set(max.get());
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of this histogram and resets it, so the copy holds the
+	 * latencies recorded since the previous interval snapshot. No latency
+	 * recorded concurrently is lost, though it may be counted in either
+	 * interval.
+	 *
+	 * @return the latencies recorded since the previous interval snapshot
+	 */
+	public LatencyHistogram intervalSnapshot() {
+		LatencyHistogram copy = new LatencyHistogram();
+		for (int i = 0; i < BUCKETS; i++) {
+			copy.counts.set(i, counts.getAndSet(i, 0));
+		}
+		copy.total.set(total.getAndSet(0));
+		copy.min.set(min.getAndSet(Long.MAX_VALUE));
+		copy.max.set(max.getAndSet(0));
+		return copy;
+	}
+
+	/**
+	 * Adds the latencies recorded in another histogram to this one.
+	 *
+	 * @param other
+	 *            the histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long count = other.counts.get(i);
+			if (count != 0) {
+				counts.addAndGet(i, count);
+			}
+		}
+		total.addAndGet(other.total.get());
+		long value = other.max.get();
+		long current;
+		while (value > (current = max.get())
+				&& !max.compareAndSet(current, value)) {
+		}
+		value = other.min.get();
+		while (value < (current = min.get())
+				&& !min.compareAndSet(current, value)) {
+		}
+	}
+
+	/** Discards the recorded latencies. */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		total.set(0);
+		min.set(Long.MAX_VALUE);
+		max.set(0);
+	}
+
+	/**
+	 * Returns the median, 99th, and 99.9th percentiles and the maximum.
+	 */
+	@Override
+	public String toString() {
+		return String.format("p50=%d ns, p99=%d ns, p99.9=%d ns, max=%d ns",
+				getValueAtPercentile(50), getValueAtPercentile(99),
+				getValueAtPercentile(99.9), getMax());
+	}
+
+	/** Returns the bucket of <code>value</code>. */
+	private static int index(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		// the bits below the top 6 bits are dropped
+		int shift = 64 - Long.numberOfLeadingZeros(value) - 6;
+		return shift * HALF + (int) (value >>> shift);
+	}
+
+	/** Returns the highest value which falls into <code>index</code>. */
+	private static long highestValue(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		int shift = index / HALF - 1;
+		long lowest = (long) (index - shift * HALF) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
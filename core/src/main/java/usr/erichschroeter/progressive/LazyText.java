@@ -0,0 +1,42 @@
+package usr.erichschroeter.progressive;
+
+import java.util.function.Supplier;
+
+/**
+ * A status text which is only built once it is read, either from a supplier
+ * or from a format string and its arguments.
+ * 
+ * @author Erich Schroeter
+ * @see StatusEvent#getText()
+ */
+final class LazyText {
+
+	private final Supplier<String> supplier;
+	private final String format;
+	private final Object[] args;
+
+	LazyText(Supplier<String> supplier) {
+		this.supplier = supplier;
+		this.format = null;
+		this.args = null;
+	}
+
+	LazyText(String format, Object[] args) {
+		this.supplier = null;
+		this.format = format;
+		this.args = args;
+	}
+
+	/** Builds the text. */
+	String evaluate() {
+		if (supplier != null) {
+			return supplier.get();
+		}
+		return format == null ? null : String.format(format, args);
+	}
+
+	@Override
+	public String toString() {
+		return evaluate();
+	}
+}
@@ -0,0 +1,25 @@
+package usr.erichschroeter.progressive;
+
+/**
+ * A handle to a listener registered with a monitor. Closing the handle
+ * detaches the listener, which is safe to do more than once and from any
+ * thread, including from within the listener.
+ * 
+ * @author Erich Schroeter
+ * @see AbstractProgressMonitor#registerProgressListener(ProgressListener)
+ * @see AbstractProgressMonitor#registerWeakListener(java.util.EventListener)
+ */
+public interface ListenerRegistration extends AutoCloseable {
+
+	/** Detaches the listener from the monitor. */
+	@Override
+	public void close();
+
+	/**
+	 * Returns whether the listener has been detached, either by closing this
+	 * handle or automatically.
+	 * 
+	 * @return <code>true</code> if detached, else <code>false</code>
+	 */
+	public boolean isClosed();
+}
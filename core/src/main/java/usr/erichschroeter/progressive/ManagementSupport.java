@@ -0,0 +1,37 @@
+package usr.erichschroeter.progressive;
+
+/**
+ * Guards the use of {@link ResourceAccount}, which needs the optional
+ * <code>java.management</code> and <code>jdk.management</code> modules. Where
+ * they are missing, such as in a runtime image of <code>java.base</code>
+ * alone, {@link #AVAILABLE} is <code>false</code> and no class of the modules
+ * is ever loaded.
+ *
+ * @author Erich Schroeter
+ */
+final class ManagementSupport {
+
+	/** Whether the per thread counters of the JVM can be read. */
+	static final boolean AVAILABLE = isAvailable();
+
+	private ManagementSupport() {
+	}
+
+	private static boolean isAvailable() {
+		try {
+			ClassLoader loader = ManagementSupport.class.getClassLoader();
+			Module management = Class.forName(
+					"java.lang.management.ManagementFactory", false, loader)
+					.getModule();
+			Module threads = Class.forName("com.sun.management.ThreadMXBean",
+					false, loader).getModule();
+			// a named module only reads the modules which were resolved
+			Module module = ManagementSupport.class.getModule();
+			return module.canRead(management) && module.canRead(threads);
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,401 @@
+package usr.erichschroeter.progressive;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of the monitors in progress, so dashboards, shutdown hooks and
+ * diagnostics can find the work which is running. Registering is opt-in;
+ * nothing is registered unless the application registers it.
+ * <p>
+ * Each monitor is registered by its {@link AbstractProgressMonitor#getId()
+ * id}, with any number of tags and optionally a parent monitor, such as the
+ * monitor of the whole job a step belongs to. A monitor is removed once it
+ * completes or is canceled, and the registry only holds it weakly, so a
+ * monitor which is abandoned unfinished is removed once it is garbage
+ * collected.
+ * <p>
+ * Enumerating the registry neither locks nor blocks registering or updating
+ * monitors. It visits the monitors registered at some point during the
+ * enumeration, and skips monitors which were collected.
+ *
+ * <pre>
+ * MonitorRegistry.getDefault().register(monitor, job, &quot;import&quot;);
+ * for (AbstractProgressMonitor m : MonitorRegistry.getDefault().getMonitors(&quot;import&quot;)) {
+ * 	System.out.println(m.snapshot());
+ * }
+ * </pre>
+ *
+ * @author Erich Schroeter
+ */
+public class MonitorRegistry {
+
+	private static final String[] NO_TAGS = new String[0];
+
+	private static MonitorRegistry defaultRegistry;
+
+	private final Map<Long, Entry> entries = new ConcurrentHashMap<Long, Entry>();
+	/** The entries of collected monitors. */
+	private final ReferenceQueue<AbstractProgressMonitor> collected = new ReferenceQueue<AbstractProgressMonitor>();
+
+	/**
+	 * Returns the registry shared by the application.
+	 *
+	 * @return the default registry
+	 */
+	public static synchronized MonitorRegistry getDefault() {
+		if (defaultRegistry == null) {
+			defaultRegistry = new MonitorRegistry();
+		}
+		return defaultRegistry;
+	}
+
+	/**
+	 * Constructs an empty <code>MonitorRegistry</code>, separate from the
+	 * {@link #getDefault() default registry}.
+	 */
+	public MonitorRegistry() {
+	}
+
+	/**
+	 * Registers a monitor until it completes or is canceled.
+	 *
+	 * @param monitor
+	 *            the monitor to register
+	 * @param tags
+	 *            the tags to find the monitor by
+	 * @return the monitor's entry
+	 * @see #register(AbstractProgressMonitor, AbstractProgressMonitor,
+	 *      String...)
+	 */
+	public Entry register(AbstractProgressMonitor monitor, String... tags) {
+		return register(monitor, null, tags);
+	}
+
+	/**
+	 * Registers a monitor with a parent until it completes or is canceled. The
+	 * parent need not be registered, and is not kept reachable by the child.
+	 * A monitor which has already finished is not registered.
+	 *
+	 * @param monitor
+	 *            the monitor to register
+	 * @param parent
+	 *            the monitor the monitor is part of (<code>null</code>
+	 *            permitted)
+	 * @param tags
+	 *            the tags to find the monitor by
+	 * @return the monitor's entry
+	 */
+	public Entry register(AbstractProgressMonitor monitor,
+			AbstractProgressMonitor parent, String... tags) {
+		expungeCollected();
+		String[] copy = tags == null || tags.length == 0 ? NO_TAGS : tags
+				.clone();
+		for (String tag : copy) {
+			if (tag == null) {
+				throw new NullPointerException("tag");
+			}
+		}
+		Entry entry = new Entry(this, monitor, parent == null ? 0 : parent
+				.getId(), copy);
+		if (monitor.isFinished()) {
+			return entry;
+		}
+		Entry previous = entries.put(entry.id, entry);
+		if (previous != null) {
+			previous.closeRemover();
+		}
+		entry.remover = new WeakReference<ListenerRegistration>(
+				monitor.registerProgressListener(new Remover(entry)));
+		// finishing while registering would be missed by the listener
+		if (monitor.isFinished()) {
+			remove(entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Removes a monitor from the registry.
+	 *
+	 * @param monitor
+	 *            the monitor to remove
+	 */
+	public void unregister(AbstractProgressMonitor monitor) {
+		Entry entry = entries.get(monitor.getId());
+		if (entry != null) {
+			remove(entry);
+		}
+	}
+
+	/** Removes the entry, unless the monitor has been registered again. */
+	private void remove(Entry entry) {
+		if (entries.remove(entry.id, entry)) {
+			entry.closeRemover();
+		}
+	}
+
+	/**
+	 * Removes the entries of every collected monitor, which costs a single
+	 * read while there are none.
+	 */
+	private void expungeCollected() {
+		Entry entry;
+		while ((entry = (Entry) collected.poll()) != null) {
+			entries.remove(entry.id, entry);
+		}
+	}
+
+	/**
+	 * Returns the number of registered monitors.
+	 *
+	 * @return the number of registered monitors
+	 */
+	public int size() {
+		expungeCollected();
+		return entries.size();
+	}
+
+	/**
+	 * Returns the entry of a monitor.
+	 *
+	 * @param id
+	 *            the id of the monitor
+	 * @return the monitor's entry, or <code>null</code> if not registered
+	 */
+	public Entry getEntry(long id) {
+		Entry entry = entries.get(id);
+		return entry == null || entry.get() == null ? null : entry;
+	}
+
+	/**
+	 * Returns a registered monitor.
+	 *
+	 * @param id
+	 *            the id of the monitor
+	 * @return the monitor, or <code>null</code> if not registered
+	 */
+	public AbstractProgressMonitor getMonitor(long id) {
+		Entry entry = entries.get(id);
+		return entry == null ? null : entry.get();
+	}
+
+	/**
+	 * Performs an action for the entry of every registered monitor, without
+	 * copying the registry.
+	 *
+	 * @param action
+	 *            the action to perform
+	 */
+	public void forEach(Consumer<? super Entry> action) {
+		expungeCollected();
+		for (Entry entry : entries.values()) {
+			if (entry.get() != null) {
+				action.accept(entry);
+			}
+		}
+	}
+
+	/**
+	 * Performs an action for the entry of every registered monitor with a tag,
+	 * without copying the registry.
+	 *
+	 * @param tag
+	 *            the tag of the monitors
+	 * @param action
+	 *            the action to perform
+	 */
+	public void forEach(String tag, Consumer<? super Entry> action) {
+		expungeCollected();
+		for (Entry entry : entries.values()) {
+			if (entry.hasTag(tag) && entry.get() != null) {
+				action.accept(entry);
+			}
+		}
+	}
+
+	/**
+	 * Returns every registered monitor.
+	 *
+	 * @return the registered monitors
+	 */
+	public List<AbstractProgressMonitor> getMonitors() {
+		expungeCollected();
+		List<AbstractProgressMonitor> monitors = new ArrayList<AbstractProgressMonitor>(
+				entries.size());
+		for (Entry entry : entries.values()) {
+			AbstractProgressMonitor monitor = entry.get();
+			if (monitor != null) {
+				monitors.add(monitor);
+			}
+		}
+		return monitors;
+	}
+
+	/**
+	 * Returns the registered monitors with a tag.
+	 *
+	 * @param tag
+	 *            the tag of the monitors
+	 * @return the registered monitors with the tag
+	 */
+	public List<AbstractProgressMonitor> getMonitors(String tag) {
+		List<AbstractProgressMonitor> monitors = new ArrayList<AbstractProgressMonitor>();
+		for (Entry entry : entries.values()) {
+			AbstractProgressMonitor monitor = entry.hasTag(tag) ? entry.get()
+					: null;
+			if (monitor != null) {
+				monitors.add(monitor);
+			}
+		}
+		return monitors;
+	}
+
+	/**
+	 * Returns the registered monitors whose parent is a monitor.
+	 *
+	 * @param parent
+	 *            the parent monitor
+	 * @return the registered children of the monitor
+	 */
+	public List<AbstractProgressMonitor> getChildren(
+			AbstractProgressMonitor parent) {
+		long parentId = parent.getId();
+		List<AbstractProgressMonitor> monitors = new ArrayList<AbstractProgressMonitor>();
+		for (Entry entry : entries.values()) {
+			AbstractProgressMonitor monitor = entry.parentId == parentId ? entry
+					.get() : null;
+			if (monitor != null) {
+				monitors.add(monitor);
+			}
+		}
+		return monitors;
+	}
+
+	/**
+	 * The registration of a monitor, holding the monitor weakly.
+	 */
+	public static class Entry extends WeakReference<AbstractProgressMonitor> {
+
+		final long id;
+		/** The id of the parent, or 0 if none; ids start at 1. */
+		final long parentId;
+		private final String[] tags;
+		private final MonitorRegistry registry;
+		/**
+		 * Removes the entry once the monitor finishes. Held weakly, as the
+		 * registration holds the monitor, and is held by the monitor while it
+		 * is needed.
+		 */
+		volatile WeakReference<ListenerRegistration> remover;
+
+		Entry(MonitorRegistry registry, AbstractProgressMonitor monitor,
+				long parentId, String[] tags) {
+			super(monitor, registry.collected);
+			this.registry = registry;
+			this.id = monitor.getId();
+			this.parentId = parentId;
+			this.tags = tags;
+		}
+
+		/** Detaches the listener removing the entry. */
+		void closeRemover() {
+			WeakReference<ListenerRegistration> r = remover;
+			ListenerRegistration registration = r == null ? null : r.get();
+			if (registration != null) {
+				registration.close();
+			}
+		}
+
+		/**
+		 * Returns the id of the monitor.
+		 *
+		 * @return the monitor's id
+		 */
+		public long getId() {
+			return id;
+		}
+
+		/**
+		 * Returns the monitor.
+		 *
+		 * @return the monitor, or <code>null</code> if it was collected
+		 */
+		public AbstractProgressMonitor getMonitor() {
+			return get();
+		}
+
+		/**
+		 * Returns the id of the parent monitor.
+		 *
+		 * @return the parent's id, or 0 if the monitor has no parent
+		 */
+		public long getParentId() {
+			return parentId;
+		}
+
+		/**
+		 * Returns the parent monitor, if it is registered.
+		 *
+		 * @return the parent monitor, or <code>null</code> if the monitor has
+		 *         no parent or it is not registered
+		 */
+		public AbstractProgressMonitor getParent() {
+			return parentId == 0 ? null : registry.getMonitor(parentId);
+		}
+
+		/**
+		 * Returns the tags of the monitor.
+		 *
+		 * @return the monitor's tags
+		 */
+		public List<String> getTags() {
+			return Collections.unmodifiableList(Arrays.asList(tags));
+		}
+
+		/**
+		 * Returns whether the monitor has a tag.
+		 *
+		 * @param tag
+		 *            the tag
+		 * @return <code>true</code> if the monitor has the tag, else
+		 *         <code>false</code>
+		 */
+		public boolean hasTag(String tag) {
+			for (String t : tags) {
+				if (t.equals(tag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/** Removes an entry once its monitor completes or is canceled. */
+	private class Remover implements ProgressListener {
+
+		private final Entry entry;
+
+		Remover(Entry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public void statusChanged(StatusEvent e) {
+			if (e.isCompleted()) {
+				remove(entry);
+			}
+		}
+
+		@Override
+		public void canceled(StatusEvent e) {
+			remove(entry);
+		}
+	}
+}
@@ -0,0 +1,407 @@
+package usr.erichschroeter.progressive;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Walks a directory tree on several threads, processing the files while the
+ * tree is still being scanned, so the tree is read once rather than counted
+ * up front.
+ * <p>
+ * The monitor of a walk counts files. Its total is not known while the tree is
+ * being scanned, and its maximum grows as files are discovered, so a
+ * <code>ProgressDialog</code> displays the files found so far. Once the scan
+ * completes the total is known and the progress becomes determinate. The
+ * files and bytes discovered and processed are also available while walking,
+ * and in the monitor's status text.
+ * <p>
+ * Listing a directory takes priority over processing a file, so the total is
+ * known as early as possible, but at most half of the threads list
+ * directories at once, so files are processed from the start.
+ *
+ * <pre>
+ * ParallelTreeWalker walker = new ParallelTreeWalker(4);
+ * walker.walk(root, indexer, monitor);
+ * </pre>
+ *
+ * @author Erich Schroeter
+ */
+public class ParallelTreeWalker {
+
+	/** The default milliseconds between updating the monitor. */
+	public static final long DEFAULT_PERIOD_MILLIS = 250;
+
+	/** Processes a file found by the walk. */
+	public interface FileProcessor {
+
+		public void process(Path file, BasicFileAttributes attrs)
+				throws Exception;
+	}
+
+	private final int threads;
+	private long periodMillis = DEFAULT_PERIOD_MILLIS;
+	private ThreadFactory threadFactory;
+	private final AtomicLong discoveredFiles = new AtomicLong();
+	private final AtomicLong discoveredBytes = new AtomicLong();
+	private final AtomicLong processedFiles = new AtomicLong();
+	private final AtomicLong processedBytes = new AtomicLong();
+	private volatile boolean scanComplete;
+
+	/**
+	 * Constructs a <code>ParallelTreeWalker</code> running on a number of
+	 * threads.
+	 *
+	 * @param threads
+	 *            the number of threads scanning and processing
+	 */
+	public ParallelTreeWalker(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets the milliseconds between updating the monitor.
+	 *
+	 * @param periodMillis
+	 *            the update period in milliseconds
+	 */
+	public void setPeriodMillis(long periodMillis) {
+		if (periodMillis <= 0) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+		this.periodMillis = periodMillis;
+	}
+
+	/**
+	 * Sets the factory creating the threads of a walk. By default the threads
+	 * are platform threads.
+	 *
+	 * @param threadFactory
+	 *            the factory of walk threads, or <code>null</code> for the
+	 *            default
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	/**
+	 * Returns the number of files found so far.
+	 *
+	 * @return the files discovered
+	 */
+	public long getDiscoveredFiles() {
+		return discoveredFiles.get();
+	}
+
+	/**
+	 * Returns the size of the files found so far.
+	 *
+	 * @return the bytes discovered
+	 */
+	public long getDiscoveredBytes() {
+		return discoveredBytes.get();
+	}
+
+	/**
+	 * Returns the number of files processed so far.
+	 *
+	 * @return the files processed
+	 */
+	public long getProcessedFiles() {
+		return processedFiles.get();
+	}
+
+	/**
+	 * Returns the size of the files processed so far.
+	 *
+	 * @return the bytes processed
+	 */
+	public long getProcessedBytes() {
+		return processedBytes.get();
+	}
+
+	/**
+	 * Returns whether the whole tree has been scanned, after which the
+	 * discovered files and bytes are the totals.
+	 *
+	 * @return <code>true</code> if the scan completed, else <code>false</code>
+	 */
+	public boolean isScanComplete() {
+		return scanComplete;
+	}
+
+	/**
+	 * Walks the tree, processing every regular file in it, until all files are
+	 * processed or the monitor is canceled. Symbolic links are not followed.
+	 * <p>
+	 * The monitor is started with its total unknown, grows by every file
+	 * discovered, and completes once every file is processed.
+	 *
+	 * @param root
+	 *            the directory to walk
+	 * @param processor
+	 *            the processing of each file
+	 * @param monitor
+	 *            the monitor of the files processed
+	 * @return <code>true</code> if all files were processed, or
+	 *         <code>false</code> if the monitor was canceled
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the walk, which is then
+	 *             stopped
+	 * @throws ExecutionException
+	 *             if listing a directory or processing a file throws an
+	 *             exception, which stops the walk
+	 */
+	public boolean walk(Path root, FileProcessor processor,
+			final DeterminateProgressMonitor monitor)
+			throws InterruptedException, ExecutionException {
+		discoveredFiles.set(0);
+		discoveredBytes.set(0);
+		processedFiles.set(0);
+		processedBytes.set(0);
+		scanComplete = false;
+		final Walk walk = new Walk(processor, monitor);
+		walk.directories.add(root);
+		walk.pendingDirectories = 1;
+		monitor.setTotalKnown(false);
+		monitor.setMax(monitor.getMin());
+		monitor.setCurrent(monitor.getMin());
+		monitor.start();
+
+		List<Thread> workers = new ArrayList<Thread>(threads);
+		for (int t = 0; t < threads; t++) {
+			Runnable worker = new Runnable() {
+				@Override
+				public void run() {
+					walk.work();
+				}
+			};
+			workers.add(threadFactory != null ? threadFactory
+					.newThread(worker) : new Thread(worker, "tree-walker-" + t));
+		}
+		ScheduledFuture<?> updating = SharedScheduler.get()
+				.scheduleAtFixedRate(new Runnable() {
+					@Override
+					public void run() {
+						update(walk);
+					}
+				}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		try {
+			for (Thread worker : workers) {
+				worker.start();
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		} catch (InterruptedException e) {
+			walk.stop();
+			for (Thread worker : workers) {
+				worker.interrupt();
+			}
+			throw e;
+		} finally {
+			updating.cancel(false);
+		}
+		// the updates run on the shared scheduler, wait for the latest one
+		SharedScheduler.get().submit(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}).get();
+		if (walk.failure != null) {
+			throw new ExecutionException(walk.failure);
+		}
+		if (monitor.isCanceled()) {
+			return false;
+		}
+		update(walk);
+		return true;
+	}
+
+	/**
+	 * Updates the monitor with the files discovered and processed, run
+	 * periodically on the shared scheduler and once more after the walk.
+	 */
+	private void update(Walk walk) {
+		DeterminateProgressMonitor monitor = walk.monitor;
+		if (monitor.isCanceled()) {
+			return;
+		}
+		// files are counted before the scan completes and discovered before
+		// they are processed, so read in the opposite order
+		boolean known = scanComplete;
+		long processed = processedFiles.get();
+		long discovered = discoveredFiles.get();
+		if (discovered > walk.reportedFiles) {
+			monitor.growMax((int) (discovered - walk.reportedFiles));
+			walk.reportedFiles = discovered;
+		}
+		if (known) {
+			monitor.setCurrent(monitor.getMin() + (int) processed,
+					"%d of %d files, %d of %d bytes", processed, discovered,
+					processedBytes.get(), discoveredBytes.get());
+		} else {
+			monitor.setCurrent(monitor.getMin() + (int) processed,
+					"%d of %d files found so far, %d of %d bytes", processed,
+					discovered, processedBytes.get(), discoveredBytes.get());
+		}
+		// the total is known last, so the event which completes the monitor
+		// carries the final counts
+		if (known && !monitor.isTotalKnown()) {
+			monitor.setTotalKnown(true);
+		}
+	}
+
+	/** A file waiting to be processed. */
+	private static class Found {
+
+		final Path file;
+		final BasicFileAttributes attrs;
+
+		Found(Path file, BasicFileAttributes attrs) {
+			this.file = file;
+			this.attrs = attrs;
+		}
+	}
+
+	/** The state shared by the threads of a single walk. */
+	private class Walk {
+
+		final FileProcessor processor;
+		final DeterminateProgressMonitor monitor;
+		/** Guards the queues and counts below. */
+		final Object lock = new Object();
+		final ArrayDeque<Path> directories = new ArrayDeque<Path>();
+		final ArrayDeque<Found> files = new ArrayDeque<Found>();
+		/** Directories queued or being listed. */
+		int pendingDirectories;
+		int listing;
+		int processing;
+		boolean stopped;
+		/** Only read and written by the updates, which never overlap. */
+		long reportedFiles;
+		volatile Exception failure;
+
+		Walk(FileProcessor processor, DeterminateProgressMonitor monitor) {
+			this.processor = processor;
+			this.monitor = monitor;
+		}
+
+		void stop() {
+			synchronized (lock) {
+				stopped = true;
+				lock.notifyAll();
+			}
+		}
+
+		/** Lists directories and processes files until the walk is done. */
+		void work() {
+			monitor.beginWork();
+			try {
+				for (;;) {
+					Path directory = null;
+					Found found = null;
+					synchronized (lock) {
+						for (;;) {
+							if (stopped || monitor.isCanceled()) {
+								return;
+							}
+							if (!directories.isEmpty()
+									&& (listing < (threads + 1) / 2 || files
+											.isEmpty())) {
+								directory = directories.poll();
+								listing++;
+								break;
+							}
+							if (!files.isEmpty()) {
+								found = files.poll();
+								processing++;
+								break;
+							}
+							if (pendingDirectories == 0 && processing == 0) {
+								// nothing left, and nothing more will be found
+								return;
+							}
+							lock.wait(periodMillis);
+						}
+					}
+					if (directory != null) {
+						list(directory);
+					} else {
+						process(found);
+					}
+					monitor.sampleWork();
+				}
+			} catch (Exception e) {
+				if (failure == null) {
+					failure = e;
+				}
+				stop();
+			} finally {
+				monitor.endWork();
+			}
+		}
+
+		/** Queues the entries of the directory. */
+		private void list(Path directory) throws IOException {
+			List<Path> subdirectories = new ArrayList<Path>();
+			List<Found> found = new ArrayList<Found>();
+			long bytes = 0;
+			try (DirectoryStream<Path> entries = Files
+					.newDirectoryStream(directory)) {
+				for (Path entry : entries) {
+					BasicFileAttributes attrs = Files.readAttributes(entry,
+							BasicFileAttributes.class,
+							LinkOption.NOFOLLOW_LINKS);
+					if (attrs.isDirectory()) {
+						subdirectories.add(entry);
+					} else if (attrs.isRegularFile()) {
+						found.add(new Found(entry, attrs));
+						bytes += attrs.size();
+					}
+				}
+			}
+			discoveredBytes.addAndGet(bytes);
+			discoveredFiles.addAndGet(found.size());
+			synchronized (lock) {
+				directories.addAll(subdirectories);
+				files.addAll(found);
+				pendingDirectories += subdirectories.size() - 1;
+				listing--;
+				if (pendingDirectories == 0) {
+					scanComplete = true;
+				}
+				lock.notifyAll();
+			}
+		}
+
+		private void process(Found found) throws Exception {
+			try {
+				processor.process(found.file, found.attrs);
+			} finally {
+				synchronized (lock) {
+					processing--;
+					if (processing == 0 && pendingDirectories == 0) {
+						lock.notifyAll();
+					}
+				}
+			}
+			processedBytes.addAndGet(found.attrs.size());
+			processedFiles.incrementAndGet();
+		}
+	}
+}
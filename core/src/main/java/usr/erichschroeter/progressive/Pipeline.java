@@ -0,0 +1,721 @@
+package usr.erichschroeter.progressive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A pipeline of stages connected by bounded queues, such as a reader, a
+ * transformer and a writer, which reports the progress of every stage and
+ * identifies the stage limiting the pipeline's throughput.
+ * <p>
+ * Every stage runs on its own threads, and items are passed between stages in
+ * batches to keep the cost of the queues low. Each stage has its own
+ * {@link DeterminateProgressMonitor} of the items it processed, and
+ * {@link StageMetrics} of its throughput, utilization and input queue
+ * occupancy. The overall progress is the progress of the sink.
+ * <p>
+ * The bottleneck is the stage busy for the largest share of its time, not
+ * counting the time it waits for input or for room in its output queue. While
+ * running, the overall monitor's status text names the bottleneck, so it
+ * appears wherever the monitor's status is displayed.
+ *
+ * <pre>
+ * Pipeline pipeline = Pipeline.source(&quot;read&quot;, reader)
+ * 		.stage(&quot;transform&quot;, 4, transformer).sink(&quot;write&quot;, 1, writer);
+ * pipeline.run(monitor, expectedRecords);
+ * </pre>
+ *
+ * @author Erich Schroeter
+ */
+public class Pipeline {
+
+	/** The default number of items passed between stages at once. */
+	public static final int DEFAULT_BATCH_SIZE = 64;
+	/** The default number of batches each queue holds. */
+	public static final int DEFAULT_QUEUE_BATCHES = 16;
+	/** The default milliseconds between updating the metrics and monitors. */
+	public static final long DEFAULT_PERIOD_MILLIS = 250;
+
+	/** Marks the end of a stage's output. */
+	private static final Batch END = new Batch(0);
+
+	/** Produces the items of a pipeline. */
+	public interface Source<T> {
+
+		public void produce(Emitter<T> out) throws Exception;
+	}
+
+	/** Processes the items of a pipeline, emitting any number per item. */
+	public interface Stage<T, R> {
+
+		public void process(T item, Emitter<R> out) throws Exception;
+	}
+
+	/** Consumes the items at the end of a pipeline. */
+	public interface Sink<T> {
+
+		public void consume(T item) throws Exception;
+	}
+
+	/** Passes items to the next stage. */
+	public interface Emitter<T> {
+
+		public void emit(T item) throws InterruptedException;
+	}
+
+	/**
+	 * Builds a pipeline one stage at a time.
+	 *
+	 * @param <T>
+	 *            the type of the items output by the latest stage
+	 */
+	public static class Builder<T> {
+
+		private final List<Node> nodes;
+
+		private Builder(List<Node> nodes) {
+			this.nodes = nodes;
+		}
+
+		/**
+		 * Adds a stage processing the items of the previous stage.
+		 *
+		 * @param name
+		 *            the name of the stage
+		 * @param threads
+		 *            the number of threads running the stage
+		 * @param stage
+		 *            the processing of each item
+		 * @return the builder of the pipeline including the stage
+		 */
+		public <R> Builder<R> stage(String name, int threads,
+				Stage<? super T, R> stage) {
+			nodes.add(new Node(name, threads, stage));
+			return new Builder<R>(nodes);
+		}
+
+		/**
+		 * Adds the sink consuming the items of the previous stage and builds
+		 * the pipeline.
+		 *
+		 * @param name
+		 *            the name of the sink
+		 * @param threads
+		 *            the number of threads running the sink
+		 * @param sink
+		 *            the consumer of each item
+		 * @return the pipeline
+		 */
+		public Pipeline sink(String name, int threads, Sink<? super T> sink) {
+			nodes.add(new Node(name, threads, sink));
+			return new Pipeline(nodes);
+		}
+	}
+
+	/**
+	 * Begins a pipeline with the stage producing its items, run on one thread.
+	 *
+	 * @param name
+	 *            the name of the source
+	 * @param source
+	 *            the producer of the items
+	 * @return the builder of the pipeline
+	 */
+	public static <T> Builder<T> source(String name, Source<T> source) {
+		List<Node> nodes = new ArrayList<Node>();
+		nodes.add(new Node(name, 1, source));
+		return new Builder<T>(nodes);
+	}
+
+	private final List<Node> nodes;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int queueBatches = DEFAULT_QUEUE_BATCHES;
+	private long periodMillis = DEFAULT_PERIOD_MILLIS;
+	private ThreadFactory threadFactory;
+	private volatile StageMetrics bottleneck;
+
+	private Pipeline(List<Node> nodes) {
+		this.nodes = nodes;
+	}
+
+	/**
+	 * Sets the number of items passed between stages at once.
+	 *
+	 * @param batchSize
+	 *            the number of items per batch
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batch size must be positive");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the number of batches each queue between stages holds.
+	 *
+	 * @param queueBatches
+	 *            the capacity of the queues in batches
+	 */
+	public void setQueueBatches(int queueBatches) {
+		if (queueBatches <= 0) {
+			throw new IllegalArgumentException("queue size must be positive");
+		}
+		this.queueBatches = queueBatches;
+	}
+
+	/**
+	 * Sets the milliseconds between updating the metrics and monitors.
+	 *
+	 * @param periodMillis
+	 *            the update period in milliseconds
+	 */
+	public void setPeriodMillis(long periodMillis) {
+		if (periodMillis <= 0) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+		this.periodMillis = periodMillis;
+	}
+
+	/**
+	 * Sets the factory creating the threads the stages run on, such as a
+	 * factory of virtual threads where available. By default every stage
+	 * thread is a platform thread named after its stage.
+	 *
+	 * @param threadFactory
+	 *            the factory of stage threads, or <code>null</code> for the
+	 *            default
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	/**
+	 * Returns the metrics of every stage, in pipeline order.
+	 *
+	 * @return the metrics of the stages
+	 */
+	public List<StageMetrics> getStages() {
+		List<StageMetrics> stages = new ArrayList<StageMetrics>(nodes.size());
+		for (Node node : nodes) {
+			stages.add(node.metrics);
+		}
+		return Collections.unmodifiableList(stages);
+	}
+
+	/**
+	 * Returns the stage currently limiting the throughput of the pipeline.
+	 *
+	 * @return the bottleneck, or <code>null</code> before it is known
+	 */
+	public StageMetrics getBottleneck() {
+		return bottleneck;
+	}
+
+	/**
+	 * Runs the pipeline until the source has produced all of its items and
+	 * every stage has processed them, or until the monitor is canceled.
+	 * <p>
+	 * The maximum of the monitor and of every stage monitor is set to the
+	 * expected number of items. If the number is not known, the total of the
+	 * monitors is not known either and their maximum is the number of items
+	 * processed so far. Until the pipeline finishes, a monitor never completes
+	 * even if more items than expected are processed, and once it finishes the
+	 * monitors complete with the number of items processed.
+	 *
+	 * @param monitor
+	 *            the monitor of the overall progress
+	 * @param expectedItems
+	 *            the number of items the sink is expected to consume, or 0 if
+	 *            unknown
+	 * @return <code>true</code> if all items were processed, or
+	 *         <code>false</code> if the monitor was canceled
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the stages, which are then
+	 *             stopped
+	 * @throws ExecutionException
+	 *             if any stage throws an exception, which stops the pipeline
+	 */
+	public boolean run(final DeterminateProgressMonitor monitor,
+			int expectedItems) throws InterruptedException, ExecutionException {
+		if (expectedItems < 0) {
+			throw new IllegalArgumentException(
+					"expected items must not be negative");
+		}
+		final Run run = new Run(monitor);
+		for (Node node : nodes) {
+			node.metrics.reset(expectedItems);
+		}
+		prepare(monitor, expectedItems);
+		List<Thread> threads = new ArrayList<Thread>();
+		BlockingQueue<Batch> input = null;
+		for (int n = 0; n < nodes.size(); n++) {
+			final Node node = nodes.get(n);
+			final BlockingQueue<Batch> in = input;
+			final BlockingQueue<Batch> out = n == nodes.size() - 1 ? null
+					: new ArrayBlockingQueue<Batch>(queueBatches);
+			node.metrics.input = in;
+			final AtomicInteger running = new AtomicInteger(node.threads);
+			for (int t = 0; t < node.threads; t++) {
+				Runnable worker = new Runnable() {
+					@Override
+					public void run() {
+						run.work(node, in, out, running);
+					}
+				};
+				Thread thread = threadFactory != null ? threadFactory
+						.newThread(worker) : new Thread(worker, "pipeline-"
+						+ node.metrics.name + "-" + t);
+				threads.add(thread);
+			}
+			input = out;
+		}
+
+		ScheduledFuture<?> updating = SharedScheduler.get()
+				.scheduleAtFixedRate(new Runnable() {
+					@Override
+					public void run() {
+						update(run, false);
+					}
+				}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		try {
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			run.stop.set(true);
+			for (Thread thread : threads) {
+				thread.interrupt();
+			}
+			throw e;
+		} finally {
+			updating.cancel(false);
+		}
+		// the updates run on the shared scheduler, wait for the latest one
+		try {
+			SharedScheduler.get().submit(new Runnable() {
+				@Override
+				public void run() {
+				}
+			}).get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e);
+		}
+		if (run.failure.get() != null) {
+			throw new ExecutionException(run.failure.get());
+		}
+		if (monitor.isCanceled()) {
+			return false;
+		}
+		update(run, true);
+		return true;
+	}
+
+	/**
+	 * Updates the metrics and monitors, run periodically on the shared
+	 * scheduler and once more after the pipeline finished.
+	 */
+	private void update(Run run, boolean finished) {
+		long now = System.nanoTime();
+		StageMetrics slowest = null;
+		for (Node node : nodes) {
+			StageMetrics metrics = node.metrics;
+			metrics.update(now, finished);
+			if (slowest == null
+					|| metrics.utilization > slowest.utilization
+					|| (metrics.utilization == slowest.utilization && metrics
+							.getQueueOccupancy() > slowest.getQueueOccupancy())) {
+				slowest = metrics;
+			}
+		}
+		// the final period is mostly stages draining, which says little
+		if (!finished || bottleneck == null) {
+			bottleneck = slowest;
+		}
+		DeterminateProgressMonitor monitor = run.monitor;
+		StageMetrics sink = nodes.get(nodes.size() - 1).metrics;
+		if (finished) {
+			finish(monitor, sink.getProcessed());
+		} else if (!monitor.isCanceled()) {
+			monitor.setCurrent(running(monitor, sink.getProcessed()),
+					"%s items/s, bottleneck: %s (%d%% busy)",
+					Math.round(sink.getThroughput()), slowest.name,
+					Math.round(slowest.utilization * 100));
+		}
+	}
+
+	/**
+	 * Resets a monitor for a run of a number of items, 0 if unknown, without
+	 * completing it even if the range is empty.
+	 */
+	private static void prepare(DeterminateProgressMonitor monitor,
+			int expectedItems) {
+		if (monitor.isTotalKnown()) {
+			monitor.setTotalKnown(false);
+		}
+		if (monitor.getCurrent() != monitor.getMin()) {
+			monitor.setCurrent(monitor.getMin());
+		}
+		monitor.setMax(monitor.getMin() + expectedItems);
+		if (expectedItems > 0) {
+			monitor.setTotalKnown(true);
+		}
+	}
+
+	/**
+	 * Returns the current value of a running monitor, which never completes
+	 * it: below the maximum of a known total, or the count with the maximum
+	 * raised to it if the total is not known.
+	 */
+	private static int running(DeterminateProgressMonitor monitor, long count) {
+		int min = monitor.getMin();
+		if (!monitor.isTotalKnown()) {
+			if (min + count > monitor.getMax()) {
+				monitor.setMax(min + (int) count);
+			}
+			return min + (int) count;
+		}
+		return min + (int) Math.max(0, Math.min(count, monitor.getMax() - min
+				- 1L));
+	}
+
+	/** Completes a monitor with the number of items processed. */
+	private static void finish(DeterminateProgressMonitor monitor, long count) {
+		monitor.setMax(monitor.getMin() + (int) count);
+		monitor.setCurrent(monitor.getMax());
+		if (!monitor.isTotalKnown()) {
+			monitor.setTotalKnown(true);
+		}
+	}
+
+	/** A stage of the pipeline and how it is run. */
+	private static class Node {
+
+		final int threads;
+		/** The source, stage or sink. */
+		final Object function;
+		final StageMetrics metrics;
+
+		Node(String name, int threads, Object function) {
+			if (threads <= 0) {
+				throw new IllegalArgumentException("threads must be positive");
+			}
+			if (function == null) {
+				throw new NullPointerException(name);
+			}
+			this.threads = threads;
+			this.function = function;
+			this.metrics = new StageMetrics(name, threads);
+		}
+	}
+
+	/** Items passed between stages at once. */
+	private static class Batch {
+
+		final Object[] items;
+		int size;
+
+		Batch(int capacity) {
+			items = new Object[capacity];
+		}
+	}
+
+	/** The state shared by the stage threads of a single run. */
+	private class Run {
+
+		final DeterminateProgressMonitor monitor;
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+		Run(DeterminateProgressMonitor monitor) {
+			this.monitor = monitor;
+		}
+
+		boolean stopped() {
+			return stop.get() || monitor.isCanceled();
+		}
+
+		/** Queues the batch, waiting for room unless the pipeline stops. */
+		void put(BlockingQueue<Batch> queue, Batch batch)
+				throws InterruptedException {
+			while (!queue.offer(batch, periodMillis, TimeUnit.MILLISECONDS)) {
+				if (stopped()) {
+					throw new InterruptedException("pipeline stopped");
+				}
+			}
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		void work(Node node, BlockingQueue<Batch> in, BlockingQueue<Batch> out,
+				AtomicInteger running) {
+			StageMetrics metrics = node.metrics;
+			BatchEmitter emitter = out == null ? null : new BatchEmitter(out,
+					metrics);
+			monitor.beginWork();
+			metrics.monitor.beginWork();
+			try {
+				if (in == null) {
+					// the source's time is accounted as it emits, so it shows
+					// while the source is still producing
+					emitter.markNanos = System.nanoTime();
+					((Source) node.function).produce(emitter);
+					emitter.produced();
+					emitter.flush();
+					return;
+				}
+				for (;;) {
+					Batch batch = in.poll(periodMillis, TimeUnit.MILLISECONDS);
+					if (stopped()) {
+						return;
+					}
+					if (batch == null) {
+						continue;
+					}
+					if (batch == END) {
+						// leave the end for the other threads of the stage
+						in.put(END);
+						break;
+					}
+					long began = System.nanoTime();
+					long blocked = emitter == null ? 0 : emitter.blockedNanos;
+					for (int i = 0; i < batch.size; i++) {
+						if (out == null) {
+							((Sink) node.function).consume(batch.items[i]);
+						} else {
+							((Stage) node.function).process(batch.items[i],
+									emitter);
+						}
+					}
+					long blockedNow = emitter == null ? 0 : emitter.blockedNanos;
+					metrics.busyNanos.addAndGet(System.nanoTime() - began
+							- (blockedNow - blocked));
+					metrics.processed.addAndGet(batch.size);
+					monitor.sampleWork();
+					metrics.monitor.sampleWork();
+				}
+				if (emitter != null) {
+					emitter.flush();
+				}
+			} catch (InterruptedException e) {
+				stop.set(true);
+			} catch (Exception e) {
+				failure.compareAndSet(null, e);
+				stop.set(true);
+			} finally {
+				monitor.endWork();
+				metrics.monitor.endWork();
+				if (running.decrementAndGet() == 0 && out != null) {
+					// the last thread of the stage ends its output
+					try {
+						put(out, END);
+					} catch (InterruptedException e) {
+						stop.set(true);
+					}
+				}
+			}
+		}
+
+		/** Collects emitted items into batches and queues them. */
+		private class BatchEmitter implements Emitter<Object> {
+
+			final BlockingQueue<Batch> out;
+			final StageMetrics metrics;
+			Batch batch = new Batch(batchSize);
+			/** The time spent waiting for room in the queue. */
+			long blockedNanos;
+			/** The time the source is accounted busy up to. */
+			long markNanos;
+
+			BatchEmitter(BlockingQueue<Batch> out, StageMetrics metrics) {
+				this.out = out;
+				this.metrics = metrics;
+			}
+
+			@Override
+			public void emit(Object item) throws InterruptedException {
+				if (metrics.input == null) {
+					produced();
+				}
+				batch.items[batch.size++] = item;
+				if (batch.size == batch.items.length) {
+					flush();
+				}
+			}
+
+			void flush() throws InterruptedException {
+				if (batch.size == 0) {
+					return;
+				}
+				long began = System.nanoTime();
+				put(out, batch);
+				long ended = System.nanoTime();
+				blockedNanos += ended - began;
+				if (metrics.input == null) {
+					markNanos = ended;
+					metrics.processed.addAndGet(batch.size);
+				}
+				batch = new Batch(batchSize);
+			}
+
+			/** Accounts the source busy producing since the previous mark. */
+			void produced() {
+				long now = System.nanoTime();
+				metrics.busyNanos.addAndGet(now - markNanos);
+				markNanos = now;
+			}
+		}
+	}
+
+	/**
+	 * The metrics of a stage, updated periodically while the pipeline runs.
+	 */
+	public static class StageMetrics {
+
+		final String name;
+		final int threads;
+		final DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+				0, 0, 0);
+		final AtomicLong processed = new AtomicLong();
+		final AtomicLong busyNanos = new AtomicLong();
+		volatile BlockingQueue<Batch> input;
+		private volatile double throughput;
+		private volatile double utilization;
+		private long previousNanos;
+		private long previousProcessed;
+		private long previousBusyNanos;
+
+		StageMetrics(String name, int threads) {
+			this.name = name;
+			this.threads = threads;
+		}
+
+		void reset(int expectedItems) {
+			processed.set(0);
+			busyNanos.set(0);
+			throughput = 0;
+			utilization = 0;
+			previousNanos = System.nanoTime();
+			previousProcessed = 0;
+			previousBusyNanos = 0;
+			prepare(monitor, expectedItems);
+			monitor.start();
+		}
+
+		void update(long now, boolean finished) {
+			long elapsed = now - previousNanos;
+			if (elapsed <= 0) {
+				return;
+			}
+			long count = processed.get();
+			long busy = busyNanos.get();
+			double rate = (count - previousProcessed) * 1e9 / elapsed;
+			double busyShare = Math.min(1, (double) (busy - previousBusyNanos)
+					/ ((double) elapsed * threads));
+			// smooth over a few periods so a single batch does not dominate
+			throughput = throughput == 0 ? rate : (throughput * 3 + rate) / 4;
+			utilization = utilization == 0 ? busyShare
+					: (utilization * 3 + busyShare) / 4;
+			previousNanos = now;
+			previousProcessed = count;
+			previousBusyNanos = busy;
+			if (finished) {
+				finish(monitor, count);
+			} else {
+				monitor.setCurrent(running(monitor, count));
+			}
+		}
+
+		/**
+		 * Returns the name of the stage.
+		 *
+		 * @return the stage name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the number of threads running the stage.
+		 *
+		 * @return the number of threads
+		 */
+		public int getThreads() {
+			return threads;
+		}
+
+		/**
+		 * Returns the monitor of the items processed by the stage.
+		 *
+		 * @return the stage monitor
+		 */
+		public DeterminateProgressMonitor getMonitor() {
+			return monitor;
+		}
+
+		/**
+		 * Returns the number of items processed by the stage, or produced by
+		 * the source.
+		 *
+		 * @return the number of items processed
+		 */
+		public long getProcessed() {
+			return processed.get();
+		}
+
+		/**
+		 * Returns the recent number of items processed per second.
+		 *
+		 * @return the throughput in items per second
+		 */
+		public double getThroughput() {
+			return throughput;
+		}
+
+		/**
+		 * Returns the recent share of time the stage's threads were busy, not
+		 * counting waiting for input or for room in the output queue.
+		 *
+		 * @return the utilization, from 0 to 1
+		 */
+		public double getUtilization() {
+			return utilization;
+		}
+
+		/**
+		 * Returns how full the stage's input queue is. A full input queue
+		 * means the stage cannot keep up with the previous stage.
+		 *
+		 * @return the occupancy from 0 to 1, or 0 for the source
+		 */
+		public double getQueueOccupancy() {
+			BlockingQueue<Batch> queue = input;
+			if (queue == null) {
+				return 0;
+			}
+			int size = queue.size();
+			return (double) size / (size + queue.remainingCapacity());
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"%s: %d items, %.0f items/s, %.0f%% busy, queue %.0f%%",
+					name, getProcessed(), throughput, utilization * 100,
+					getQueueOccupancy() * 100);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package usr.erichschroeter.progressive;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link Flow.Publisher} view of the status events of a
+ * {@link AbstractProgressMonitor}, for feeding progress into reactive
+ * pipelines.
+ * <p>
+ * Each subscriber has its own demand. Status events fired while a subscriber
+ * has no outstanding demand are conflated: only the latest is kept, and it is
+ * delivered once the subscriber requests more. The terminal signals do not
+ * wait for demand: <code>onComplete</code> is signaled once the progress
+ * completes, and <code>onError</code> with a
+ * {@link CancellationException} once the progress is canceled.
+ * <p>
+ * Subscribers receive copies of the status events, taken as each event is
+ * fired and read as consistently as a snapshot, which later updates of the
+ * monitor do not change. Signals are delivered on the thread firing the status
+ * event, or on the thread requesting more, but never concurrently, and never
+ * before <code>onSubscribe</code> returns. The monitor's update path takes no
+ * locks.
+ * 
+ * @author Erich Schroeter
+ */
+public class ProgressPublisher implements Flow.Publisher<StatusEvent> {
+
+	private final AbstractProgressMonitor monitor;
+	private final CopyOnWriteArrayList<ProgressSubscription> subscriptions = new CopyOnWriteArrayList<ProgressSubscription>();
+	private final ProgressListener listener = new ProgressListener() {
+
+		@Override
+		public void statusChanged(StatusEvent e) {
+			if (subscriptions.isEmpty()) {
+				return;
+			}
+			StatusEvent copy = monitor.copyEvent(e);
+			for (ProgressSubscription subscription : subscriptions) {
+				subscription.next(copy);
+			}
+		}
+
+		@Override
+		public void canceled(StatusEvent e) {
+			for (ProgressSubscription subscription : subscriptions) {
+				subscription.terminate(new CancellationException(e.getText()));
+			}
+		}
+	};
+
+	/**
+	 * Constructs a <code>ProgressPublisher</code> publishing the status events
+	 * of <code>monitor</code>.
+	 * 
+	 * @param monitor
+	 *            the monitor to publish the status events of
+	 */
+	public ProgressPublisher(AbstractProgressMonitor monitor) {
+		if (monitor == null) {
+			throw new NullPointerException("monitor cannot be null");
+		}
+		this.monitor = monitor;
+		monitor.addProgressListener(listener);
+	}
+
+	/**
+	 * Subscribes to the status events of the monitor. A subscriber to a monitor
+	 * which has already completed or been canceled, including while
+	 * <code>onSubscribe</code> runs, is terminated immediately.
+	 * 
+	 * @param subscriber
+	 *            the subscriber
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super StatusEvent> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber cannot be null");
+		}
+		ProgressSubscription subscription = new ProgressSubscription(subscriber);
+		// no signal may precede onSubscribe, so it is only published after
+		subscriber.onSubscribe(subscription);
+		subscriptions.add(subscription);
+		if (subscription.done) {
+			// canceled while subscribing
+			subscriptions.remove(subscription);
+			return;
+		}
+		switch (monitor.getState()) {
+		case COMPLETED:
+			subscription.terminate(null);
+			break;
+		case CANCELED:
+			subscription.terminate(new CancellationException());
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Stops publishing the status events of the monitor. Current subscribers
+	 * receive no further signals.
+	 */
+	public void close() {
+		monitor.removeProgressListener(listener);
+		subscriptions.clear();
+	}
+
+	/** A subscriber's demand and the latest event it has not received. */
+	private class ProgressSubscription implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super StatusEvent> subscriber;
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicReference<StatusEvent> latest = new AtomicReference<StatusEvent>();
+		/** Counts the signals to drain, only the first drains. */
+		private final AtomicInteger work = new AtomicInteger();
+		private volatile boolean terminated;
+		/** The terminal error, or <code>null</code> to complete. */
+		private volatile Throwable error;
+		private volatile boolean done;
+
+		ProgressSubscription(Flow.Subscriber<? super StatusEvent> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				terminate(new IllegalArgumentException(
+						"non-positive request: " + n));
+				return;
+			}
+			long current, next;
+			do {
+				current = requested.get();
+				next = current + n < 0 ? Long.MAX_VALUE : current + n;
+			} while (!requested.compareAndSet(current, next));
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			done = true;
+			latest.set(null);
+			subscriptions.remove(this);
+		}
+
+		void next(StatusEvent e) {
+			if (done) {
+				return;
+			}
+			latest.set(e);
+			if (e.isCompleted()) {
+				terminated = true;
+			}
+			drain();
+		}
+
+		void terminate(Throwable error) {
+			if (done) {
+				return;
+			}
+			this.error = error;
+			terminated = true;
+			drain();
+		}
+
+		private void drain() {
+			if (work.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			do {
+				if (done) {
+					return;
+				}
+				if (requested.get() > 0) {
+					StatusEvent e = latest.getAndSet(null);
+					if (e != null) {
+						if (requested.get() != Long.MAX_VALUE) {
+							requested.decrementAndGet();
+						}
+						subscriber.onNext(e);
+					}
+				}
+				if (terminated
+						&& (latest.get() == null || requested.get() == 0)) {
+					// the latest event is dropped when the terminal signal
+					// cannot wait for demand
+					cancel();
+					Throwable error = this.error;
+					if (error == null) {
+						subscriber.onComplete();
+					} else {
+						subscriber.onError(error);
+					}
+					return;
+				}
+				missed = work.addAndGet(-missed);
+			} while (missed != 0);
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package usr.erichschroeter.progressive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Utility class providing methods for processing a range of indexes or a list
+ * of items in parallel while reporting the progress to a
+ * {@link DeterminateProgressMonitor}.
+ * <p>
+ * The work is split into chunks which worker threads claim one at a time.
+ * Chunks start small and adapt to the measured cost per item, so each chunk
+ * takes roughly {@link #DEFAULT_CHUNK_NANOS} nanoseconds, and shrink towards
+ * the end of the work so the workers finish together. Workers count locally
+ * and publish their count at chunk boundaries, so the monitor is updated at
+ * most once per chunk and never concurrently. The monitor is checked for
+ * cancellation at every chunk boundary, and a single completion event is fired
+ * once all the work is done.
+ *
+ * @author Erich Schroeter
+ */
+public class ProgressRunner {
+
+	/** The default nanoseconds of work per chunk. */
+	public static final long DEFAULT_CHUNK_NANOS = 1000000L;
+
+	private ProgressRunner() {
+	}
+
+	/** The work done for each index of a range. */
+	public interface RangeTask {
+
+		public void run(int index) throws Exception;
+	}
+
+	/** The work done for each item of a list. */
+	public interface ItemTask<T> {
+
+		public void run(T item) throws Exception;
+	}
+
+	/**
+	 * Processes the indexes <code>from</code> (inclusive) to <code>to</code>
+	 * (exclusive) on the common {@link ForkJoinPool}.
+	 *
+	 * @see #forRange(ExecutorService, int, int, DeterminateProgressMonitor,
+	 *      RangeTask)
+	 */
+	public static boolean forRange(int from, int to,
+			DeterminateProgressMonitor monitor, RangeTask task)
+			throws InterruptedException, ExecutionException {
+		return forRange(ForkJoinPool.commonPool(), from, to, monitor, task);
+	}
+
+	/**
+	 * Processes the indexes <code>from</code> (inclusive) to <code>to</code>
+	 * (exclusive) in parallel on <code>executor</code>, returning once all of
+	 * the indexes are processed or the monitor is canceled.
+	 * <p>
+	 * The monitor's maximum is set to its minimum plus the number of indexes,
+	 * and its current value is the minimum plus the number of indexes
+	 * processed.
+	 *
+	 * @param executor
+	 *            the executor to run the workers on
+	 * @param from
+	 *            the first index to process
+	 * @param to
+	 *            the index after the last index to process
+	 * @param monitor
+	 *            the monitor to report progress to
+	 * @param task
+	 *            the work done for each index
+	 * @return <code>true</code> if all indexes were processed, or
+	 *         <code>false</code> if the monitor was canceled
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the workers, which are then
+	 *             stopped
+	 * @throws ExecutionException
+	 *             if the task throws an exception for any index, which stops
+	 *             the remaining work
+	 * @throws IllegalArgumentException
+	 *             if <code>to</code> is less than <code>from</code>, or if
+	 *             the monitor's range cannot hold the number of indexes
+	 */
+	public static boolean forRange(ExecutorService executor, int from, int to,
+			final DeterminateProgressMonitor monitor, final RangeTask task)
+			throws InterruptedException, ExecutionException {
+		if (to < from) {
+			throw new IllegalArgumentException("to must not be less than from");
+		}
+		final int min = monitor.getMin();
+		long range = (long) to - from;
+		if (range > Integer.MAX_VALUE || min + range > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					"the monitor's range cannot hold " + range + " indexes");
+		}
+		final int count = (int) range;
+		if (monitor.getMax() != min + count) {
+			monitor.setMax(min + count);
+		}
+		if (count == 0) {
+			monitor.setCurrent(min + count);
+			return true;
+		}
+		int workers = Math.min(count, parallelism(executor));
+		final Run run = new Run(from, to, count, workers, monitor);
+		List<Callable<Void>> callables = new ArrayList<Callable<Void>>(workers);
+		for (int i = 0; i < workers; i++) {
+			callables.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					run.work(task);
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> future : executor.invokeAll(callables)) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			// a worker failed outside of the task, such as an Error
+			run.stop.set(true);
+			throw e;
+		} finally {
+			run.stop.set(true);
+		}
+		if (run.failure.get() != null) {
+			throw new ExecutionException(run.failure.get());
+		}
+		if (monitor.isCanceled()) {
+			return false;
+		}
+		monitor.setCurrent(min + count);
+		return true;
+	}
+
+	/**
+	 * Processes the items of <code>items</code> on the common
+	 * {@link ForkJoinPool}.
+	 *
+	 * @see #forEach(ExecutorService, List, DeterminateProgressMonitor,
+	 *      ItemTask)
+	 */
+	public static <T> boolean forEach(List<T> items,
+			DeterminateProgressMonitor monitor, ItemTask<? super T> task)
+			throws InterruptedException, ExecutionException {
+		return forEach(ForkJoinPool.commonPool(), items, monitor, task);
+	}
+
+	/**
+	 * Processes the items of <code>items</code> in parallel on
+	 * <code>executor</code>. The list should support fast random access, and
+	 * must not be modified until this method returns.
+	 *
+	 * @param executor
+	 *            the executor to run the workers on
+	 * @param items
+	 *            the items to process
+	 * @param monitor
+	 *            the monitor to report progress to
+	 * @param task
+	 *            the work done for each item
+	 * @return <code>true</code> if all items were processed, or
+	 *         <code>false</code> if the monitor was canceled
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the workers
+	 * @throws ExecutionException
+	 *             if the task throws an exception for any item
+	 * @see #forRange(ExecutorService, int, int, DeterminateProgressMonitor,
+	 *      RangeTask)
+	 */
+	public static <T> boolean forEach(ExecutorService executor,
+			final List<T> items, DeterminateProgressMonitor monitor,
+			final ItemTask<? super T> task) throws InterruptedException,
+			ExecutionException {
+		return forRange(executor, 0, items.size(), monitor, new RangeTask() {
+			@Override
+			public void run(int index) throws Exception {
+				task.run(items.get(index));
+			}
+		});
+	}
+
+	/** Returns how many workers <code>executor</code> can run at once. */
+	private static int parallelism(ExecutorService executor) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		if (executor instanceof ForkJoinPool) {
+			return ((ForkJoinPool) executor).getParallelism();
+		}
+		if (executor instanceof ThreadPoolExecutor) {
+			// an unbounded pool, such as a cached one, would otherwise be given
+			// a worker per item
+			ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+			return Math.min(pool.getMaximumPoolSize(),
+					Math.max(pool.getCorePoolSize(), processors));
+		}
+		return processors;
+	}
+
+	/** The state shared by the workers of a single run. */
+	private static class Run {
+
+		final long to;
+		final int workers;
+		final DeterminateProgressMonitor monitor;
+		final int min;
+		final int count;
+		/** The next index to be claimed. */
+		final AtomicLong cursor;
+		/** The number of indexes processed. */
+		final AtomicLong done = new AtomicLong();
+		/** Held by the worker updating the monitor. */
+		final AtomicBoolean reporting = new AtomicBoolean();
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		/** The latest count reported, only accessed while reporting. */
+		long reported;
+
+		Run(int from, int to, int count, int workers,
+				DeterminateProgressMonitor monitor) {
+			this.to = to;
+			this.workers = workers;
+			this.monitor = monitor;
+			this.min = monitor.getMin();
+			this.count = count;
+			this.cursor = new AtomicLong(from);
+		}
+
+		void work(RangeTask task) {
+			monitor.beginWork();
+			try {
+				workChunks(task);
+			} finally {
+				monitor.endWork();
+			}
+		}
+
+		private void workChunks(RangeTask task) {
+			long chunk = 1;
+			double nanosPerItem = 0;
+			while (!stop.get() && !monitor.isCanceled()) {
+				long start = cursor.getAndAdd(chunk);
+				if (start >= to) {
+					return;
+				}
+				long end = Math.min(to, start + chunk);
+				long began = System.nanoTime();
+				try {
+					for (long i = start; i < end; i++) {
+						task.run((int) i);
+					}
+				} catch (Exception e) {
+					failure.compareAndSet(null, e);
+					stop.set(true);
+					return;
+				}
+				long elapsed = System.nanoTime() - began;
+				publish(end - start);
+				monitor.sampleWork();
+
+				// size the next chunk from the measured cost per item, smaller
+				// towards the end so the workers finish together
+				double measured = (double) elapsed / (end - start);
+				nanosPerItem = nanosPerItem == 0 ? measured
+						: (nanosPerItem * 3 + measured) / 4;
+				long remaining = to - cursor.get();
+				long balanced = Math.max(1, remaining / (workers * 2L));
+				long sized = nanosPerItem <= 0 ? balanced
+						: (long) (DEFAULT_CHUNK_NANOS / nanosPerItem);
+				chunk = Math.max(1, Math.min(sized, balanced));
+			}
+		}
+
+		/** Adds the worker's count and reports it unless another is. */
+		private void publish(long processed) {
+			long total = done.addAndGet(processed);
+			if (!reporting.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				// the final count is reported once, as the completion event
+				total = Math.max(total, done.get());
+				if (total > reported && total < count) {
+					reported = total;
+					monitor.setCurrent(min + (int) total);
+				}
+			} finally {
+				reporting.set(false);
+			}
+		}
+	}
+}
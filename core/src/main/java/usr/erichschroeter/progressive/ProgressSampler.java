@@ -0,0 +1,129 @@
+package usr.erichschroeter.progressive;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the counters of {@link SampledProgressMonitor}s at a fixed rate and
+ * fires their status events. All monitors of a sampler are sampled on the one
+ * background thread shared by this library, so listeners of sampled monitors
+ * must be short and must not block.
+ * <p>
+ * Monitors are sampled from when they are started until they complete or are
+ * canceled. A sampler holds its monitors weakly, so an abandoned monitor is
+ * no longer sampled once it is collected.
+ * 
+ * @author Erich Schroeter
+ * @see SampledProgressMonitor
+ */
+public class ProgressSampler {
+
+	/** The default milliseconds between samples. */
+	public static final long DEFAULT_PERIOD_MILLIS = 50;
+
+	private static ProgressSampler defaultSampler;
+
+	private final long periodMillis;
+	private final Set<Sampled> monitors = ConcurrentHashMap.newKeySet();
+	private final ReferenceQueue<SampledProgressMonitor> collected = new ReferenceQueue<SampledProgressMonitor>();
+	private ScheduledFuture<?> sampling;
+	private volatile Throwable failure;
+
+	/**
+	 * Returns the sampler shared by the application, sampling every
+	 * {@link #DEFAULT_PERIOD_MILLIS} milliseconds.
+	 * 
+	 * @return the default sampler
+	 */
+	public static synchronized ProgressSampler getDefault() {
+		if (defaultSampler == null) {
+			defaultSampler = new ProgressSampler(DEFAULT_PERIOD_MILLIS);
+		}
+		return defaultSampler;
+	}
+
+	/**
+	 * Constructs a <code>ProgressSampler</code> specifying how often monitors
+	 * are sampled.
+	 * 
+	 * @param periodMillis
+	 *            the milliseconds between samples
+	 */
+	public ProgressSampler(long periodMillis) {
+		if (periodMillis <= 0) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+		this.periodMillis = periodMillis;
+	}
+
+	/** Starts sampling the monitor, called when it is started. */
+	void add(SampledProgressMonitor monitor) {
+		for (Sampled sampled : monitors) {
+			if (sampled.get() == monitor) {
+				return;
+			}
+		}
+		monitors.add(new Sampled(monitor, collected));
+		startSampling();
+	}
+
+	/**
+	 * Returns the first failure sampling a monitor, such as a listener of the
+	 * monitor throwing.
+	 * 
+	 * @return the failure, or <code>null</code> if none
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	private synchronized void startSampling() {
+		if (sampling == null) {
+			sampling = SharedScheduler.get().scheduleAtFixedRate(
+					new Runnable() {
+						@Override
+						public void run() {
+							sampleAll();
+						}
+					}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/** Samples every monitor, run on the shared scheduler. */
+	private void sampleAll() {
+		Object reference;
+		while ((reference = collected.poll()) != null) {
+			monitors.remove(reference);
+		}
+		for (Sampled sampled : monitors) {
+			SampledProgressMonitor monitor = sampled.get();
+			if (monitor == null) {
+				continue;
+			}
+			try {
+				monitor.sample();
+			} catch (Throwable e) {
+				// a failing listener must not cancel the periodic task
+				if (failure == null) {
+					failure = e;
+				}
+			}
+			if (monitor.isFinished()) {
+				monitors.remove(sampled);
+			}
+		}
+	}
+
+	/** A sampled monitor, weak so an abandoned monitor can be collected. */
+	private static class Sampled extends WeakReference<SampledProgressMonitor> {
+
+		Sampled(SampledProgressMonitor monitor,
+				ReferenceQueue<SampledProgressMonitor> queue) {
+			super(monitor, queue);
+		}
+	}
+}
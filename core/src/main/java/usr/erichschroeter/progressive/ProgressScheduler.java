@@ -0,0 +1,358 @@
+package usr.erichschroeter.progressive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs more monitored jobs than there are workers, giving the workers to the
+ * job with the shortest estimated remaining time, so short jobs are not stuck
+ * behind long ones as in a first come, first served executor.
+ * <p>
+ * A job is run in cooperative slices: each call of its {@link Slice} does
+ * roughly the work of the slice time it is given and updates the job's
+ * {@link DeterminateProgressMonitor}. Between slices, every waiting job is
+ * ranked by its remaining work, the units between its monitor's current value
+ * and maximum, times the time per unit measured over its previous slices. A
+ * job which has not run yet is ranked first, so every job soon has a
+ * measured rate.
+ * <p>
+ * Ranking purely by remaining time can starve a long job while shorter jobs
+ * keep arriving. The aging rate credits a waiting job with that many
+ * nanoseconds of its estimate per nanosecond waited: 0 ranks purely by
+ * remaining time, and larger rates move towards first come, first served.
+ *
+ * <pre>
+ * ProgressScheduler scheduler = new ProgressScheduler(4);
+ * Future&lt;Boolean&gt; done = scheduler.submit(monitor, new Slice() {
+ * 	public boolean run(long budgetNanos) {
+ * 		long end = System.nanoTime() + budgetNanos;
+ * 		while (next &lt; count &amp;&amp; System.nanoTime() &lt; end) {
+ * 			process(next++);
+ * 		}
+ * 		monitor.setCurrent(next);
+ * 		return next &lt; count;
+ * 	}
+ * });
+ * </pre>
+ *
+ * @author Erich Schroeter
+ */
+public class ProgressScheduler {
+
+	/** The default nanoseconds of work per slice. */
+	public static final long DEFAULT_SLICE_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(5);
+	/** The default nanoseconds of estimate credited per nanosecond waited. */
+	public static final double DEFAULT_AGING_RATE = 0.1;
+
+	/** The time aging is measured from, so ranks stay small. */
+	private static final long EPOCH = System.nanoTime();
+
+	/** A cooperative slice of a job's work. */
+	public interface Slice {
+
+		/**
+		 * Does roughly <code>budgetNanos</code> nanoseconds of work and
+		 * updates the job's monitor.
+		 *
+		 * @param budgetNanos
+		 *            the nanoseconds of work to do
+		 * @return <code>true</code> if work remains, or <code>false</code> if
+		 *         the job is done
+		 * @throws Exception
+		 *             if the work fails, which fails the job
+		 */
+		public boolean run(long budgetNanos) throws Exception;
+	}
+
+	private final int workers;
+	private volatile long sliceNanos = DEFAULT_SLICE_NANOS;
+	private volatile double agingRate = DEFAULT_AGING_RATE;
+	private ThreadFactory threadFactory;
+	/** Guards the queue and the state below. */
+	private final Object lock = new Object();
+	private final PriorityQueue<Job> queue = new PriorityQueue<Job>();
+	private final List<Thread> threads = new ArrayList<Thread>();
+	private long submitted;
+	private boolean shutdown;
+
+	/**
+	 * Constructs a <code>ProgressScheduler</code> running on a number of
+	 * workers, which are started with the first job.
+	 *
+	 * @param workers
+	 *            the number of worker threads
+	 */
+	public ProgressScheduler(int workers) {
+		if (workers <= 0) {
+			throw new IllegalArgumentException("workers must be positive");
+		}
+		this.workers = workers;
+	}
+
+	/**
+	 * Sets the nanoseconds of work each slice is given.
+	 *
+	 * @param sliceNanos
+	 *            the slice time in nanoseconds
+	 */
+	public void setSliceNanos(long sliceNanos) {
+		if (sliceNanos <= 0) {
+			throw new IllegalArgumentException("slice must be positive");
+		}
+		this.sliceNanos = sliceNanos;
+	}
+
+	/**
+	 * Sets the nanoseconds of estimated remaining time a waiting job is
+	 * credited with per nanosecond it waits. Applies to jobs ranked after it
+	 * is set.
+	 *
+	 * @param agingRate
+	 *            the aging rate, 0 to rank purely by remaining time
+	 */
+	public void setAgingRate(double agingRate) {
+		if (agingRate < 0 || Double.isNaN(agingRate)) {
+			throw new IllegalArgumentException(
+					"aging rate must not be negative");
+		}
+		this.agingRate = agingRate;
+	}
+
+	/**
+	 * Sets the factory creating the worker threads. By default the workers are
+	 * daemon platform threads.
+	 *
+	 * @param threadFactory
+	 *            the factory of worker threads, or <code>null</code> for the
+	 *            default
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	/**
+	 * Submits a job, starting its monitor before its first slice unless it
+	 * has been started already.
+	 *
+	 * @param monitor
+	 *            the monitor of the job, whose maximum is its total work
+	 * @param slice
+	 *            runs the slices of the job
+	 * @return completes with <code>true</code> once the job is done, with
+	 *         <code>false</code> if its monitor was canceled, or exceptionally
+	 *         if starting its monitor or a slice failed. Canceling the future
+	 *         drops the job before its next slice.
+	 */
+	public CompletableFuture<Boolean> submit(
+			DeterminateProgressMonitor monitor, Slice slice) {
+		Job job = new Job(monitor, slice);
+		synchronized (lock) {
+			if (shutdown) {
+				throw new IllegalStateException("shut down");
+			}
+			if (threads.isEmpty()) {
+				startWorkers();
+			}
+			enqueue(job, System.nanoTime());
+		}
+		return job.future;
+	}
+
+	/**
+	 * Returns the number of jobs waiting for a worker.
+	 *
+	 * @return the number of waiting jobs
+	 */
+	public int getWaiting() {
+		synchronized (lock) {
+			return queue.size();
+		}
+	}
+
+	/**
+	 * Stops the workers once every submitted job is done. No more jobs may be
+	 * submitted.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			shutdown = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits for the workers to stop after {@link #shutdown()}.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the unit of <code>timeout</code>
+	 * @return <code>true</code> if the workers stopped, or <code>false</code>
+	 *         if the timeout elapsed
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		List<Thread> started;
+		synchronized (lock) {
+			started = new ArrayList<Thread>(threads);
+		}
+		for (Thread thread : started) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return !thread.isAlive();
+			}
+			TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+			if (thread.isAlive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Starts the workers, while holding the lock. */
+	private void startWorkers() {
+		for (int w = 0; w < workers; w++) {
+			Runnable worker = new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			};
+			Thread thread;
+			if (threadFactory != null) {
+				thread = threadFactory.newThread(worker);
+			} else {
+				thread = new Thread(worker, "progress-scheduler-" + w);
+				thread.setDaemon(true);
+			}
+			threads.add(thread);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Ranks a job and queues it, while holding the lock. The aged estimate
+	 * <code>remaining - rate * (now - queued)</code> orders the waiting jobs
+	 * the same at any time as <code>remaining + rate * queued</code>, so the
+	 * rank is fixed when queued.
+	 */
+	private void enqueue(Job job, long now) {
+		job.rank = job.estimateRemainingNanos() + agingRate * (now - EPOCH);
+		job.sequence = submitted++;
+		queue.add(job);
+		lock.notify();
+	}
+
+	/** Runs the slices of the best ranked jobs until shut down. */
+	private void work() {
+		for (;;) {
+			Job job;
+			synchronized (lock) {
+				while ((job = queue.poll()) == null) {
+					if (shutdown) {
+						return;
+					}
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						// only shutting down stops a worker
+					}
+				}
+			}
+			if (job.runSlice(sliceNanos)) {
+				synchronized (lock) {
+					enqueue(job, System.nanoTime());
+				}
+			}
+		}
+	}
+
+	/** A submitted job and its measured rate. */
+	private class Job implements Comparable<Job> {
+
+		final DeterminateProgressMonitor monitor;
+		final Slice slice;
+		final CompletableFuture<Boolean> future = new CompletableFuture<Boolean>();
+		/** The nanoseconds spent in slices so far. */
+		long serviceNanos;
+		/** The units of progress made in slices so far. */
+		long units;
+		double rank;
+		long sequence;
+
+		Job(DeterminateProgressMonitor monitor, Slice slice) {
+			this.monitor = monitor;
+			this.slice = slice;
+		}
+
+		/**
+		 * Returns the nanoseconds of work remaining at the rate measured so
+		 * far, or 0 before the first slice.
+		 */
+		long estimateRemainingNanos() {
+			if (serviceNanos == 0) {
+				return 0;
+			}
+			long remaining = Math.max(0,
+					(long) monitor.getMax() - monitor.getCurrent());
+			// a job making no progress is charged its service time per unit
+			return (long) ((double) serviceNanos / Math.max(1, units)
+					* remaining);
+		}
+
+		/**
+		 * Runs a slice, returning whether the job must be run again.
+		 */
+		boolean runSlice(long budgetNanos) {
+			if (future.isDone()) {
+				return false;
+			}
+			if (monitor.isCanceled()) {
+				future.complete(false);
+				return false;
+			}
+			int before;
+			long start;
+			boolean more;
+			try {
+				if (monitor.getState() == AbstractProgressMonitor.State.NEW) {
+					monitor.start();
+				}
+				before = monitor.getCurrent();
+				start = System.nanoTime();
+				more = slice.run(budgetNanos);
+			} catch (Throwable e) {
+				// a failing job, or a listener of its monitor, must neither
+				// stop the worker nor leave the job's future incomplete
+				future.completeExceptionally(e);
+				return false;
+			}
+			serviceNanos += Math.max(1, System.nanoTime() - start);
+			units += Math.max(0, monitor.getCurrent() - before);
+			if (monitor.isCanceled()) {
+				future.complete(false);
+				return false;
+			}
+			if (!more
+					|| monitor.getState() == AbstractProgressMonitor.State.COMPLETED) {
+				future.complete(true);
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public int compareTo(Job other) {
+			int c = Double.compare(rank, other.rank);
+			return c != 0 ? c : Long.compare(sequence, other.sequence);
+		}
+	}
+}
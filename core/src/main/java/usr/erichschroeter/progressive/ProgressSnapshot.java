@@ -0,0 +1,156 @@
+package usr.erichschroeter.progressive;
+
+/**
+ * A consistent view of a monitor's progress at one moment, for consumers which
+ * poll at their own rate rather than listen for events. The values are never
+ * a mix of different updates.
+ * <p>
+ * A snapshot is owned by the caller and may be refilled by passing it to
+ * {@link AbstractProgressMonitor#snapshot(ProgressSnapshot)}, which allocates
+ * nothing. It is not safe to share a snapshot between threads while it is
+ * being refilled.
+ * 
+ * @author Erich Schroeter
+ * @see AbstractProgressMonitor#snapshot()
+ */
+public class ProgressSnapshot {
+
+	long version;
+	AbstractProgressMonitor.State state = AbstractProgressMonitor.State.NEW;
+	boolean determinate;
+	int min;
+	int max;
+	int current;
+	boolean totalKnown;
+	boolean accounted;
+	long cpuNanos;
+	long allocatedBytes;
+	/** Either a <code>String</code> or a {@link LazyText}. */
+	Object text;
+
+	/**
+	 * Constructs an empty <code>ProgressSnapshot</code> to be filled by
+	 * {@link AbstractProgressMonitor#snapshot(ProgressSnapshot)}.
+	 */
+	public ProgressSnapshot() {
+	}
+
+	/**
+	 * Returns the version of the monitor this snapshot was taken at. The
+	 * version increases with every update, so a poller may skip snapshots
+	 * whose version has not changed.
+	 * 
+	 * @return the monitor's version
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the lifecycle state of the monitor.
+	 * 
+	 * @return the monitor's state
+	 */
+	public AbstractProgressMonitor.State getState() {
+		return state;
+	}
+
+	/**
+	 * Returns whether the monitor is determinate, in which case the minimum,
+	 * maximum and current values are its progress.
+	 * 
+	 * @return <code>true</code> if determinate, else <code>false</code>
+	 */
+	public boolean isDeterminate() {
+		return determinate;
+	}
+
+	/**
+	 * Returns the minimum progress value, or 0 if not determinate.
+	 * 
+	 * @return the minimum progress value
+	 */
+	public int getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the maximum progress value, or 0 if not determinate.
+	 * 
+	 * @return the maximum progress value
+	 */
+	public int getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the current progress value, or 0 if not determinate.
+	 * 
+	 * @return the current progress value
+	 */
+	public int getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Returns whether the maximum progress value is the final total, rather
+	 * than the work discovered so far.
+	 * 
+	 * @return <code>true</code> if determinate and the total is known, else
+	 *         <code>false</code>
+	 * @see DeterminateProgressMonitor#setTotalKnown(boolean)
+	 */
+	public boolean isTotalKnown() {
+		return totalKnown;
+	}
+
+	/**
+	 * Returns the fraction of the progress completed, from 0 to 1.
+	 * 
+	 * @return the fraction completed, or 0 if not determinate
+	 */
+	public double getFraction() {
+		if (!determinate || max <= min) {
+			return 0;
+		}
+		return Math.max(0, Math.min(1, (double) (current - min) / (max - min)));
+	}
+
+	/**
+	 * Returns the CPU time and the bytes allocated by the threads working for
+	 * the monitor, if it accounts them. This allocates a new object, unlike
+	 * the other getters.
+	 * 
+	 * @return the resource usage, or <code>null</code> if not accounting
+	 * @see AbstractProgressMonitor#setResourceAccounting(boolean)
+	 */
+	public ResourceUsage getResourceUsage() {
+		if (!accounted) {
+			return null;
+		}
+		return new ResourceUsage(cpuNanos, allocatedBytes,
+				determinate ? (long) current - min : 0);
+	}
+
+	/**
+	 * Returns the status text. Text set lazily on the monitor is built the
+	 * first time it is read from the snapshot.
+	 * 
+	 * @return the status text
+	 */
+	public String getText() {
+		if (text instanceof LazyText) {
+			text = ((LazyText) text).evaluate();
+		}
+		return (String) text;
+	}
+
+	@Override
+	public String toString() {
+		if (determinate) {
+			return String.format("%s %d/%d (%d..%d) %s", state, current, max,
+					min, max, getText());
+		}
+		return state + " " + getText();
+	}
+}
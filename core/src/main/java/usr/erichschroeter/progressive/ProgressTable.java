@@ -0,0 +1,667 @@
+package usr.erichschroeter.progressive;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import usr.erichschroeter.progressive.AbstractProgressMonitor.State;
+
+/**
+ * Tracks the progress of millions of items, such as the files of a bulk job,
+ * without an object per item. Each item is a row of primitive columns indexed
+ * by its id: the current and maximum progress, the state, and the times it was
+ * started and last updated, 28 bytes per item in all. The columns are either
+ * Java arrays or direct memory outside the heap.
+ * <p>
+ * Every update is a lock-free atomic operation on the item's row, and items
+ * may be updated from any number of threads. Updates fire no events, and the
+ * totals of all items are kept in striped counters, so reading them is cheap
+ * and updating them does not contend. Rows may also be rolled up over a range
+ * of ids, and the slowest items found.
+ * <p>
+ * A dialog needing a single item's progress can {@link #monitor(int) view} it
+ * as a monitor, which polls the item's row only while it is referenced.
+ *
+ * @author Erich Schroeter
+ */
+public class ProgressTable {
+
+	/** The default milliseconds between polling the row of a viewed item. */
+	public static final long DEFAULT_VIEW_PERIOD_MILLIS = 100;
+
+	private static final int NEW = State.NEW.ordinal();
+	private static final int RUNNING = State.RUNNING.ordinal();
+	private static final int COMPLETED = State.COMPLETED.ordinal();
+	private static final int CANCELED = State.CANCELED.ordinal();
+	private static final State[] STATES = State.values();
+
+	private final int capacity;
+	private final Longs current;
+	private final Longs max;
+	private final Ints state;
+	/** Milliseconds since {@link #originNanos}, so they fit in an int. */
+	private final Ints startedMillis;
+	private final Ints updatedMillis;
+	private final long originNanos = System.nanoTime();
+	private final LongAdder totalCurrent = new LongAdder();
+	private final LongAdder totalMax = new LongAdder();
+	private final LongAdder[] stateCounts = new LongAdder[STATES.length];
+
+	/**
+	 * Constructs a <code>ProgressTable</code> of items with ids from 0 to
+	 * <code>capacity - 1</code>, all new.
+	 *
+	 * @param capacity
+	 *            the number of items
+	 * @param offHeap
+	 *            <code>true</code> to keep the columns in direct memory
+	 *            outside the heap, else <code>false</code>
+	 */
+	public ProgressTable(int capacity, boolean offHeap) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative");
+		}
+		this.capacity = capacity;
+		current = offHeap ? new DirectLongs(capacity) : new HeapLongs(capacity);
+		max = offHeap ? new DirectLongs(capacity) : new HeapLongs(capacity);
+		state = offHeap ? new DirectInts(capacity) : new HeapInts(capacity);
+		startedMillis = offHeap ? new DirectInts(capacity) : new HeapInts(
+				capacity);
+		updatedMillis = offHeap ? new DirectInts(capacity) : new HeapInts(
+				capacity);
+		for (int i = 0; i < stateCounts.length; i++) {
+			stateCounts[i] = new LongAdder();
+		}
+		stateCounts[NEW].add(capacity);
+	}
+
+	/**
+	 * Returns the number of items.
+	 *
+	 * @return the number of items
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Starts an item, setting its maximum progress and resetting its current
+	 * progress to 0.
+	 *
+	 * @param item
+	 *            the id of the item
+	 * @param maxProgress
+	 *            the maximum progress of the item
+	 */
+	public void start(int item, long maxProgress) {
+		int now = nowMillis();
+		startedMillis.set(item, now);
+		updatedMillis.set(item, now);
+		totalMax.add(maxProgress - max.getAndSet(item, maxProgress));
+		totalCurrent.add(-current.getAndSet(item, 0));
+		transition(item, RUNNING);
+	}
+
+	/**
+	 * Sets the current progress of an item.
+	 *
+	 * @param item
+	 *            the id of the item
+	 * @param progress
+	 *            the current progress of the item
+	 */
+	public void setCurrent(int item, long progress) {
+		totalCurrent.add(progress - current.getAndSet(item, progress));
+		updatedMillis.set(item, nowMillis());
+	}
+
+	/**
+	 * Adds to the current progress of an item.
+	 *
+	 * @param item
+	 *            the id of the item
+	 * @param delta
+	 *            the progress made
+	 */
+	public void advance(int item, long delta) {
+		current.getAndAdd(item, delta);
+		totalCurrent.add(delta);
+		updatedMillis.set(item, nowMillis());
+	}
+
+	/**
+	 * Completes a running item, setting its current progress to its maximum.
+	 *
+	 * @param item
+	 *            the id of the item
+	 */
+	public void complete(int item) {
+		setCurrent(item, max.get(item));
+		transition(item, COMPLETED);
+	}
+
+	/**
+	 * Cancels an item, which its worker sees through
+	 * {@link #isCanceled(int)}.
+	 *
+	 * @param item
+	 *            the id of the item
+	 */
+	public void cancel(int item) {
+		updatedMillis.set(item, nowMillis());
+		transition(item, CANCELED);
+	}
+
+	/** Moves the item to the state, counting the change. */
+	private void transition(int item, int next) {
+		int previous;
+		do {
+			previous = state.get(item);
+			if (previous == next) {
+				return;
+			}
+		} while (!state.compareAndSet(item, previous, next));
+		stateCounts[previous].decrement();
+		stateCounts[next].increment();
+	}
+
+	/**
+	 * Returns the current progress of an item.
+	 *
+	 * @param item
+	 *            the id of the item
+	 * @return the current progress
+	 */
+	public long getCurrent(int item) {
+		return current.get(item);
+	}
+
+	/**
+	 * Returns the maximum progress of an item.
+	 *
+	 * @param item
+	 *            the id of the item
+	 * @return the maximum progress
+	 */
+	public long getMax(int item) {
+		return max.get(item);
+	}
+
+	/**
+	 * Returns the state of an item.
+	 *
+	 * @param item
+	 *            the id of the item
+	 * @return the state
+	 */
+	public State getState(int item) {
+		return STATES[state.get(item)];
+	}
+
+	/**
+	 * Returns whether an item has been canceled, a single volatile read.
+	 *
+	 * @param item
+	 *            the id of the item
+	 * @return <code>true</code> if canceled, else <code>false</code>
+	 */
+	public boolean isCanceled(int item) {
+		return state.get(item) == CANCELED;
+	}
+
+	/**
+	 * Returns how long an item has been running, or how long it ran if it has
+	 * finished.
+	 *
+	 * @param item
+	 *            the id of the item
+	 * @return the elapsed milliseconds, or 0 if not started
+	 */
+	public long getElapsedMillis(int item) {
+		return elapsedMillis(item, nowMillis());
+	}
+
+	private long elapsedMillis(int item, int now) {
+		int s = state.get(item);
+		if (s == NEW) {
+			return 0;
+		}
+		int end = s == RUNNING ? now : updatedMillis.get(item);
+		return end - startedMillis.get(item);
+	}
+
+	/**
+	 * Returns the current progress of all items.
+	 *
+	 * @return the sum of the current progress
+	 */
+	public long getTotalCurrent() {
+		return totalCurrent.sum();
+	}
+
+	/**
+	 * Returns the maximum progress of all items.
+	 *
+	 * @return the sum of the maximum progress
+	 */
+	public long getTotalMax() {
+		return totalMax.sum();
+	}
+
+	/**
+	 * Returns the number of items in a state.
+	 *
+	 * @param s
+	 *            the state
+	 * @return the number of items in the state
+	 */
+	public long getCount(State s) {
+		return stateCounts[s.ordinal()].sum();
+	}
+
+	/**
+	 * Rolls up the rows of a range of items.
+	 *
+	 * @param from
+	 *            the first item (inclusive)
+	 * @param to
+	 *            the last item (exclusive)
+	 * @return the roll-up of the items
+	 */
+	public Rollup rollup(int from, int to) {
+		Rollup rollup = new Rollup();
+		for (int i = from; i < to; i++) {
+			rollup.current += current.get(i);
+			rollup.max += max.get(i);
+			rollup.counts[state.get(i)]++;
+		}
+		return rollup;
+	}
+
+	/**
+	 * Returns the items which have been running longest, or ran longest if
+	 * finished, slowest first.
+	 *
+	 * @param n
+	 *            the number of items to return
+	 * @return the ids of up to <code>n</code> started items
+	 */
+	public int[] slowest(int n) {
+		// a min-heap of the slowest items found so far, slowest at the end
+		int[] items = new int[Math.max(0, n)];
+		long[] elapsed = new long[items.length];
+		int size = 0;
+		int now = nowMillis();
+		for (int i = 0; i < capacity && n > 0; i++) {
+			if (state.get(i) == NEW) {
+				continue;
+			}
+			long e = elapsedMillis(i, now);
+			if (size < n) {
+				items[size] = i;
+				elapsed[size] = e;
+				siftUp(items, elapsed, size++);
+			} else if (e > elapsed[0]) {
+				items[0] = i;
+				elapsed[0] = e;
+				siftDown(items, elapsed, size);
+			}
+		}
+		int[] result = new int[size];
+		for (int r = size - 1; r >= 0; r--) {
+			result[r] = items[0];
+			items[0] = items[r];
+			elapsed[0] = elapsed[r];
+			siftDown(items, elapsed, r);
+		}
+		return result;
+	}
+
+	private static void siftUp(int[] items, long[] keys, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (keys[parent] <= keys[i]) {
+				return;
+			}
+			swap(items, keys, i, parent);
+			i = parent;
+		}
+	}
+
+	private static void siftDown(int[] items, long[] keys, int size) {
+		int i = 0;
+		for (;;) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				return;
+			}
+			if (child + 1 < size && keys[child + 1] < keys[child]) {
+				child++;
+			}
+			if (keys[i] <= keys[child]) {
+				return;
+			}
+			swap(items, keys, i, child);
+			i = child;
+		}
+	}
+
+	private static void swap(int[] items, long[] keys, int a, int b) {
+		int item = items[a];
+		items[a] = items[b];
+		items[b] = item;
+		long key = keys[a];
+		keys[a] = keys[b];
+		keys[b] = key;
+	}
+
+	/**
+	 * Returns a monitor of a single item, polled every
+	 * {@link #DEFAULT_VIEW_PERIOD_MILLIS} milliseconds.
+	 *
+	 * @see #monitor(int, long)
+	 */
+	public DeterminateProgressMonitor monitor(int item) {
+		return monitor(item, DEFAULT_VIEW_PERIOD_MILLIS);
+	}
+
+	/**
+	 * Returns a monitor of a single item, for a dialog to display. The item's
+	 * row is polled on the shared background thread and the monitor is only
+	 * updated when it changes. Polling stops once the item completes or is
+	 * canceled, or the monitor is no longer referenced. Canceling the monitor
+	 * cancels the item. Until the item starts, the monitor is new and its
+	 * total is not known, so it does not complete.
+	 * <p>
+	 * Progress beyond the range of an <code>int</code> is scaled down.
+	 *
+	 * @param item
+	 *            the id of the item
+	 * @param periodMillis
+	 *            the milliseconds between polling the item
+	 * @return a new monitor of the item
+	 */
+	public DeterminateProgressMonitor monitor(final int item, long periodMillis) {
+		if (item < 0 || item >= capacity) {
+			throw new IndexOutOfBoundsException("item " + item);
+		}
+		// an empty range of a known total would complete the monitor before
+		// the item starts
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				0, 0, false);
+		monitor.addProgressListener(new ProgressListener() {
+			@Override
+			public void statusChanged(StatusEvent e) {
+			}
+
+			@Override
+			public void canceled(StatusEvent e) {
+				cancel(item);
+			}
+		});
+		View view = new View(item, monitor);
+		view.poller = SharedScheduler.get().scheduleAtFixedRate(view, 0,
+				periodMillis, TimeUnit.MILLISECONDS);
+		return monitor;
+	}
+
+	private int nowMillis() {
+		return (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- originNanos);
+	}
+
+	/** The totals of a range of items. */
+	public static class Rollup {
+
+		long current;
+		long max;
+		final int[] counts = new int[STATES.length];
+
+		Rollup() {
+		}
+
+		/**
+		 * Returns the current progress of the items.
+		 *
+		 * @return the sum of the current progress
+		 */
+		public long getCurrent() {
+			return current;
+		}
+
+		/**
+		 * Returns the maximum progress of the items.
+		 *
+		 * @return the sum of the maximum progress
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Returns the number of the items in a state.
+		 *
+		 * @param s
+		 *            the state
+		 * @return the number of items in the state
+		 */
+		public int getCount(State s) {
+			return counts[s.ordinal()];
+		}
+	}
+
+	/** Polls an item's row for the monitor viewing it. */
+	private class View implements Runnable {
+
+		final int item;
+		/** Weak, so an abandoned view stops polling. */
+		final WeakReference<DeterminateProgressMonitor> monitor;
+		ScheduledFuture<?> poller;
+		long polledCurrent = -1;
+		long polledMax = -1;
+		int polledState = -1;
+
+		View(int item, DeterminateProgressMonitor monitor) {
+			this.item = item;
+			this.monitor = new WeakReference<DeterminateProgressMonitor>(
+					monitor);
+		}
+
+		@Override
+		public void run() {
+			DeterminateProgressMonitor m = monitor.get();
+			if (m == null) {
+				poller.cancel(false);
+				return;
+			}
+			long c = current.get(item);
+			long x = max.get(item);
+			int s = state.get(item);
+			if (c == polledCurrent && x == polledMax && s == polledState) {
+				return;
+			}
+			polledCurrent = c;
+			polledMax = x;
+			if (s == NEW) {
+				// the monitor stays NEW with an unknown total until the item
+				// starts
+				polledState = s;
+				return;
+			}
+			// scale progress which does not fit in an int
+			long scale = x / Integer.MAX_VALUE + 1;
+			if (m.getMax() != (int) (x / scale)) {
+				m.setMax((int) (x / scale));
+			}
+			if (s == RUNNING && polledState != RUNNING) {
+				m.start();
+			}
+			polledState = s;
+			if (s == COMPLETED) {
+				if (!m.isTotalKnown()) {
+					m.setTotalKnown(true);
+				}
+				m.setCurrent(m.getMax());
+			} else {
+				// only a completed item completes the monitor
+				m.setCurrent((int) Math.max(0,
+						Math.min(c / scale, m.getMax() - 1L)));
+				// with an empty range the current value is the maximum, so the
+				// total is only known once there is progress to make
+				if (m.isTotalKnown() != (m.getMax() > 0)) {
+					m.setTotalKnown(m.getMax() > 0);
+				}
+			}
+			if (s == CANCELED && !m.isCanceled()) {
+				m.cancel();
+			}
+			if (s == COMPLETED || s == CANCELED) {
+				poller.cancel(false);
+			}
+		}
+	}
+
+	/** A column of longs. */
+	private abstract static class Longs {
+
+		abstract long get(int i);
+
+		abstract void set(int i, long value);
+
+		abstract long getAndSet(int i, long value);
+
+		abstract long getAndAdd(int i, long delta);
+	}
+
+	/** A column of ints. */
+	private abstract static class Ints {
+
+		abstract int get(int i);
+
+		abstract void set(int i, int value);
+
+		abstract boolean compareAndSet(int i, int expected, int value);
+	}
+
+	private static class HeapLongs extends Longs {
+
+		private static final VarHandle LONGS = MethodHandles
+				.arrayElementVarHandle(long[].class);
+		private final long[] values;
+
+		HeapLongs(int capacity) {
+			values = new long[capacity];
+		}
+
+		@Override
+		long get(int i) {
+			return (long) LONGS.getVolatile(values, i);
+		}
+
+		@Override
+		void set(int i, long value) {
+			LONGS.setVolatile(values, i, value);
+		}
+
+		@Override
+		long getAndSet(int i, long value) {
+			return (long) LONGS.getAndSet(values, i, value);
+		}
+
+		@Override
+		long getAndAdd(int i, long delta) {
+			return (long) LONGS.getAndAdd(values, i, delta);
+		}
+	}
+
+	private static class DirectLongs extends Longs {
+
+		private static final VarHandle LONGS = MethodHandles
+				.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+		private final ByteBuffer values;
+
+		DirectLongs(int capacity) {
+			values = ByteBuffer.allocateDirect(capacity * 8).order(
+					ByteOrder.nativeOrder());
+		}
+
+		@Override
+		long get(int i) {
+			return (long) LONGS.getVolatile(values, i << 3);
+		}
+
+		@Override
+		void set(int i, long value) {
+			LONGS.setVolatile(values, i << 3, value);
+		}
+
+		@Override
+		long getAndSet(int i, long value) {
+			return (long) LONGS.getAndSet(values, i << 3, value);
+		}
+
+		@Override
+		long getAndAdd(int i, long delta) {
+			return (long) LONGS.getAndAdd(values, i << 3, delta);
+		}
+	}
+
+	private static class HeapInts extends Ints {
+
+		private static final VarHandle INTS = MethodHandles
+				.arrayElementVarHandle(int[].class);
+		private final int[] values;
+
+		HeapInts(int capacity) {
+			values = new int[capacity];
+		}
+
+		@Override
+		int get(int i) {
+			return (int) INTS.getVolatile(values, i);
+		}
+
+		@Override
+		void set(int i, int value) {
+			// timestamps need no ordering with the other columns
+			INTS.setOpaque(values, i, value);
+		}
+
+		@Override
+		boolean compareAndSet(int i, int expected, int value) {
+			return INTS.compareAndSet(values, i, expected, value);
+		}
+	}
+
+	private static class DirectInts extends Ints {
+
+		private static final VarHandle INTS = MethodHandles
+				.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+		private final ByteBuffer values;
+
+		DirectInts(int capacity) {
+			values = ByteBuffer.allocateDirect(capacity * 4).order(
+					ByteOrder.nativeOrder());
+		}
+
+		@Override
+		int get(int i) {
+			return (int) INTS.getVolatile(values, i << 2);
+		}
+
+		@Override
+		void set(int i, int value) {
+			INTS.setOpaque(values, i << 2, value);
+		}
+
+		@Override
+		boolean compareAndSet(int i, int expected, int value) {
+			return INTS.compareAndSet(values, i << 2, expected, value);
+		}
+	}
+}
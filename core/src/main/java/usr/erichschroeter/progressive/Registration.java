@@ -0,0 +1,141 @@
+package usr.erichschroeter.progressive;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.EventListener;
+
+/**
+ * A listener registered with a monitor through a {@link ListenerRegistration}.
+ * The registration takes the listener's place in the monitor's listener lists
+ * and forwards events to it until closed.
+ * <p>
+ * A weak registration only holds the listener weakly. Once the listener is
+ * collected its reference is enqueued on its monitor's queue, and the
+ * registration is closed the next time the monitor fires an event or a
+ * listener is registered with it, whichever comes first. The queue belongs to
+ * the monitor, so an abandoned monitor is collected with its registrations.
+ * 
+ * @author Erich Schroeter
+ */
+final class Registration implements ListenerRegistration, ProgressListener,
+		StallListener {
+
+	private final AbstractProgressMonitor monitor;
+	/** The listener, or <code>null</code> if held weakly. */
+	private final EventListener listener;
+	private final ListenerReference reference;
+	/** Whether to close once the monitor completes or is canceled. */
+	private final boolean untilFinished;
+	private volatile boolean closed;
+
+	private Registration(AbstractProgressMonitor monitor,
+			EventListener listener, boolean weak, boolean untilFinished) {
+		this.monitor = monitor;
+		this.listener = weak ? null : listener;
+		this.reference = weak ? new ListenerReference(listener, this,
+				monitor.collectedListeners()) : null;
+		this.untilFinished = untilFinished;
+	}
+
+	/** Registers a listener held strongly until the monitor finishes. */
+	static Registration untilFinished(AbstractProgressMonitor monitor,
+			EventListener listener) {
+		monitor.expungeCollectedListeners();
+		return new Registration(monitor, listener, false, true);
+	}
+
+	/** Registers a listener held weakly. */
+	static Registration weak(AbstractProgressMonitor monitor,
+			EventListener listener) {
+		monitor.expungeCollectedListeners();
+		return new Registration(monitor, listener, true, false);
+	}
+
+	/** Closes the registrations of the collected weak listeners queued. */
+	static void expunge(ReferenceQueue<EventListener> queue) {
+		ListenerReference reference;
+		while ((reference = (ListenerReference) queue.poll()) != null) {
+			reference.registration.close();
+		}
+	}
+
+	/** Returns the listener, or <code>null</code> if closed or collected. */
+	private EventListener listener() {
+		if (closed) {
+			return null;
+		}
+		EventListener l = reference == null ? listener : reference.get();
+		if (l == null) {
+			close();
+		}
+		return l;
+	}
+
+	@Override
+	public void statusChanged(StatusEvent e) {
+		EventListener l = listener();
+		if (l != null) {
+			((ProgressListener) l).statusChanged(e);
+			if (untilFinished && e.isCompleted()) {
+				close();
+			}
+		}
+	}
+
+	@Override
+	public void canceled(StatusEvent e) {
+		EventListener l = listener();
+		if (l != null) {
+			((ProgressListener) l).canceled(e);
+			if (untilFinished) {
+				close();
+			}
+		}
+	}
+
+	@Override
+	public void stalled(StallEvent e) {
+		EventListener l = listener();
+		if (l != null) {
+			((StallListener) l).stalled(e);
+		}
+	}
+
+	@Override
+	public void resumed(StallEvent e) {
+		EventListener l = listener();
+		if (l != null) {
+			((StallListener) l).resumed(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		monitor.removeRegistration(this);
+		if (reference != null) {
+			reference.clear();
+		}
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/** A weak reference to a listener which knows its registration. */
+	private static class ListenerReference extends
+			WeakReference<EventListener> {
+
+		final Registration registration;
+
+		ListenerReference(EventListener listener, Registration registration,
+				ReferenceQueue<EventListener> queue) {
+			super(listener, queue);
+			this.registration = registration;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package usr.erichschroeter.progressive;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Accounts the CPU time and the bytes allocated by the threads working for a
+ * monitor, read from the per thread counters of the JVM. Only used when
+ * {@link ManagementSupport#AVAILABLE}.
+ * <p>
+ * Each thread is accounted from when it begins working for the monitor, or
+ * from its first update if it never said so, until it ends working or
+ * finishes the monitor. The library's shared background thread only updates
+ * monitors on behalf of their workers, so it is never accounted unless it
+ * begins working for a monitor. A thread's counters are read when it begins
+ * and ends, and when it updates the monitor, but at most once per
+ * {@link #MIN_SAMPLE_NANOS}, so frequent updates cost little more than
+ * reading the clock. As the counters are cumulative, skipped reads lose
+ * nothing.
+ *
+ * @author Erich Schroeter
+ */
+final class ResourceAccount {
+
+	/** The minimum time between reading the counters of a thread. */
+	static final long MIN_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/** The counters, or <code>null</code> if the JVM does not support them. */
+	private static final ThreadMXBean THREADS = threads();
+
+	private final LongAdder cpuNanos = new LongAdder();
+	private final LongAdder allocatedBytes = new LongAdder();
+	/** The latest reading of each thread working for the monitor. */
+	private final ThreadLocal<Reading> readings = new ThreadLocal<Reading>();
+
+	private static ThreadMXBean threads() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory
+				.getThreadMXBean();
+		if (!(bean instanceof ThreadMXBean)) {
+			return null;
+		}
+		ThreadMXBean threads = (ThreadMXBean) bean;
+		if (!threads.isCurrentThreadCpuTimeSupported()
+				|| !threads.isThreadAllocatedMemorySupported()) {
+			return null;
+		}
+		if (!threads.isThreadCpuTimeEnabled()) {
+			threads.setThreadCpuTimeEnabled(true);
+		}
+		if (!threads.isThreadAllocatedMemoryEnabled()) {
+			threads.setThreadAllocatedMemoryEnabled(true);
+		}
+		return threads;
+	}
+
+	/** Returns whether the JVM supports the per thread counters. */
+	static boolean isSupported() {
+		return THREADS != null;
+	}
+
+	/** Begins accounting the current thread, or reads it if it already is. */
+	void begin() {
+		Reading reading = readings.get();
+		if (reading == null) {
+			reading = new Reading();
+			read(reading);
+			readings.set(reading);
+		} else {
+			sample(true);
+		}
+	}
+
+	/** Reads and ends accounting the current thread, if it is accounted. */
+	void end() {
+		if (readings.get() != null) {
+			sample(true);
+			readings.remove();
+		}
+	}
+
+	/**
+	 * Accounts the current thread's usage since its previous reading, unless
+	 * that was less than {@link #MIN_SAMPLE_NANOS} ago and not forced. A thread
+	 * not accounted yet begins being accounted, except the shared thread,
+	 * which would otherwise be charged with everything it does for other
+	 * monitors between updates.
+	 */
+	void sample(boolean force) {
+		Reading reading = readings.get();
+		if (reading == null) {
+			if (!SharedScheduler.isCurrentThread()) {
+				begin();
+			}
+			return;
+		}
+		long now = System.nanoTime();
+		if (!force && now - reading.nanos < MIN_SAMPLE_NANOS) {
+			return;
+		}
+		long cpu = reading.cpuNanos;
+		long allocated = reading.allocatedBytes;
+		read(reading);
+		cpuNanos.add(reading.cpuNanos - cpu);
+		allocatedBytes.add(reading.allocatedBytes - allocated);
+	}
+
+	private static void read(Reading reading) {
+		reading.nanos = System.nanoTime();
+		reading.cpuNanos = THREADS.getCurrentThreadCpuTime();
+		reading.allocatedBytes = THREADS.getThreadAllocatedBytes(Thread
+				.currentThread().getId());
+	}
+
+	/** Returns the CPU time accounted so far. */
+	long getCpuNanos() {
+		return cpuNanos.sum();
+	}
+
+	/** Returns the bytes allocated accounted so far. */
+	long getAllocatedBytes() {
+		return allocatedBytes.sum();
+	}
+
+	/** A thread's counters when last read. */
+	private static class Reading {
+
+		long nanos;
+		long cpuNanos;
+		long allocatedBytes;
+	}
+}
@@ -0,0 +1,105 @@
+package usr.erichschroeter.progressive;
+
+/**
+ * The CPU time and the bytes allocated by the threads working for a monitor,
+ * in total and per unit of progress, so the tasks costing the most can be
+ * found among many running in one JVM.
+ *
+ * @author Erich Schroeter
+ * @see AbstractProgressMonitor#setResourceAccounting(boolean)
+ */
+public class ResourceUsage {
+
+	private final long cpuNanos;
+	private final long allocatedBytes;
+	private final long units;
+
+	/**
+	 * Constructs a <code>ResourceUsage</code>.
+	 *
+	 * @param cpuNanos
+	 *            the CPU time in nanoseconds
+	 * @param allocatedBytes
+	 *            the bytes allocated
+	 * @param units
+	 *            the units of progress made
+	 */
+	public ResourceUsage(long cpuNanos, long allocatedBytes, long units) {
+		this.cpuNanos = cpuNanos;
+		this.allocatedBytes = allocatedBytes;
+		this.units = units;
+	}
+
+	/**
+	 * Returns whether this JVM can account the CPU time and allocation of
+	 * threads. It cannot without the <code>java.management</code> and
+	 * <code>jdk.management</code> modules, or if it lacks the counters.
+	 *
+	 * @return <code>true</code> if supported, else <code>false</code>
+	 */
+	public static boolean isSupported() {
+		return ManagementSupport.AVAILABLE && ResourceAccount.isSupported();
+	}
+
+	/**
+	 * Returns the CPU time in nanoseconds.
+	 *
+	 * @return the CPU time
+	 */
+	public long getCpuNanos() {
+		return cpuNanos;
+	}
+
+	/**
+	 * Returns the CPU time in seconds.
+	 *
+	 * @return the CPU seconds
+	 */
+	public double getCpuSeconds() {
+		return cpuNanos / 1e9;
+	}
+
+	/**
+	 * Returns the bytes allocated.
+	 *
+	 * @return the bytes allocated
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * Returns the units of progress made, the current value less the minimum
+	 * of a determinate monitor, or 0 for an indeterminate one.
+	 *
+	 * @return the units of progress
+	 */
+	public long getUnits() {
+		return units;
+	}
+
+	/**
+	 * Returns the CPU seconds per unit of progress.
+	 *
+	 * @return the CPU seconds per unit, or <code>NaN</code> if no progress was
+	 *         made
+	 */
+	public double getCpuSecondsPerUnit() {
+		return units > 0 ? getCpuSeconds() / units : Double.NaN;
+	}
+
+	/**
+	 * Returns the bytes allocated per unit of progress.
+	 *
+	 * @return the bytes per unit, or <code>NaN</code> if no progress was made
+	 */
+	public double getAllocatedBytesPerUnit() {
+		return units > 0 ? (double) allocatedBytes / units : Double.NaN;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%.3f CPU s, %d bytes allocated, %d units",
+				getCpuSeconds(), allocatedBytes, units);
+	}
+}
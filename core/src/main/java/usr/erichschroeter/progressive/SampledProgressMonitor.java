@@ -0,0 +1,223 @@
+package usr.erichschroeter.progressive;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * A determinate monitor for the tightest loops, whose workers never fire
+ * events themselves. Each worker counts its progress in its own
+ * {@link Counter}, which costs a single store per item no matter how many
+ * listeners are attached, and a {@link ProgressSampler} sums the counters at a
+ * fixed rate and fires a {@link DeterminateStatusEvent} whenever the total
+ * changed.
+ * <p>
+ * The current value is the minimum plus the total counted since the monitor
+ * was started, and the monitor completes once the total reaches the maximum.
+ * Progress should only be made through counters, as the current value is
+ * replaced by every sample. Listeners are called on the sampler's thread.
+ * 
+ * <pre>
+ * SampledProgressMonitor monitor = new SampledProgressMonitor(0, items.length);
+ * monitor.start();
+ * // on each worker
+ * SampledProgressMonitor.Counter counter = monitor.newCounter();
+ * for (int i = from; i &lt; to &amp;&amp; !counter.isCanceled(); i++) {
+ * 	process(items[i]);
+ * 	counter.increment();
+ * }
+ * </pre>
+ * 
+ * @author Erich Schroeter
+ * @see ProgressSampler
+ */
+public class SampledProgressMonitor extends DeterminateProgressMonitor {
+
+	private static final Counter[] NO_COUNTERS = new Counter[0];
+
+	private final ProgressSampler sampler;
+	/** The counters of the workers, copied on write. */
+	private volatile Counter[] counters = NO_COUNTERS;
+	/** The total counted when the monitor was last started. */
+	private long startTotal;
+	/** The total of the latest sample fired. */
+	private long sampledTotal = -1;
+	/** The number of samples taken, and of the latest one fired. */
+	private long sampleSequence;
+	private long firedSequence;
+
+	/**
+	 * Constructs a <code>SampledProgressMonitor</code> sampled by the
+	 * {@link ProgressSampler#getDefault() default sampler}.
+	 * 
+	 * @param min
+	 *            the minimum boundary for the status value
+	 * @param max
+	 *            the maximum boundary for the status value
+	 */
+	public SampledProgressMonitor(int min, int max) {
+		this(min, max, ProgressSampler.getDefault());
+	}
+
+	/**
+	 * Constructs a <code>SampledProgressMonitor</code> sampled by the
+	 * specified sampler.
+	 * 
+	 * @param min
+	 *            the minimum boundary for the status value
+	 * @param max
+	 *            the maximum boundary for the status value
+	 * @param sampler
+	 *            the sampler firing the monitor's events
+	 */
+	public SampledProgressMonitor(int min, int max, ProgressSampler sampler) {
+		super(min, max, min);
+		if (sampler == null) {
+			throw new NullPointerException("sampler");
+		}
+		this.sampler = sampler;
+	}
+
+	/**
+	 * Returns a new counter for a worker to count its progress in. A counter
+	 * must only be incremented by one thread at a time.
+	 * 
+	 * @return a new counter
+	 */
+	public Counter newCounter() {
+		Counter counter = new Counter(this);
+		synchronized (this) {
+			Counter[] copy = Arrays.copyOf(counters, counters.length + 1);
+			copy[counters.length] = counter;
+			counters = copy;
+		}
+		return counter;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Also starts sampling the counters.
+	 */
+	@Override
+	public void start(String status) {
+		synchronized (this) {
+			startTotal = total();
+			sampledTotal = 0;
+		}
+		super.start(status);
+		sampler.add(this);
+	}
+
+	/**
+	 * Samples the counters now rather than waiting for the sampler, firing a
+	 * status event if the total changed. This is useful once the workers are
+	 * done, to complete the monitor without delay.
+	 * <p>
+	 * The listeners are called without holding the monitor's lock, which
+	 * guards adding listeners and arming timeouts.
+	 */
+	public void sample() {
+		for (;;) {
+			long sequence;
+			int current;
+			synchronized (this) {
+				long total = total() - startTotal;
+				if (total == sampledTotal || isFinished()) {
+					return;
+				}
+				sampledTotal = total;
+				sequence = ++sampleSequence;
+				long range = (long) getMax() - getMin();
+				current = getMin() + (int) Math.min(total, range);
+			}
+			setCurrent(current);
+			synchronized (this) {
+				if (sequence > firedSequence) {
+					firedSequence = sequence;
+					return;
+				}
+				// a later sample was fired first and has just been replaced by
+				// this older one, so sample again
+				sampledTotal = -1;
+			}
+		}
+	}
+
+	/** Returns the sum of the counters. */
+	private long total() {
+		long total = 0;
+		for (Counter counter : counters) {
+			total += counter.get();
+		}
+		return total;
+	}
+
+	/** Fields placed before the value, so it has a cache line to itself. */
+	@SuppressWarnings("unused")
+	abstract static class CounterPadding {
+		long p01, p02, p03, p04, p05, p06, p07;
+	}
+
+	/** The value of a counter. */
+	abstract static class CounterValue extends CounterPadding {
+		/** Written by the counter's worker only, read by the sampler. */
+		long value;
+	}
+
+	/**
+	 * Counts the progress of one worker. Counting is a plain read and an
+	 * opaque store of a value on a cache line of its own, so workers neither
+	 * synchronize with each other nor with the sampler.
+	 */
+	public static final class Counter extends CounterValue {
+
+		private static final VarHandle VALUE;
+		static {
+			try {
+				VALUE = MethodHandles.lookup().findVarHandle(
+						CounterValue.class, "value", long.class);
+			} catch (ReflectiveOperationException e) {
+				throw new ExceptionInInitializerError(e);
+			}
+		}
+
+		@SuppressWarnings("unused")
+		private long p11, p12, p13, p14, p15, p16, p17;
+		private final SampledProgressMonitor monitor;
+
+		Counter(SampledProgressMonitor monitor) {
+			this.monitor = monitor;
+		}
+
+		/** Counts one item of progress. */
+		public void increment() {
+			VALUE.setOpaque(this, value + 1);
+		}
+
+		/**
+		 * Counts items of progress.
+		 * 
+		 * @param items
+		 *            the number of items
+		 */
+		public void add(long items) {
+			VALUE.setOpaque(this, value + items);
+		}
+
+		/**
+		 * Returns whether the monitor has been canceled, a single volatile
+		 * read.
+		 * 
+		 * @return <code>true</code> if canceled, else <code>false</code>
+		 */
+		public boolean isCanceled() {
+			return monitor.isCanceled();
+		}
+
+		/** Returns the value as last stored by the worker. */
+		long get() {
+			return (long) VALUE.getOpaque(this);
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package usr.erichschroeter.progressive;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combines the worker slots of a {@link SharedProgressRegion} into a single
+ * {@link DeterminateProgressMonitor} in the parent process. The slots are
+ * polled on the shared background thread and the monitor is only updated when
+ * the combined progress changes.
+ * <p>
+ * The monitor completes once every slot has completed. A slot no worker has
+ * written to yet counts as pending, so a worker with nothing to do must still
+ * complete its slot, and the parent completes the slots of workers it did not
+ * start. Canceling the monitor signals the workers through the region.
+ * <p>
+ * The combined progress is scaled down to fit the range of the monitor, which
+ * must hold at least one unit above its minimum. A listener of the monitor
+ * which throws does not stop the polling, and the first such failure is kept
+ * for {@link #getFailure()}.
+ * 
+ * @author Erich Schroeter
+ * @see SharedProgressRegion#create(java.io.File, int)
+ */
+public class SharedProgressAggregator implements ProgressListener {
+
+	/** The default milliseconds between polling the slots. */
+	public static final long DEFAULT_PERIOD_MILLIS = 100;
+
+	private final SharedProgressRegion region;
+	private final DeterminateProgressMonitor monitor;
+	private ScheduledFuture<?> poller;
+	private volatile Throwable failure;
+
+	/**
+	 * Constructs a <code>SharedProgressAggregator</code> which reports the
+	 * combined progress of the <code>region</code> slots to
+	 * <code>monitor</code>.
+	 * 
+	 * @param region
+	 *            the region the workers write to
+	 * @param monitor
+	 *            the monitor to report the combined progress to
+	 */
+	public SharedProgressAggregator(SharedProgressRegion region,
+			DeterminateProgressMonitor monitor) {
+		if (monitor.getMin() == Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					"the monitor's range cannot hold any progress");
+		}
+		this.region = region;
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Starts polling the slots every {@link #DEFAULT_PERIOD_MILLIS}
+	 * milliseconds.
+	 * 
+	 * @see #start(long)
+	 */
+	public void start() {
+		start(DEFAULT_PERIOD_MILLIS);
+	}
+
+	/**
+	 * Starts polling the slots, until every slot completes, the monitor is
+	 * canceled, or {@link #stop()} is called.
+	 * 
+	 * @param periodMillis
+	 *            the milliseconds between polling the slots
+	 */
+	public synchronized void start(long periodMillis) {
+		if (poller != null) {
+			return;
+		}
+		monitor.addProgressListener(this);
+		poller = SharedScheduler.get().scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					poll();
+				} catch (Throwable e) {
+					// a failing listener must not cancel the periodic task
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+		}, 0, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/** Stops polling the slots. */
+	public synchronized void stop() {
+		if (poller != null) {
+			poller.cancel(false);
+			poller = null;
+			monitor.removeProgressListener(this);
+		}
+	}
+
+	/**
+	 * Returns the first failure reporting the combined progress to the
+	 * monitor, such as a listener of the monitor throwing.
+	 * 
+	 * @return the failure, or <code>null</code> if none
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/** Reads every slot and reports the combined progress. */
+	void poll() {
+		long current = 0;
+		long max = 0;
+		int completed = 0;
+		int slots = region.getSlotCount();
+		for (int i = 0; i < slots; i++) {
+			int offset = SharedProgressRegion.slotOffset(i);
+			long state = region.get(offset + SharedProgressRegion.STATE);
+			if (state == SharedProgressRegion.STATE_IDLE) {
+				continue;
+			}
+			if (state == SharedProgressRegion.STATE_COMPLETED) {
+				completed++;
+			}
+			max += region.get(offset + SharedProgressRegion.MAX);
+			current += region.get(offset + SharedProgressRegion.CURRENT);
+		}
+		if (completed == slots) {
+			stop();
+			monitor.setCurrent(monitor.getMax());
+			return;
+		}
+		int min = monitor.getMin();
+		// the monitor counts in ints, so large totals are scaled down
+		long range = (long) Integer.MAX_VALUE - min;
+		if (max <= 0 || range < 1) {
+			return;
+		}
+		int shift = 0;
+		while ((max >> shift) > range) {
+			shift++;
+		}
+		int scaledMax = (int) (min + (max >> shift));
+		// until every worker completes the progress must not look completed
+		int scaledCurrent = (int) (min + Math.max(0,
+				Math.min(current >> shift, (max >> shift) - 1)));
+		if (scaledMax != monitor.getMax()) {
+			monitor.setMax(scaledMax);
+		}
+		if (scaledCurrent != monitor.getCurrent()) {
+			monitor.setCurrent(scaledCurrent);
+		}
+	}
+
+	@Override
+	public void statusChanged(StatusEvent e) {
+	}
+
+	/**
+	 * Signals the workers that the work has been canceled and stops polling.
+	 * 
+	 * @param e
+	 *            the status event
+	 */
+	@Override
+	public void canceled(StatusEvent e) {
+		region.cancel();
+		stop();
+	}
+}
@@ -0,0 +1,214 @@
+package usr.erichschroeter.progressive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A memory-mapped file through which processes on the same machine share
+ * progress. The region is divided into fixed slots, one per worker process,
+ * each on its own cache line. Workers write their progress into their slot
+ * through a {@link SharedProgressSlot} and a parent process combines the
+ * slots into a single monitor with a {@link SharedProgressAggregator}.
+ * <p>
+ * Slot values are written with release semantics and read with acquire
+ * semantics, so no locking or serialization is involved in an update.
+ * Cancellation flows the other way: the parent sets a flag in the header which
+ * every worker polls.
+ * 
+ * @author Erich Schroeter
+ * @see SharedProgressSlot
+ * @see SharedProgressAggregator
+ */
+public class SharedProgressRegion {
+
+	/** The slot has not been written to yet. */
+	static final long STATE_IDLE = 0;
+	/** The worker has reported progress. */
+	static final long STATE_RUNNING = 1;
+	/** The worker has completed. */
+	static final long STATE_COMPLETED = 2;
+
+	/** The bytes of the header and of each slot, one cache line. */
+	static final int LINE = 64;
+	static final int CURRENT = 0;
+	static final int MAX = 8;
+	static final int STATE = 16;
+
+	private static final int MAGIC = 0x50525347;
+	private static final int VERSION = 1;
+	private static final int HEADER_MAGIC = 0;
+	private static final int HEADER_VERSION = 4;
+	private static final int HEADER_SLOTS = 8;
+	private static final int HEADER_CANCEL = 16;
+
+	private static final VarHandle LONGS = MethodHandles
+			.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final int slotCount;
+
+	private SharedProgressRegion(RandomAccessFile file, MappedByteBuffer buffer,
+			int slotCount) {
+		this.file = file;
+		this.buffer = buffer;
+		this.slotCount = slotCount;
+	}
+
+	/**
+	 * Creates a region in <code>file</code> with room for
+	 * <code>slotCount</code> workers, replacing any previous contents. This is
+	 * called by the parent process before starting its workers.
+	 * 
+	 * @param file
+	 *            the file to map
+	 * @param slotCount
+	 *            the number of worker slots
+	 * @return the created region
+	 * @throws IOException
+	 *             if the file cannot be created or mapped
+	 */
+	public static SharedProgressRegion create(File file, int slotCount)
+			throws IOException {
+		if (slotCount < 1) {
+			throw new IllegalArgumentException("slotCount must be positive");
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			long size = LINE + (long) slotCount * LINE;
+			raf.setLength(0);
+			raf.setLength(size);
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.nativeOrder());
+			buffer.putInt(HEADER_VERSION, VERSION);
+			buffer.putInt(HEADER_SLOTS, slotCount);
+			// the magic is published last so workers never see a partial header
+			VarHandle.releaseFence();
+			buffer.putInt(HEADER_MAGIC, MAGIC);
+			return new SharedProgressRegion(raf, buffer, slotCount);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a region previously created in <code>file</code>. This is called
+	 * by worker processes.
+	 * 
+	 * @param file
+	 *            the file to map
+	 * @return the opened region
+	 * @throws IOException
+	 *             if the file cannot be mapped or is not a progress region
+	 */
+	public static SharedProgressRegion open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			long size = raf.length();
+			if (size < LINE) {
+				throw new IOException("not a progress region: " + file);
+			}
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.nativeOrder());
+			if (buffer.getInt(HEADER_MAGIC) != MAGIC) {
+				throw new IOException("not a progress region: " + file);
+			}
+			VarHandle.acquireFence();
+			if (buffer.getInt(HEADER_VERSION) != VERSION) {
+				throw new IOException("unsupported progress region version: "
+						+ file);
+			}
+			int slotCount = buffer.getInt(HEADER_SLOTS);
+			if (slotCount < 1 || LINE + (long) slotCount * LINE > size) {
+				throw new IOException("corrupt progress region: " + file);
+			}
+			return new SharedProgressRegion(raf, buffer, slotCount);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of worker slots in the region.
+	 * 
+	 * @return the slot count
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * Returns the slot at <code>index</code> for a worker to write its
+	 * progress to. Each slot must only be written to by a single worker.
+	 * 
+	 * @param index
+	 *            the slot index, from 0 to <code>getSlotCount() - 1</code>
+	 * @return the slot
+	 */
+	public SharedProgressSlot slot(int index) {
+		if (index < 0 || index >= slotCount) {
+			throw new IndexOutOfBoundsException("slot " + index + " of "
+					+ slotCount);
+		}
+		return new SharedProgressSlot(this, slotOffset(index));
+	}
+
+	/**
+	 * Signals every worker that the work has been canceled.
+	 * 
+	 * @see SharedProgressSlot#isCanceled()
+	 */
+	public void cancel() {
+		LONGS.setRelease(buffer, HEADER_CANCEL, 1L);
+	}
+
+	/**
+	 * Returns whether the work has been canceled.
+	 * 
+	 * @return <code>true</code> if canceled, else <code>false</code>
+	 */
+	public boolean isCanceled() {
+		return (long) LONGS.getAcquire(buffer, HEADER_CANCEL) != 0;
+	}
+
+	/**
+	 * Closes the file. The mapping remains valid until the region is garbage
+	 * collected.
+	 * 
+	 * @throws IOException
+	 *             if closing the file fails
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/** Reads the long at <code>offset</code> with acquire semantics. */
+	long get(int offset) {
+		return (long) LONGS.getAcquire(buffer, offset);
+	}
+
+	/** Reads the long at <code>offset</code> without ordering. */
+	long getOpaque(int offset) {
+		return (long) LONGS.getOpaque(buffer, offset);
+	}
+
+	/** Writes the long at <code>offset</code> with release semantics. */
+	void set(int offset, long value) {
+		LONGS.setRelease(buffer, offset, value);
+	}
+
+	/** Returns the offset of the slot at <code>index</code>. */
+	static int slotOffset(int index) {
+		return LINE + index * LINE;
+	}
+}
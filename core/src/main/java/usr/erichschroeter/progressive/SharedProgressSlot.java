@@ -0,0 +1,98 @@
+package usr.erichschroeter.progressive;
+
+/**
+ * A worker's slot in a {@link SharedProgressRegion}. Updates are single
+ * ordered writes into shared memory, so a worker may report progress on every
+ * item. A slot must only be written to by a single thread.
+ * 
+ * @author Erich Schroeter
+ * @see SharedProgressRegion#slot(int)
+ */
+public class SharedProgressSlot {
+
+	private final SharedProgressRegion region;
+	private final int offset;
+
+	SharedProgressSlot(SharedProgressRegion region, int offset) {
+		this.region = region;
+		this.offset = offset;
+	}
+
+	/**
+	 * Sets the total amount of work this worker will do. This should be set
+	 * before reporting any progress.
+	 * 
+	 * @param max
+	 *            the maximum progress value
+	 */
+	public void setMax(long max) {
+		region.set(offset + SharedProgressRegion.MAX, max);
+		running();
+	}
+
+	/**
+	 * Returns the total amount of work this worker will do.
+	 * 
+	 * @return the maximum progress value
+	 */
+	public long getMax() {
+		return region.getOpaque(offset + SharedProgressRegion.MAX);
+	}
+
+	/**
+	 * Sets the amount of work this worker has done.
+	 * 
+	 * @param current
+	 *            the current progress value
+	 */
+	public void setCurrent(long current) {
+		region.set(offset + SharedProgressRegion.CURRENT, current);
+	}
+
+	/**
+	 * Returns the amount of work this worker has done.
+	 * 
+	 * @return the current progress value
+	 */
+	public long getCurrent() {
+		return region.getOpaque(offset + SharedProgressRegion.CURRENT);
+	}
+
+	/**
+	 * Adds to the amount of work this worker has done.
+	 * 
+	 * @param delta
+	 *            the amount of work done since the previous update
+	 */
+	public void advance(long delta) {
+		setCurrent(getCurrent() + delta);
+	}
+
+	/**
+	 * Marks this worker as completed, setting its current progress to its
+	 * maximum. A worker with nothing to do completes its slot without setting
+	 * a maximum, as the parent waits for every slot to complete.
+	 */
+	public void complete() {
+		setCurrent(getMax());
+		region.set(offset + SharedProgressRegion.STATE,
+				SharedProgressRegion.STATE_COMPLETED);
+	}
+
+	/**
+	 * Returns whether the parent has canceled the work. This is a cheap read
+	 * which workers may poll to stop promptly.
+	 * 
+	 * @return <code>true</code> if canceled, else <code>false</code>
+	 */
+	public boolean isCanceled() {
+		return region.isCanceled();
+	}
+
+	private void running() {
+		if (region.getOpaque(offset + SharedProgressRegion.STATE) == SharedProgressRegion.STATE_IDLE) {
+			region.set(offset + SharedProgressRegion.STATE,
+					SharedProgressRegion.STATE_RUNNING);
+		}
+	}
+}
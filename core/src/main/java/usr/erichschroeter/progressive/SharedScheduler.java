@@ -0,0 +1,57 @@
+package usr.erichschroeter.progressive;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides the single background thread shared by the periodic services of
+ * this library, so monitoring any number of tasks costs one thread.
+ * <p>
+ * Tasks run on the shared thread must be short and must not block.
+ * 
+ * @author Erich Schroeter
+ */
+class SharedScheduler {
+
+	private static ScheduledExecutorService scheduler;
+	/** The thread of the scheduler, replaced if it dies. */
+	private static volatile Thread thread;
+
+	/**
+	 * Returns the shared scheduler, creating its daemon thread on first use.
+	 * 
+	 * @return the shared scheduler
+	 */
+	public static synchronized ScheduledExecutorService get() {
+		if (scheduler == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+					1, new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread created = new Thread(r,
+									"progressive-scheduler");
+							created.setDaemon(true);
+							thread = created;
+							return created;
+						}
+					});
+			// timeouts of finished monitors are canceled long before they
+			// are due, and must not be kept until then
+			executor.setRemoveOnCancelPolicy(true);
+			scheduler = executor;
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Returns whether the current thread is the shared thread.
+	 * 
+	 * @return <code>true</code> if running on the shared thread, else
+	 *         <code>false</code>
+	 */
+	static boolean isCurrentThread() {
+		return Thread.currentThread() == thread;
+	}
+
+}
@@ -0,0 +1,84 @@
+package usr.erichschroeter.progressive;
+
+/**
+ * Fired by a {@link StallWatchdog} when a monitor has not made progress within
+ * its stall threshold, and again when it resumes making progress.
+ * 
+ * @author Erich Schroeter
+ * @see StallListener
+ */
+@SuppressWarnings("serial")
+public class StallEvent extends StatusEvent {
+
+	private final boolean stalled;
+	private final long idleMillis;
+	private final long thresholdMillis;
+	private final transient StackTraceElement[] stackTrace;
+
+	/**
+	 * Constructs a <code>StallEvent</code>.
+	 * 
+	 * @param source
+	 *            the monitor which stalled or resumed
+	 * @param stalled
+	 *            <code>true</code> if the monitor stalled, <code>false</code>
+	 *            if it resumed
+	 * @param idleMillis
+	 *            the milliseconds the monitor went without progress
+	 * @param thresholdMillis
+	 *            the threshold the monitor was considered stalled at
+	 * @param stackTrace
+	 *            the worker thread's stack trace when it stalled
+	 *            (<code>null</code> permitted)
+	 */
+	public StallEvent(Object source, boolean stalled, long idleMillis,
+			long thresholdMillis, StackTraceElement[] stackTrace) {
+		super(source);
+		this.stalled = stalled;
+		this.idleMillis = idleMillis;
+		this.thresholdMillis = thresholdMillis;
+		this.stackTrace = stackTrace;
+	}
+
+	/**
+	 * Returns whether the monitor stalled or resumed.
+	 * 
+	 * @return <code>true</code> if the monitor stalled, <code>false</code> if
+	 *         it resumed
+	 */
+	public boolean isStalled() {
+		return stalled;
+	}
+
+	/**
+	 * Returns the milliseconds the monitor went without progress.
+	 * 
+	 * @return the idle milliseconds
+	 */
+	public long getIdleMillis() {
+		return idleMillis;
+	}
+
+	/**
+	 * Returns the threshold of idle milliseconds the monitor was considered
+	 * stalled at.
+	 * 
+	 * @return the stall threshold in milliseconds
+	 */
+	public long getThresholdMillis() {
+		return thresholdMillis;
+	}
+
+	/**
+	 * Returns the stack trace of the worker thread at the time the monitor
+	 * stalled. Only available if the watchdog captures stack traces and was
+	 * given the worker thread.
+	 * 
+	 * @return the worker's stack trace, or <code>null</code> if unavailable
+	 * @see StallWatchdog#setCaptureStackTraces(boolean)
+	 */
+	public StackTraceElement[] getStackTrace() {
+		return stackTrace;
+	}
+
+}
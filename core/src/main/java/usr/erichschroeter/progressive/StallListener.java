@@ -0,0 +1,17 @@
+package usr.erichschroeter.progressive;
+
+import java.util.EventListener;
+
+/**
+ * Receives stall events when a {@link AbstractProgressMonitor} watched by a
+ * {@link StallWatchdog} stops making progress, and again once it resumes.
+ * 
+ * @author Erich Schroeter
+ */
+public interface StallListener extends EventListener {
+
+	public void stalled(StallEvent e);
+
+	public void resumed(StallEvent e);
+
+}
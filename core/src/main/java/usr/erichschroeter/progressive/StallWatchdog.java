@@ -0,0 +1,299 @@
+package usr.erichschroeter.progressive;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects monitors which stop making progress. A watched monitor which goes
+ * without firing a status event for longer than its stall threshold fires a
+ * stalled {@link StallEvent} to its {@link StallListener}s, and a resumed
+ * event once progress is made again.
+ * <p>
+ * The threshold is either fixed per monitor, or adapts to how often the
+ * monitor usually makes progress: a multiple of the average interval between
+ * updates, but never less than the minimum threshold.
+ * <p>
+ * All watched monitors are checked on one shared background thread. A watched
+ * monitor records a single timestamp per status event, which is the only cost
+ * the watchdog adds to progress updates. Monitors are unwatched automatically
+ * once they complete or are canceled. A stall listener which throws does not
+ * stop the watchdog, and the first such failure is kept for
+ * {@link #getFailure()}.
+ *
+ * @author Erich Schroeter
+ * @see AbstractProgressMonitor#addStallListener(StallListener)
+ */
+public class StallWatchdog {
+
+	/** The default milliseconds between checking watched monitors. */
+	public static final long DEFAULT_PERIOD_MILLIS = 1000;
+	/** The default minimum threshold for adaptive monitors. */
+	public static final long DEFAULT_MIN_THRESHOLD_MILLIS = 10000;
+	/** The default multiple of the update interval for adaptive monitors. */
+	public static final int DEFAULT_ADAPTIVE_MULTIPLIER = 10;
+
+	private static StallWatchdog defaultWatchdog;
+
+	private final long periodMillis;
+	private final Map<AbstractProgressMonitor, Watch> watches = new ConcurrentHashMap<AbstractProgressMonitor, Watch>();
+	private volatile long minThresholdMillis = DEFAULT_MIN_THRESHOLD_MILLIS;
+	private volatile int adaptiveMultiplier = DEFAULT_ADAPTIVE_MULTIPLIER;
+	private volatile boolean captureStackTraces;
+	private ScheduledFuture<?> checker;
+	private volatile Throwable failure;
+
+	/**
+	 * Returns the watchdog shared by the application, checking monitors every
+	 * {@link #DEFAULT_PERIOD_MILLIS} milliseconds.
+	 *
+	 * @return the default watchdog
+	 */
+	public static synchronized StallWatchdog getDefault() {
+		if (defaultWatchdog == null) {
+			defaultWatchdog = new StallWatchdog(DEFAULT_PERIOD_MILLIS);
+		}
+		return defaultWatchdog;
+	}
+
+	/**
+	 * Constructs a <code>StallWatchdog</code> specifying how often watched
+	 * monitors are checked. This is also the resolution of stall detection.
+	 *
+	 * @param periodMillis
+	 *            the milliseconds between checking watched monitors
+	 */
+	public StallWatchdog(long periodMillis) {
+		if (periodMillis <= 0) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+		this.periodMillis = periodMillis;
+	}
+
+	/**
+	 * Sets the minimum threshold of monitors watched with an adaptive
+	 * threshold.
+	 *
+	 * @param minThresholdMillis
+	 *            the minimum stall threshold in milliseconds
+	 */
+	public void setMinThresholdMillis(long minThresholdMillis) {
+		this.minThresholdMillis = minThresholdMillis;
+	}
+
+	/**
+	 * Sets how many times longer than its average update interval an adaptive
+	 * monitor may go without progress before it is considered stalled.
+	 *
+	 * @param adaptiveMultiplier
+	 *            the multiple of the average update interval
+	 */
+	public void setAdaptiveMultiplier(int adaptiveMultiplier) {
+		this.adaptiveMultiplier = adaptiveMultiplier;
+	}
+
+	/**
+	 * Sets whether the stack trace of a stalled monitor's worker thread is
+	 * captured and provided by the stalled event. Only monitors watched with a
+	 * worker thread have a stack trace captured.
+	 *
+	 * @param captureStackTraces
+	 *            <code>true</code> to capture stack traces, else
+	 *            <code>false</code>
+	 * @see #watch(AbstractProgressMonitor, long, Thread)
+	 */
+	public void setCaptureStackTraces(boolean captureStackTraces) {
+		this.captureStackTraces = captureStackTraces;
+	}
+
+	/**
+	 * Watches the monitor using an adaptive threshold.
+	 * <p>
+	 * This is equivalent to <code>watch(monitor, 0, null)</code>.
+	 *
+	 * @param monitor
+	 *            the monitor to watch
+	 * @see #watch(AbstractProgressMonitor, long, Thread)
+	 */
+	public void watch(AbstractProgressMonitor monitor) {
+		watch(monitor, 0, null);
+	}
+
+	/**
+	 * Watches the monitor using a fixed threshold.
+	 * <p>
+	 * This is equivalent to <code>watch(monitor, thresholdMillis, null)</code>.
+	 *
+	 * @param monitor
+	 *            the monitor to watch
+	 * @param thresholdMillis
+	 *            the milliseconds without progress the monitor is considered
+	 *            stalled after, or 0 for an adaptive threshold
+	 * @see #watch(AbstractProgressMonitor, long, Thread)
+	 */
+	public void watch(AbstractProgressMonitor monitor, long thresholdMillis) {
+		watch(monitor, thresholdMillis, null);
+	}
+
+	/**
+	 * Watches the monitor until it completes, is canceled, or is unwatched.
+	 * Watching a monitor which is already watched replaces its threshold and
+	 * worker.
+	 *
+	 * @param monitor
+	 *            the monitor to watch
+	 * @param thresholdMillis
+	 *            the milliseconds without progress the monitor is considered
+	 *            stalled after, or 0 for an adaptive threshold
+	 * @param worker
+	 *            the thread doing the monitored work, whose stack trace is
+	 *            captured on stalls (<code>null</code> permitted)
+	 */
+	public void watch(AbstractProgressMonitor monitor, long thresholdMillis,
+			Thread worker) {
+		if (monitor == null) {
+			return;
+		}
+		// the watch is complete before it is published to the checks
+		monitor.retainProgressTime();
+		Watch watch = new Watch(monitor, Math.max(0, thresholdMillis), worker,
+				monitor.getLastProgressNanos());
+		if (watches.put(monitor, watch) != null) {
+			monitor.releaseProgressTime();
+		}
+		startChecking();
+	}
+
+	/**
+	 * Stops watching the monitor.
+	 *
+	 * @param monitor
+	 *            the monitor to stop watching
+	 */
+	public void unwatch(AbstractProgressMonitor monitor) {
+		if (monitor != null && watches.remove(monitor) != null) {
+			monitor.releaseProgressTime();
+		}
+	}
+
+	/**
+	 * Returns whether the monitor is currently considered stalled.
+	 *
+	 * @param monitor
+	 *            the watched monitor
+	 * @return <code>true</code> if stalled, <code>false</code> if not or if
+	 *         not watched
+	 */
+	public boolean isStalled(AbstractProgressMonitor monitor) {
+		Watch watch = monitor == null ? null : watches.get(monitor);
+		return watch != null && watch.stalled;
+	}
+
+	/**
+	 * Returns the first failure of a stall listener notified by this
+	 * watchdog.
+	 *
+	 * @return the failure, or <code>null</code> if none
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	private synchronized void startChecking() {
+		if (checker == null) {
+			checker = SharedScheduler.get().scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					check();
+				}
+			}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/** Checks every watched monitor, run on the shared scheduler. */
+	private void check() {
+		long now = System.nanoTime();
+		Iterator<Watch> it = watches.values().iterator();
+		while (it.hasNext()) {
+			Watch watch = it.next();
+			AbstractProgressMonitor monitor = watch.monitor;
+			if (monitor.isFinished()) {
+				it.remove();
+				monitor.releaseProgressTime();
+				continue;
+			}
+			try {
+				watch.check(now);
+			} catch (Throwable e) {
+				// a misbehaving listener must not stop the watchdog
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+	}
+
+	/** The watch state of a single monitor. */
+	private class Watch {
+
+		final AbstractProgressMonitor monitor;
+		final long thresholdMillis;
+		final Thread worker;
+		/** The latest progress time seen by the watchdog. */
+		long lastNanos;
+		/** The average interval between observed progress. */
+		long averageIntervalNanos;
+		volatile boolean stalled;
+
+		Watch(AbstractProgressMonitor monitor, long thresholdMillis,
+				Thread worker, long lastNanos) {
+			this.monitor = monitor;
+			this.thresholdMillis = thresholdMillis;
+			this.worker = worker;
+			this.lastNanos = lastNanos;
+		}
+
+		void check(long now) {
+			long progressNanos = monitor.getLastProgressNanos();
+			if (progressNanos != lastNanos) {
+				long interval = progressNanos - lastNanos;
+				averageIntervalNanos = averageIntervalNanos == 0 ? interval
+						: averageIntervalNanos
+								+ (interval - averageIntervalNanos) / 8;
+				lastNanos = progressNanos;
+				if (stalled) {
+					stalled = false;
+					monitor.fireStallEvent(new StallEvent(monitor, false,
+							TimeUnit.NANOSECONDS.toMillis(interval),
+							threshold(), null));
+				}
+				return;
+			}
+			if (stalled || monitor.getState() != AbstractProgressMonitor.State.RUNNING) {
+				return;
+			}
+			long idleMillis = TimeUnit.NANOSECONDS.toMillis(now - lastNanos);
+			long threshold = threshold();
+			if (idleMillis >= threshold) {
+				stalled = true;
+				StackTraceElement[] stackTrace = null;
+				if (captureStackTraces && worker != null) {
+					stackTrace = worker.getStackTrace();
+				}
+				monitor.fireStallEvent(new StallEvent(monitor, true,
+						idleMillis, threshold, stackTrace));
+			}
+		}
+
+		long threshold() {
+			if (thresholdMillis > 0) {
+				return thresholdMillis;
+			}
+			long adaptive = TimeUnit.NANOSECONDS.toMillis(averageIntervalNanos)
+					* adaptiveMultiplier;
+			return Math.max(minThresholdMillis, adaptive);
+		}
+	}
+}
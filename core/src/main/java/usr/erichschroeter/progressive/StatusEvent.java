@@ -0,0 +1,124 @@
+package usr.erichschroeter.progressive;
+
+import java.util.EventObject;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Supplier;
+
+/**
+ * Fired when the status of a {@link AbstractProgressMonitor} changes. The event
+ * provides the value boundaries as well as the current value, along with an
+ * optional status text.
+ * 
+ * @author Erich Schroeter
+ */
+@SuppressWarnings("serial")
+public class StatusEvent extends EventObject {
+
+	private static final AtomicReferenceFieldUpdater<StatusEvent, Object> TEXT = AtomicReferenceFieldUpdater
+			.newUpdater(StatusEvent.class, Object.class, "text");
+
+	/**
+	 * The status text, either a <code>String</code> or a {@link LazyText}
+	 * which is replaced by its <code>String</code> once read.
+	 */
+	volatile Object text;
+
+	/**
+	 * Constructs a <code>StatusEvent</code> specifying the current status value
+	 * and its boundaries.
+	 * 
+	 * @param source
+	 *            the object which fired the event
+	 */
+	public StatusEvent(Object source) {
+		this(source, null);
+	}
+
+	/**
+	 * Constructs a <code>StatusEvent</code> specifying the status text.
+	 * 
+	 * @param source
+	 *            the object that fired the event
+	 * @param text
+	 *            a status message providing status information (optional)
+	 */
+	public StatusEvent(Object source, String text) {
+		super(source);
+		this.text = text;
+	}
+
+	/**
+	 * Returns the optional status text for this status event.
+	 * <p>
+	 * A status text set from a supplier or a format is built by the first call
+	 * to this method, and the built text is kept for later calls.
+	 * 
+	 * @return the status text, or <code>null</code> if there is none
+	 */
+	public String getText() {
+		Object text = this.text;
+		if (text instanceof LazyText) {
+			String built = ((LazyText) text).evaluate();
+			// unless a newer text has been set meanwhile
+			TEXT.compareAndSet(this, text, built);
+			return built;
+		}
+		return (String) text;
+	}
+
+	/** Sets the status text. */
+	void setText(String text) {
+		this.text = text;
+	}
+
+	/** Sets the status text to be built from <code>supplier</code> when read. */
+	void setText(Supplier<String> supplier) {
+		this.text = supplier == null ? null : new LazyText(supplier);
+	}
+
+	/** Sets the status text to be formatted when read. */
+	void setText(String format, Object[] args) {
+		this.text = format == null ? null : new LazyText(format, args);
+	}
+
+	/**
+	 * Returns a copy of this event which is not changed by later updates of
+	 * the monitor which fired it. Events of derived classes which do not
+	 * override this method are returned as is.
+	 */
+	StatusEvent copy() {
+		if (getClass() != StatusEvent.class) {
+			return this;
+		}
+		StatusEvent e = new StatusEvent(getSource());
+		e.text = text;
+		return e;
+	}
+
+	/**
+	 * Returns whether the progress is completed.
+	 * <p>
+	 * This will return <code>false</code> unless overridden in a derived class.
+	 * 
+	 * @return <code>true</code> if the progress has completed, else
+	 *         <code>false</code>
+	 */
+	public boolean isCompleted() {
+		return false;
+	}
+
+	/**
+	 * Returns the CPU time and the bytes allocated so far by the threads
+	 * working for the monitor which fired this event, if it accounts them.
+	 * 
+	 * @return the resource usage, or <code>null</code> if the source is not a
+	 *         monitor accounting its resources
+	 * @see AbstractProgressMonitor#setResourceAccounting(boolean)
+	 */
+	public ResourceUsage getResourceUsage() {
+		Object source = getSource();
+		return source instanceof AbstractProgressMonitor ? ((AbstractProgressMonitor) source)
+				.getResourceUsage() : null;
+	}
+
+}
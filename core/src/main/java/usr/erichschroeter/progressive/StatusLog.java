@@ -0,0 +1,763 @@
+package usr.erichschroeter.progressive;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A progress listener keeping every status text of the monitors it listens
+ * to, for post-mortems of jobs producing far more text than fits in the heap.
+ * <p>
+ * Each text is logged with a sequence number, the time and the id of its
+ * monitor. The latest texts are held in memory, and every block of
+ * {@link #DEFAULT_BLOCK_RECORDS} texts is compressed and appended to a
+ * segment file in the log's directory as soon as it fills up, so at most one
+ * block is lost if the process dies. A segment file holds a number of blocks,
+ * each a gzip member of its own, so the whole file is readable by
+ * <code>zcat</code>:
+ *
+ * <pre>
+ * &lt;sequence&gt;\t&lt;millis&gt;\t&lt;monitor&gt;\t&lt;text&gt;
+ * </pre>
+ *
+ * with tabs, newlines and backslashes in the text escaped. Next to each
+ * segment an index file holds a line per block with its first sequence
+ * number, its count, its earliest and latest times, and its offset and length
+ * in the segment. The index is sparse, so it is small enough to be held in
+ * memory, and a range of sequence numbers or times is read by decompressing
+ * only the blocks it overlaps. Opening the directory of an earlier log
+ * continues after its latest text, with all of its texts readable.
+ * <p>
+ * Listening never locks or waits for I/O: a text is pushed onto a lock free
+ * stack, which a background thread takes as a whole every
+ * {@link #DEFAULT_FLUSH_MILLIS} milliseconds, or sooner once a block's worth
+ * is waiting. Lazily set status text is built by the background thread, and
+ * a text whose supplier throws is skipped and counted.
+ *
+ * <pre>
+ * StatusLog log = new StatusLog(Paths.get(&quot;job-42&quot;));
+ * monitor.addProgressListener(log);
+ * ...
+ * for (StatusLog.Entry entry : log.read(from, 100)) {
+ * 	System.out.println(entry);
+ * }
+ * </pre>
+ *
+ * @author Erich Schroeter
+ */
+public class StatusLog implements ProgressListener, Closeable {
+
+	/** The default number of texts per compressed block. */
+	public static final int DEFAULT_BLOCK_RECORDS = 1024;
+	/** The default number of blocks per segment file. */
+	public static final int DEFAULT_SEGMENT_BLOCKS = 64;
+	/** The default number of the latest blocks also held in memory. */
+	public static final int DEFAULT_MEMORY_BLOCKS = 64;
+	/** The default milliseconds between taking the appended texts. */
+	public static final long DEFAULT_FLUSH_MILLIS = 10;
+
+	private static final String SEGMENT_SUFFIX = ".log.gz";
+	private static final String INDEX_SUFFIX = ".idx";
+
+	private final Path directory;
+	private final int blockRecords;
+	private final int segmentBlocks;
+	private final int memoryBlocks;
+	private final long flushNanos;
+
+	/** The texts appended and not yet taken, latest first. */
+	private final AtomicReference<Pending> pending = new AtomicReference<Pending>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final AtomicLong skipped = new AtomicLong();
+	private volatile RuntimeException textFailure;
+
+	/** Guards the index and the open block, and is notified of new texts. */
+	private final Object lock = new Object();
+	private final List<Block> blocks = new ArrayList<Block>();
+	private List<Entry> open;
+	/** The sequence number of the next text. */
+	private long nextSequence;
+	/** Whether the writer thread has logged its last text. */
+	private boolean finished;
+
+	/** Only used by the writer thread. */
+	private FileChannel segment;
+	private Writer segmentIndex;
+	private Path segmentPath;
+	private int segmentBlockCount;
+
+	private final Thread writer;
+	private volatile IOException failure;
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a <code>StatusLog</code> in a directory with the default
+	 * block, segment and memory sizes.
+	 *
+	 * @param directory
+	 *            the directory of the segment files, created if missing
+	 * @throws IOException
+	 *             if the directory or an earlier index cannot be read
+	 */
+	public StatusLog(Path directory) throws IOException {
+		this(directory, DEFAULT_BLOCK_RECORDS, DEFAULT_SEGMENT_BLOCKS,
+				DEFAULT_MEMORY_BLOCKS);
+	}
+
+	/**
+	 * Constructs a <code>StatusLog</code> in a directory, continuing after the
+	 * texts of an earlier log in the directory.
+	 *
+	 * @param directory
+	 *            the directory of the segment files, created if missing
+	 * @param blockRecords
+	 *            the number of texts per compressed block
+	 * @param segmentBlocks
+	 *            the number of blocks per segment file
+	 * @param memoryBlocks
+	 *            the number of the latest blocks also held in memory
+	 * @throws IOException
+	 *             if the directory or an earlier index cannot be read
+	 */
+	public StatusLog(Path directory, int blockRecords, int segmentBlocks,
+			int memoryBlocks) throws IOException {
+		if (blockRecords <= 0 || segmentBlocks <= 0 || memoryBlocks < 0) {
+			throw new IllegalArgumentException("sizes must be positive");
+		}
+		this.directory = directory;
+		this.blockRecords = blockRecords;
+		this.segmentBlocks = segmentBlocks;
+		this.memoryBlocks = memoryBlocks;
+		this.flushNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_FLUSH_MILLIS);
+		Files.createDirectories(directory);
+		loadIndexes();
+		open = new ArrayList<Entry>(blockRecords);
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "progressive-status-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/** Reads the indexes of the segments of an earlier log. */
+	private void loadIndexes() throws IOException {
+		List<Path> indexes = new ArrayList<Path>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+				"*" + INDEX_SUFFIX)) {
+			for (Path file : files) {
+				indexes.add(file);
+			}
+		}
+		// the names are zero padded sequence numbers
+		Collections.sort(indexes);
+		for (Path index : indexes) {
+			String name = index.getFileName().toString();
+			Path file = index.resolveSibling(name.substring(0, name.length()
+					- INDEX_SUFFIX.length())
+					+ SEGMENT_SUFFIX);
+			for (String line : Files.readAllLines(index,
+					StandardCharsets.UTF_8)) {
+				String[] fields = line.split("\t");
+				if (fields.length != 6) {
+					// a line cut short by a crash
+					continue;
+				}
+				Block block = new Block(file, Long.parseLong(fields[0]),
+						Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+						Long.parseLong(fields[3]), Long.parseLong(fields[4]),
+						Integer.parseInt(fields[5]));
+				blocks.add(block);
+				nextSequence = block.firstSequence + block.count;
+			}
+		}
+	}
+
+	@Override
+	public void statusChanged(StatusEvent e) {
+		append(e);
+	}
+
+	@Override
+	public void canceled(StatusEvent e) {
+		append(e);
+	}
+
+	/** Pushes the text of the event, if any, for the writer thread. */
+	private void append(StatusEvent e) {
+		Object text = e.text;
+		if (text == null || closed) {
+			return;
+		}
+		Pending node = new Pending(System.currentTimeMillis(),
+				((AbstractProgressMonitor) e.getSource()).getId(), text);
+		Pending head;
+		do {
+			head = pending.get();
+			node.next = head;
+		} while (!pending.compareAndSet(head, node));
+		if (pendingCount.incrementAndGet() == blockRecords) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	/**
+	 * Returns the sequence number the next text will be logged with, which is
+	 * one more than the latest text's.
+	 *
+	 * @return the next sequence number
+	 */
+	public long getNextSequence() {
+		synchronized (lock) {
+			return nextSequence;
+		}
+	}
+
+	/**
+	 * Returns the number of lazily set texts skipped because building them
+	 * threw.
+	 *
+	 * @return the number of skipped texts
+	 */
+	public long getSkippedTexts() {
+		return skipped.get();
+	}
+
+	/**
+	 * Returns the first failure building a lazily set text.
+	 *
+	 * @return the failure, or <code>null</code> if none
+	 */
+	public RuntimeException getTextFailure() {
+		return textFailure;
+	}
+
+	/**
+	 * Reads texts in order of their sequence numbers.
+	 *
+	 * @param fromSequence
+	 *            the sequence number of the first text to read
+	 * @param maxCount
+	 *            the maximum number of texts to read
+	 * @return the texts from <code>fromSequence</code> on, which is empty if
+	 *         none have been logged yet
+	 * @throws IOException
+	 *             if a segment cannot be read
+	 */
+	public List<Entry> read(long fromSequence, int maxCount)
+			throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		List<Block> overlapping = new ArrayList<Block>();
+		List<Entry> latest;
+		synchronized (lock) {
+			int first = findBlock(fromSequence);
+			for (int i = first; i < blocks.size()
+					&& blocks.get(i).firstSequence < fromSequence + maxCount; i++) {
+				overlapping.add(blocks.get(i));
+			}
+			latest = new ArrayList<Entry>(open);
+		}
+		for (Block block : overlapping) {
+			for (Entry entry : block.read()) {
+				if (entry.sequence >= fromSequence
+						&& entries.size() < maxCount) {
+					entries.add(entry);
+				}
+			}
+		}
+		for (Entry entry : latest) {
+			if (entry.sequence >= fromSequence && entries.size() < maxCount) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Reads texts in order of their sequence numbers, waiting for the first
+	 * one to be logged, to follow the tail of the log.
+	 *
+	 * @param fromSequence
+	 *            the sequence number of the first text to read
+	 * @param maxCount
+	 *            the maximum number of texts to read
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the unit of <code>timeout</code>
+	 * @return the texts from <code>fromSequence</code> on, which is empty if
+	 *         none were logged in time
+	 * @throws IOException
+	 *             if a segment cannot be read
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public List<Entry> follow(long fromSequence, int maxCount, long timeout,
+			TimeUnit unit) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (lock) {
+			while (nextSequence <= fromSequence && !finished) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return new ArrayList<Entry>();
+				}
+				TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+			}
+		}
+		return read(fromSequence, maxCount);
+	}
+
+	/**
+	 * Reads the texts logged within a time range, in order of their sequence
+	 * numbers.
+	 *
+	 * @param fromMillis
+	 *            the earliest time, inclusive
+	 * @param toMillis
+	 *            the latest time, exclusive
+	 * @param maxCount
+	 *            the maximum number of texts to read
+	 * @return the texts logged within the range
+	 * @throws IOException
+	 *             if a segment cannot be read
+	 */
+	public List<Entry> readBetween(long fromMillis, long toMillis,
+			int maxCount) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		List<Block> overlapping = new ArrayList<Block>();
+		List<Entry> latest;
+		synchronized (lock) {
+			for (Block block : blocks) {
+				if (block.maxMillis >= fromMillis
+						&& block.minMillis < toMillis) {
+					overlapping.add(block);
+				}
+			}
+			latest = new ArrayList<Entry>(open);
+		}
+		for (Block block : overlapping) {
+			if (entries.size() == maxCount) {
+				return entries;
+			}
+			for (Entry entry : block.read()) {
+				if (entry.millis >= fromMillis && entry.millis < toMillis
+						&& entries.size() < maxCount) {
+					entries.add(entry);
+				}
+			}
+		}
+		for (Entry entry : latest) {
+			if (entry.millis >= fromMillis && entry.millis < toMillis
+					&& entries.size() < maxCount) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Returns the index of the block holding a sequence number, or of the
+	 * first block after it, while holding the lock.
+	 */
+	private int findBlock(long sequence) {
+		int low = 0;
+		int high = blocks.size() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			Block block = blocks.get(middle);
+			if (block.firstSequence + block.count <= sequence) {
+				low = middle + 1;
+			} else if (block.firstSequence > sequence) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return low;
+	}
+
+	/** Takes the appended texts until closed, run on the writer thread. */
+	private void write() {
+		for (;;) {
+			boolean closing = closed;
+			Pending head = pending.getAndSet(null);
+			if (head != null) {
+				take(head);
+			} else if (closing) {
+				break;
+			} else {
+				LockSupport.parkNanos(this, flushNanos);
+			}
+		}
+		if (!open.isEmpty()) {
+			spill();
+		}
+		synchronized (lock) {
+			finished = true;
+			lock.notifyAll();
+		}
+		try {
+			closeSegment();
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/** Logs the taken texts in the order they were appended. */
+	private void take(Pending head) {
+		// the stack is latest first
+		Pending previous = null;
+		int count = 0;
+		while (head != null) {
+			Pending next = head.next;
+			head.next = previous;
+			previous = head;
+			head = next;
+			count++;
+		}
+		pendingCount.addAndGet(-count);
+		for (Pending p = previous; p != null; p = p.next) {
+			Object text = p.text;
+			try {
+				if (text instanceof LazyText) {
+					text = ((LazyText) text).evaluate();
+				}
+			} catch (RuntimeException e) {
+				// a failing supplier must not stop the log
+				if (textFailure == null) {
+					textFailure = e;
+				}
+				skipped.incrementAndGet();
+				continue;
+			}
+			if (text == null) {
+				continue;
+			}
+			synchronized (lock) {
+				open.add(new Entry(nextSequence++, p.millis, p.monitor,
+						(String) text));
+			}
+			// only this thread modifies the open block
+			if (open.size() == blockRecords) {
+				spill();
+			}
+		}
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Compresses the open block and appends it to the current segment, then
+	 * indexes it. The open block stays readable while it is written, and is
+	 * held in memory if it cannot be written.
+	 */
+	private void spill() {
+		List<Entry> entries = open;
+		Block block;
+		try {
+			block = writeBlock(entries);
+		} catch (IOException e) {
+			fail(e);
+			block = new Block(null, entries.get(0).sequence, entries.size(),
+					0, 0, -1, 0);
+			block.minMillis = Long.MAX_VALUE;
+			for (Entry entry : entries) {
+				block.minMillis = Math.min(block.minMillis, entry.millis);
+				block.maxMillis = Math.max(block.maxMillis, entry.millis);
+			}
+		}
+		block.entries = entries;
+		synchronized (lock) {
+			blocks.add(block);
+			open = new ArrayList<Entry>(blockRecords);
+			// only the latest blocks are kept in memory
+			int evict = blocks.size() - 1 - memoryBlocks;
+			if (evict >= 0 && blocks.get(evict).file != null) {
+				blocks.get(evict).entries = null;
+			}
+			// a large batch wakes followers block by block
+			lock.notifyAll();
+		}
+	}
+
+	/** Appends a block to the current segment and its index. */
+	private Block writeBlock(List<Entry> entries) throws IOException {
+		if (segment == null || segmentBlockCount == segmentBlocks) {
+			closeSegment();
+			String name = String.format("status-%019d", entries.get(0).sequence);
+			segmentPath = directory.resolve(name + SEGMENT_SUFFIX);
+			segment = FileChannel.open(segmentPath, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			segmentIndex = Files.newBufferedWriter(
+					directory.resolve(name + INDEX_SUFFIX),
+					StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			segmentBlockCount = 0;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		long minMillis = Long.MAX_VALUE;
+		long maxMillis = Long.MIN_VALUE;
+		try (OutputStream out = new GZIPOutputStream(bytes, 64 * 1024)) {
+			StringBuilder line = new StringBuilder(256);
+			for (Entry entry : entries) {
+				minMillis = Math.min(minMillis, entry.millis);
+				maxMillis = Math.max(maxMillis, entry.millis);
+				line.setLength(0);
+				line.append(entry.sequence).append('\t').append(entry.millis)
+						.append('\t').append(entry.monitor).append('\t');
+				appendEscaped(entry.text, line);
+				line.append('\n');
+				out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		long offset = segment.size();
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		while (buffer.hasRemaining()) {
+			segment.write(buffer);
+		}
+		Block block = new Block(segmentPath, entries.get(0).sequence,
+				entries.size(), minMillis, maxMillis, offset, bytes.size());
+		segmentIndex.write(block.firstSequence + "\t" + block.count + "\t"
+				+ minMillis + "\t" + maxMillis + "\t" + offset + "\t"
+				+ bytes.size() + "\n");
+		segmentIndex.flush();
+		segmentBlockCount++;
+		return block;
+	}
+
+	private void closeSegment() throws IOException {
+		if (segment != null) {
+			segment.close();
+			segmentIndex.close();
+			segment = null;
+		}
+	}
+
+	private void fail(IOException e) {
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	/** Appends the text with tabs, newlines and backslashes escaped. */
+	private static void appendEscaped(String s, StringBuilder line) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\':
+				line.append("\\\\");
+				break;
+			case '\t':
+				line.append("\\t");
+				break;
+			case '\n':
+				line.append("\\n");
+				break;
+			case '\r':
+				line.append("\\r");
+				break;
+			default:
+				line.append(c);
+			}
+		}
+	}
+
+	/** Reverses {@link #appendEscaped(String, StringBuilder)}. */
+	private static String unescape(String s) {
+		if (s.indexOf('\\') < 0) {
+			return s;
+		}
+		StringBuilder text = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				char escaped = s.charAt(++i);
+				text.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n'
+						: escaped == 'r' ? '\r' : escaped);
+			} else {
+				text.append(c);
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Writes the texts appended so far and closes the segment files. Texts of
+	 * events fired after closing are discarded.
+	 *
+	 * @throws IOException
+	 *             if writing any block failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/** A logged status text. */
+	public static class Entry {
+
+		final long sequence;
+		final long millis;
+		final long monitor;
+		final String text;
+
+		Entry(long sequence, long millis, long monitor, String text) {
+			this.sequence = sequence;
+			this.millis = millis;
+			this.monitor = monitor;
+			this.text = text;
+		}
+
+		/**
+		 * Returns the sequence number of the text, which counts from 0 in the
+		 * order the texts were logged.
+		 *
+		 * @return the sequence number
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Returns the time the text was logged.
+		 *
+		 * @return the time in milliseconds since the epoch
+		 */
+		public long getMillis() {
+			return millis;
+		}
+
+		/**
+		 * Returns the id of the monitor of the text.
+		 *
+		 * @return the monitor's id
+		 * @see AbstractProgressMonitor#getId()
+		 */
+		public long getMonitorId() {
+			return monitor;
+		}
+
+		/**
+		 * Returns the status text.
+		 *
+		 * @return the text
+		 */
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public String toString() {
+			return sequence + "\t" + millis + "\t" + monitor + "\t" + text;
+		}
+	}
+
+	/** A compressed block of texts in a segment file. */
+	private static class Block {
+
+		/** The segment, or <code>null</code> if it could not be written. */
+		final Path file;
+		final long firstSequence;
+		final int count;
+		long minMillis;
+		long maxMillis;
+		final long offset;
+		final int length;
+		/** The texts, while held in memory. */
+		volatile List<Entry> entries;
+
+		Block(Path file, long firstSequence, int count, long minMillis,
+				long maxMillis, long offset, int length) {
+			this.file = file;
+			this.firstSequence = firstSequence;
+			this.count = count;
+			this.minMillis = minMillis;
+			this.maxMillis = maxMillis;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/** Returns the texts, decompressing them if not in memory. */
+		List<Entry> read() throws IOException {
+			List<Entry> held = entries;
+			if (held != null) {
+				return held;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			try (FileChannel channel = FileChannel.open(file,
+					StandardOpenOption.READ)) {
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, offset + buffer.position()) < 0) {
+						throw new IOException("truncated segment " + file);
+					}
+				}
+			}
+			List<Entry> read = new ArrayList<Entry>(count);
+			try (BufferedReader in = new BufferedReader(new InputStreamReader(
+					new GZIPInputStream(new ByteArrayInputStream(
+							buffer.array())), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					String[] fields = line.split("\t", 4);
+					read.add(new Entry(Long.parseLong(fields[0]),
+							Long.parseLong(fields[1]),
+							Long.parseLong(fields[2]), unescape(fields[3])));
+				}
+			}
+			return read;
+		}
+	}
+
+	/** An appended text not yet taken by the writer thread. */
+	private static class Pending {
+
+		final long millis;
+		final long monitor;
+		/** Either a <code>String</code> or a {@link LazyText}. */
+		final Object text;
+		Pending next;
+
+		Pending(long millis, long monitor, Object text) {
+			this.millis = millis;
+			this.monitor = monitor;
+			this.text = text;
+		}
+	}
+}
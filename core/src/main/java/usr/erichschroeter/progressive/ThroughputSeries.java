@@ -0,0 +1,310 @@
+package usr.erichschroeter.progressive;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the throughput of a {@link DeterminateProgressMonitor} over the
+ * whole of its run in constant memory, so a display can show where a long job
+ * slowed down.
+ * <p>
+ * The monitor is sampled periodically on the library's shared background
+ * thread, and the throughput between samples is kept in a fixed number of
+ * buckets of equal duration, each holding the lowest and highest throughput
+ * sampled within it. Once the buckets are full, adjacent buckets are merged
+ * pairwise and the bucket duration doubles, so a short dip or burst is still
+ * visible after hours. With the default 512 buckets sampled every 250 ms, a
+ * 12 hour job ends up in buckets of about two minutes.
+ * <p>
+ * A display sets the number of columns it draws, and the buckets are
+ * downsampled to that many columns on the background thread after each
+ * sample. Drawing the latest {@link Columns} then only costs the number of
+ * columns.
+ *
+ * @author Erich Schroeter
+ */
+public class ThroughputSeries {
+
+	/** The default number of buckets. */
+	public static final int DEFAULT_CAPACITY = 512;
+	/** The default milliseconds between samples. */
+	public static final long DEFAULT_PERIOD_MILLIS = 250;
+
+	private final DeterminateProgressMonitor monitor;
+	private final long periodMillis;
+	/** The lowest and highest units per second within each bucket. */
+	private final float[] minRates;
+	private final float[] maxRates;
+	/** The number of closed buckets. */
+	private int count;
+	private long bucketNanos;
+	private long firstNanos;
+	private long lastNanos;
+	private int lastValue;
+	private boolean sampled;
+	/** The units per second between the latest two samples. */
+	private volatile float latestRate;
+	/** The start and rates of the bucket being filled. */
+	private long openNanos;
+	private float openMin = Float.MAX_VALUE;
+	private float openMax;
+	private int columnCount;
+	private volatile Columns columns = new Columns(new float[0], new float[0],
+			0, 0);
+	private ScheduledFuture<?> sampling;
+
+	/**
+	 * Constructs a <code>ThroughputSeries</code> of
+	 * {@link #DEFAULT_CAPACITY} buckets, sampling every
+	 * {@link #DEFAULT_PERIOD_MILLIS} milliseconds.
+	 *
+	 * @param monitor
+	 *            the monitor to sample
+	 */
+	public ThroughputSeries(DeterminateProgressMonitor monitor) {
+		this(monitor, DEFAULT_CAPACITY, DEFAULT_PERIOD_MILLIS);
+	}
+
+	/**
+	 * Constructs a <code>ThroughputSeries</code> specifying the number of
+	 * buckets and how often the monitor is sampled.
+	 *
+	 * @param monitor
+	 *            the monitor to sample
+	 * @param capacity
+	 *            the number of buckets, at least 2
+	 * @param periodMillis
+	 *            the milliseconds between samples
+	 */
+	public ThroughputSeries(DeterminateProgressMonitor monitor, int capacity,
+			long periodMillis) {
+		if (capacity < 2) {
+			throw new IllegalArgumentException("capacity must be at least 2");
+		}
+		if (periodMillis <= 0) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+		this.monitor = monitor;
+		this.periodMillis = periodMillis;
+		this.bucketNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+		minRates = new float[capacity];
+		maxRates = new float[capacity];
+	}
+
+	/**
+	 * Starts sampling the monitor, until it completes or is canceled or
+	 * {@link #stop()} is called.
+	 */
+	public synchronized void start() {
+		if (sampling == null) {
+			sampling = SharedScheduler.get().scheduleAtFixedRate(
+					new Runnable() {
+						@Override
+						public void run() {
+							sampleMonitor();
+						}
+					}, 0, periodMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/** Stops sampling the monitor. */
+	public synchronized void stop() {
+		if (sampling != null) {
+			sampling.cancel(false);
+		}
+	}
+
+	/**
+	 * Sets the number of columns the buckets are downsampled to, such as the
+	 * width in pixels of a sparkline. The columns are updated by the next
+	 * sample.
+	 *
+	 * @param columnCount
+	 *            the number of columns, or 0 to stop downsampling
+	 */
+	public synchronized void setColumnCount(int columnCount) {
+		this.columnCount = Math.max(0, columnCount);
+	}
+
+	/**
+	 * Returns the throughput downsampled to the number of columns as of the
+	 * latest sample.
+	 *
+	 * @return the columns, which are not modified once returned
+	 */
+	public Columns getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Returns the throughput between the latest two samples, which is what
+	 * the monitor is doing now rather than the peak of a bucket.
+	 *
+	 * @return the latest units per second, or 0 until the monitor has been
+	 *         sampled twice
+	 */
+	public float getLatestRate() {
+		return latestRate;
+	}
+
+	/**
+	 * Returns the duration each bucket currently covers.
+	 *
+	 * @return the bucket duration in nanoseconds
+	 */
+	public synchronized long getBucketNanos() {
+		return bucketNanos;
+	}
+
+	/** Samples the monitor, run on the shared scheduler. */
+	private void sampleMonitor() {
+		boolean finished = monitor.isFinished();
+		if (monitor.getState() != AbstractProgressMonitor.State.NEW) {
+			sample(System.nanoTime(), monitor.getCurrent());
+		}
+		if (finished) {
+			stop();
+		}
+	}
+
+	/** Records the monitor's value at a time. */
+	synchronized void sample(long now, int value) {
+		if (!sampled) {
+			sampled = true;
+			firstNanos = now;
+			openNanos = now;
+		} else if (now > lastNanos) {
+			float rate = (float) ((value - (long) lastValue) * 1e9 / (now
+					- lastNanos));
+			latestRate = rate;
+			openMin = Math.min(openMin, rate);
+			openMax = Math.max(openMax, rate);
+			if (now - openNanos >= bucketNanos) {
+				close(now);
+			}
+		}
+		lastNanos = now;
+		lastValue = value;
+		if (columnCount > 0) {
+			columns = downsample(columnCount);
+		}
+	}
+
+	/** Closes the open bucket, merging buckets pairwise if full. */
+	private void close(long now) {
+		if (count == minRates.length) {
+			int merged = 0;
+			for (int i = 0; i < count; i += 2) {
+				// an odd last bucket is kept as it is
+				int next = Math.min(i + 1, count - 1);
+				minRates[merged] = Math.min(minRates[i], minRates[next]);
+				maxRates[merged] = Math.max(maxRates[i], maxRates[next]);
+				merged++;
+			}
+			count = merged;
+			bucketNanos *= 2;
+		}
+		minRates[count] = openMin;
+		maxRates[count] = openMax;
+		count++;
+		openNanos = now;
+		openMin = Float.MAX_VALUE;
+		openMax = 0;
+	}
+
+	/**
+	 * Returns the closed buckets and the open one downsampled to a number of
+	 * columns, keeping the lowest and highest throughput of each.
+	 */
+	private Columns downsample(int columnCount) {
+		boolean open = openMax >= openMin;
+		int buckets = count + (open ? 1 : 0);
+		float[] min = new float[buckets == 0 ? 0 : columnCount];
+		float[] max = new float[min.length];
+		float peak = 0;
+		for (int c = 0; c < min.length; c++) {
+			int from = (int) ((long) c * buckets / columnCount);
+			int to = Math.max(from + 1,
+					(int) ((long) (c + 1) * buckets / columnCount));
+			float low = Float.MAX_VALUE;
+			float high = 0;
+			for (int b = from; b < to; b++) {
+				low = Math.min(low, b < count ? minRates[b] : openMin);
+				high = Math.max(high, b < count ? maxRates[b] : openMax);
+			}
+			min[c] = low;
+			max[c] = high;
+			peak = Math.max(peak, high);
+		}
+		return new Columns(min, max, peak, lastNanos - firstNanos);
+	}
+
+	/**
+	 * The throughput downsampled to a number of columns of equal duration,
+	 * each holding the lowest and highest units per second within it.
+	 */
+	public static class Columns {
+
+		private final float[] min;
+		private final float[] max;
+		private final float peak;
+		private final long durationNanos;
+
+		Columns(float[] min, float[] max, float peak, long durationNanos) {
+			this.min = min;
+			this.max = max;
+			this.peak = peak;
+			this.durationNanos = durationNanos;
+		}
+
+		/**
+		 * Returns the number of columns, which is 0 until the monitor has
+		 * been sampled twice.
+		 *
+		 * @return the number of columns
+		 */
+		public int getCount() {
+			return min.length;
+		}
+
+		/**
+		 * Returns the lowest throughput within a column.
+		 *
+		 * @param column
+		 *            the column
+		 * @return the lowest units per second
+		 */
+		public float getMin(int column) {
+			return min[column];
+		}
+
+		/**
+		 * Returns the highest throughput within a column.
+		 *
+		 * @param column
+		 *            the column
+		 * @return the highest units per second
+		 */
+		public float getMax(int column) {
+			return max[column];
+		}
+
+		/**
+		 * Returns the highest throughput within any column.
+		 *
+		 * @return the peak units per second
+		 */
+		public float getPeak() {
+			return peak;
+		}
+
+		/**
+		 * Returns the time the columns cover.
+		 *
+		 * @return the duration in nanoseconds
+		 */
+		public long getDurationNanos() {
+			return durationNanos;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package usr.erichschroeter.progressive;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels a monitor which does not finish in time, either within a deadline
+ * from when it started or within an idle timeout since its latest progress.
+ * <p>
+ * A timeout is a single task on the {@link SharedScheduler}. An idle timeout
+ * is not rescheduled on every progress, which only records a timestamp;
+ * instead, once it is due it checks the time of the latest progress and
+ * reschedules itself for the remaining time if progress was made. A timeout
+ * is disarmed as soon as its monitor completes or is canceled.
+ *
+ * @author Erich Schroeter
+ * @see AbstractProgressMonitor#setDeadline(long, TimeUnit)
+ * @see AbstractProgressMonitor#setIdleTimeout(long, TimeUnit)
+ */
+final class Timeout implements Runnable, ProgressListener {
+
+	private final AbstractProgressMonitor monitor;
+	private final long timeoutNanos;
+	/** Whether the timeout runs from the latest progress. */
+	private final boolean idle;
+	private ScheduledFuture<?> task;
+	private ListenerRegistration registration;
+	private boolean disarmed;
+
+	Timeout(AbstractProgressMonitor monitor, long timeoutNanos, boolean idle) {
+		this.monitor = monitor;
+		this.timeoutNanos = timeoutNanos;
+		this.idle = idle;
+	}
+
+	/** Starts timing the monitor, which must be running. */
+	synchronized void arm() {
+		if (idle) {
+			monitor.retainProgressTime();
+		}
+		registration = monitor.registerProgressListener(this);
+		schedule(timeoutNanos);
+	}
+
+	/** Stops timing the monitor. */
+	void disarm() {
+		ScheduledFuture<?> t;
+		ListenerRegistration r;
+		synchronized (this) {
+			if (disarmed) {
+				return;
+			}
+			disarmed = true;
+			t = task;
+			r = registration;
+		}
+		// the monitor is not called while holding this lock, as the monitor
+		// disarms its timeouts while holding its own
+		if (t != null) {
+			t.cancel(false);
+		}
+		if (r != null) {
+			r.close();
+		}
+		if (idle) {
+			monitor.releaseProgressTime();
+		}
+	}
+
+	private void schedule(long delayNanos) {
+		task = SharedScheduler.get().schedule(this, delayNanos,
+				TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void run() {
+		synchronized (this) {
+			if (disarmed) {
+				return;
+			}
+			if (idle) {
+				long remaining = timeoutNanos
+						- (System.nanoTime() - monitor.getLastProgressNanos());
+				if (remaining > 0) {
+					schedule(remaining);
+					return;
+				}
+			}
+		}
+		disarm();
+		if (!monitor.isFinished()) {
+			long millis = TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+			monitor.cancel(idle ? String.format("No progress for %d ms",
+					millis) : String.format("Not finished within %d ms",
+					millis));
+		}
+	}
+
+	@Override
+	public void statusChanged(StatusEvent e) {
+		if (e.isCompleted()) {
+			disarm();
+		}
+	}
+
+	@Override
+	public void canceled(StatusEvent e) {
+		disarm();
+	}
+}
@@ -0,0 +1,155 @@
+package usr.erichschroeter.progressive.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import usr.erichschroeter.progressive.DeterminateProgressMonitor;
+import usr.erichschroeter.progressive.ProgressRunner;
+
+/**
+ * Measures how the {@link ProgressRunner} scales with the number of workers,
+ * against splitting the same items into equal blocks which report no
+ * progress at all.
+ * <p>
+ * Every item busy-spins for the same time. For each number of workers, from
+ * one doubling up to <code>workers</code>, both ways run the same items on a
+ * pool of that parallelism, and the time, the speedup over one worker and the
+ * overhead over the equal blocks are printed. Near-linear scaling shows as a
+ * speedup close to the number of workers while the machine has that many
+ * processors to spare. Run it with
+ * <code>gradle :core:runnerSimulation [-PsimulationArgs="items=100000 workers=8"]</code>.
+ *
+ * @author Erich Schroeter
+ */
+public class RunnerSimulation {
+
+	/** The number of items. */
+	private final int items;
+	/** The most workers measured. */
+	private final int workers;
+	/** The nanoseconds of work per item. */
+	private final long itemNanos;
+	/** The number of times each measurement is repeated, keeping the best. */
+	private final int repeats;
+
+	RunnerSimulation(Properties properties) {
+		items = Integer.parseInt(properties.getProperty("items", "200000"));
+		workers = Integer.parseInt(properties.getProperty("workers",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		itemNanos = Long.parseLong(properties.getProperty("itemNanos", "2000"));
+		repeats = Integer.parseInt(properties.getProperty("repeats", "3"));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Properties properties = new Properties();
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split < 0) {
+				throw new IllegalArgumentException("expected key=value: " + arg);
+			}
+			properties.setProperty(arg.substring(0, split),
+					arg.substring(split + 1));
+		}
+		new RunnerSimulation(properties).run();
+	}
+
+	void run() throws Exception {
+		System.out.printf(
+				"%d items of %d ns (%.2f s of work), up to %d workers on %d processors%n",
+				items, itemNanos, items * itemNanos / 1e9, workers, Runtime
+						.getRuntime().availableProcessors());
+		// warm up the spinning and the runner before measuring
+		measure(1, true);
+		measure(1, false);
+		long single = 0;
+		for (int parallelism = 1; parallelism <= workers; parallelism = next(
+				parallelism, workers)) {
+			long blocks = measure(parallelism, false);
+			long runner = measure(parallelism, true);
+			if (parallelism == 1) {
+				single = runner;
+			}
+			System.out.printf(
+					"%3d workers  runner %7.1f ms  blocks %7.1f ms  speedup %5.2f  efficiency %5.1f%%  overhead %+5.1f%%%n",
+					parallelism, runner / 1e6, blocks / 1e6, (double) single
+							/ runner, 100.0 * single / runner / parallelism,
+					100.0 * (runner - blocks) / blocks);
+		}
+	}
+
+	/** Returns the next number of workers measured after doubling. */
+	private static int next(int parallelism, int workers) {
+		return parallelism < workers && parallelism * 2 > workers ? workers
+				: parallelism * 2;
+	}
+
+	/** Returns the best nanoseconds to run the items on the workers. */
+	private long measure(int parallelism, boolean runner) throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		long best = Long.MAX_VALUE;
+		try {
+			for (int i = 0; i < repeats; i++) {
+				long start = System.nanoTime();
+				if (runner) {
+					runRunner(pool);
+				} else {
+					runBlocks(pool, parallelism);
+				}
+				best = Math.min(best, System.nanoTime() - start);
+			}
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		return best;
+	}
+
+	/** Runs the items by the runner, reporting progress to a monitor. */
+	private void runRunner(ForkJoinPool pool) throws Exception {
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				items, 0);
+		monitor.start();
+		ProgressRunner.forRange(pool, 0, items, monitor,
+				new ProgressRunner.RangeTask() {
+					@Override
+					public void run(int index) {
+						spin();
+					}
+				});
+	}
+
+	/** Runs the items split into a block per worker, without progress. */
+	private void runBlocks(ForkJoinPool pool, int parallelism)
+			throws Exception {
+		List<Callable<Void>> blocks = new ArrayList<Callable<Void>>(parallelism);
+		for (int i = 0; i < parallelism; i++) {
+			final int from = (int) ((long) items * i / parallelism);
+			final int to = (int) ((long) items * (i + 1) / parallelism);
+			blocks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int index = from; index < to; index++) {
+						spin();
+					}
+					return null;
+				}
+			});
+		}
+		for (Future<Void> future : pool.invokeAll(blocks)) {
+			future.get();
+		}
+	}
+
+	/** Does the work of an item. */
+	private void spin() {
+		long end = System.nanoTime() + itemNanos;
+		while (System.nanoTime() < end) {
+			Thread.onSpinWait();
+		}
+	}
+}
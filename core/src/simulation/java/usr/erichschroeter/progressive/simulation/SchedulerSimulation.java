@@ -0,0 +1,223 @@
+package usr.erichschroeter.progressive.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import usr.erichschroeter.progressive.DeterminateProgressMonitor;
+import usr.erichschroeter.progressive.LatencyHistogram;
+import usr.erichschroeter.progressive.ProgressScheduler;
+
+/**
+ * Compares the completion latency of many concurrent jobs of very different
+ * sizes, run first come, first served on a fixed thread pool and by the
+ * {@link ProgressScheduler} with and without aging.
+ * <p>
+ * The job sizes follow a bounded Pareto distribution, so most jobs are short
+ * and a few are very long, and the jobs arrive at random at a rate loading
+ * the workers to about 90%. Every unit of work busy-spins for the same time.
+ * Each policy runs the same jobs with the same arrivals, and the time from a
+ * job arriving to it completing is printed for each policy. Run it with
+ * <code>gradle :core:schedulerSimulation [-PsimulationArgs="jobs=500 workers=4"]</code>.
+ *
+ * @author Erich Schroeter
+ */
+public class SchedulerSimulation {
+
+	/** The number of jobs. */
+	private final int jobs;
+	/** The number of worker threads of every policy. */
+	private final int workers;
+	/** The microseconds of work per unit. */
+	private final long unitMicros;
+	/** The fewest and most units of a job. */
+	private final int minUnits;
+	private final int maxUnits;
+	/** The shape of the job sizes; smaller is more skewed. */
+	private final double alpha;
+	/** The fraction of the workers' capacity the arrivals demand. */
+	private final double load;
+	private final long seed;
+
+	private int[] sizes;
+	private long[] arrivals;
+
+	SchedulerSimulation(Properties properties) {
+		jobs = Integer.parseInt(properties.getProperty("jobs", "1000"));
+		workers = Integer.parseInt(properties.getProperty("workers", "2"));
+		unitMicros = Long.parseLong(properties.getProperty("unitMicros", "20"));
+		minUnits = Integer.parseInt(properties.getProperty("minUnits", "10"));
+		maxUnits = Integer.parseInt(properties.getProperty("maxUnits", "20000"));
+		alpha = Double.parseDouble(properties.getProperty("alpha", "1.1"));
+		load = Double.parseDouble(properties.getProperty("load", "0.9"));
+		seed = Long.parseLong(properties.getProperty("seed", "42"));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Properties properties = new Properties();
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split < 0) {
+				throw new IllegalArgumentException("expected key=value: " + arg);
+			}
+			properties.setProperty(arg.substring(0, split),
+					arg.substring(split + 1));
+		}
+		new SchedulerSimulation(properties).run();
+	}
+
+	void run() throws Exception {
+		generate();
+		long totalUnits = 0;
+		for (int size : sizes) {
+			totalUnits += size;
+		}
+		System.out.printf(
+				"%d jobs, %d workers, %d units (%.1f s of work), load %.2f%n",
+				jobs, workers, totalUnits, totalUnits * unitMicros / 1e6, load);
+		// warm up the spinning and the scheduler before measuring
+		runFifo();
+		runScheduled(ProgressScheduler.DEFAULT_AGING_RATE);
+		report("fifo", runFifo());
+		report("shortest remaining", runScheduled(0));
+		report("aged", runScheduled(ProgressScheduler.DEFAULT_AGING_RATE));
+	}
+
+	/** Draws the job sizes and their arrival times. */
+	private void generate() {
+		Random random = new Random(seed);
+		sizes = new int[jobs];
+		double meanUnits = 0;
+		for (int i = 0; i < jobs; i++) {
+			// inverse of the bounded Pareto distribution function
+			double u = random.nextDouble();
+			double ratio = Math.pow((double) minUnits / maxUnits, alpha);
+			sizes[i] = (int) Math.round(minUnits
+					/ Math.pow(1 - u * (1 - ratio), 1 / alpha));
+			meanUnits += (double) sizes[i] / jobs;
+		}
+		double meanGapNanos = meanUnits * unitMicros * 1000 / workers / load;
+		arrivals = new long[jobs];
+		long at = 0;
+		for (int i = 0; i < jobs; i++) {
+			arrivals[i] = at;
+			at += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+		}
+	}
+
+	/** Runs each job to completion in the order they arrive. */
+	private Result runFifo() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		final Result result = new Result();
+		List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+		long start = System.nanoTime();
+		for (int i = 0; i < jobs; i++) {
+			awaitArrival(start, i);
+			final int size = sizes[i];
+			final long arrived = System.nanoTime();
+			futures.add(CompletableFuture.runAsync(new Runnable() {
+				@Override
+				public void run() {
+					DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+							0, size, 0);
+					monitor.start();
+					for (int unit = 1; unit <= size; unit++) {
+						spin();
+						monitor.setCurrent(unit);
+					}
+					result.completed(arrived);
+				}
+			}, executor));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+				.get();
+		result.makespanNanos = System.nanoTime() - start;
+		executor.shutdown();
+		return result;
+	}
+
+	/** Runs the jobs in slices by the scheduler. */
+	private Result runScheduled(double agingRate) throws Exception {
+		ProgressScheduler scheduler = new ProgressScheduler(workers);
+		scheduler.setAgingRate(agingRate);
+		final Result result = new Result();
+		List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+		long start = System.nanoTime();
+		for (int i = 0; i < jobs; i++) {
+			awaitArrival(start, i);
+			final int size = sizes[i];
+			final long arrived = System.nanoTime();
+			final DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+					0, size, 0);
+			futures.add(scheduler.submit(monitor,
+					new ProgressScheduler.Slice() {
+						private int done;
+
+						@Override
+						public boolean run(long budgetNanos) {
+							long end = System.nanoTime() + budgetNanos;
+							while (done < size && System.nanoTime() < end) {
+								spin();
+								done++;
+							}
+							monitor.setCurrent(done);
+							return done < size;
+						}
+					}).thenAccept(new Consumer<Boolean>() {
+				@Override
+				public void accept(Boolean done) {
+					result.completed(arrived);
+				}
+			}));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+				.get();
+		result.makespanNanos = System.nanoTime() - start;
+		scheduler.shutdown();
+		scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		return result;
+	}
+
+	private void awaitArrival(long start, int job)
+			throws InterruptedException {
+		long wait = start + arrivals[job] - System.nanoTime();
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/** Does a unit of work. */
+	private void spin() {
+		long end = System.nanoTime() + unitMicros * 1000;
+		while (System.nanoTime() < end) {
+			Thread.onSpinWait();
+		}
+	}
+
+	private void report(String policy, Result result) {
+		LatencyHistogram latency = result.latency;
+		System.out.printf(
+				"%-20s mean %8.1f ms  p50 %8.1f ms  p99 %8.1f ms  max %8.1f ms  makespan %6.2f s%n",
+				policy, latency.getMean() / 1e6,
+				latency.getValueAtPercentile(50) / 1e6,
+				latency.getValueAtPercentile(99) / 1e6,
+				latency.getMax() / 1e6, result.makespanNanos / 1e9);
+	}
+
+	/** The completion latencies of the jobs run by a policy. */
+	private static class Result {
+
+		final LatencyHistogram latency = new LatencyHistogram();
+		long makespanNanos;
+
+		void completed(long arrived) {
+			latency.record(System.nanoTime() - arrived);
+		}
+	}
+}
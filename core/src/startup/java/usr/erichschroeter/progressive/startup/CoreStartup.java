@@ -0,0 +1,66 @@
+package usr.erichschroeter.progressive.startup;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import usr.erichschroeter.progressive.DeterminateProgressMonitor;
+import usr.erichschroeter.progressive.IndeterminateProgressMonitor;
+import usr.erichschroeter.progressive.ProgressListener;
+import usr.erichschroeter.progressive.StatusEvent;
+
+/**
+ * Exercises the core path the way a server side service does: monitors are
+ * created, listened to, updated, completed and canceled. Run with
+ * <code>--limit-modules java.base</code>, any class of <code>java.desktop</code>
+ * on that path fails with a <code>NoClassDefFoundError</code>. Prints the time
+ * from the JVM starting to the path completing, to compare startup between
+ * releases.
+ * 
+ * @author Erich Schroeter
+ */
+public class CoreStartup {
+
+	public static void main(String[] args) {
+		final int[] events = new int[2];
+		ProgressListener listener = new ProgressListener() {
+			@Override
+			public void statusChanged(StatusEvent e) {
+				events[0]++;
+			}
+
+			@Override
+			public void canceled(StatusEvent e) {
+				events[1]++;
+			}
+		};
+
+		DeterminateProgressMonitor determinate = new DeterminateProgressMonitor(
+				0, 100, 0);
+		determinate.addProgressListener(listener);
+		determinate.start("Starting");
+		for (int i = 1; i <= 100; i++) {
+			determinate.setCurrent(i, "Item %d", i);
+		}
+
+		IndeterminateProgressMonitor indeterminate = new IndeterminateProgressMonitor();
+		indeterminate.addProgressListener(listener);
+		indeterminate.start("Starting");
+		indeterminate.updateStatusText("Working");
+		indeterminate.cancel("Canceled");
+
+		if (!determinate.isFinished() || !indeterminate.isCanceled()
+				|| events[1] != 1) {
+			throw new IllegalStateException("unexpected monitor states");
+		}
+		boolean desktop = ModuleLayer.boot().findModule("java.desktop")
+				.isPresent();
+		Instant started = ProcessHandle.current().info().startInstant()
+				.orElse(null);
+		System.out.printf("core path completed: %d events, java.desktop %s%n",
+				events[0], desktop ? "available" : "not available");
+		if (started != null) {
+			System.out.printf("startup.millis=%d%n",
+					Duration.between(started, Instant.now()).toMillis());
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link DurationHistory} survives runs it cannot profile as is.
+ *
+ * @author Erich Schroeter
+ */
+public class DurationHistoryTest {
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void repeatedPhaseIsAnchoredToItsFirstStart() throws Exception {
+		File file = new File(folder.getRoot(), "history");
+		DurationHistory history = new DurationHistory(file);
+		history.record("job", 1000, new String[] { "scan", "copy", "scan" },
+				new long[] { 0, 200, 700 });
+		assertEquals(1000, awaitExpectedDuration(history, "job"));
+		DurationHistory.Profile profile = history.getProfile("job");
+		assertEquals(Long.valueOf(0), profile.phaseOffsets.get("scan"));
+		assertEquals(Long.valueOf(200), profile.phaseOffsets.get("copy"));
+
+		// the run is persisted and readable by a later history
+		DurationHistory reloaded = new DurationHistory(file);
+		assertEquals(1000, awaitExpectedDuration(reloaded, "job"));
+		assertNotNull(reloaded.getProfile("job"));
+
+		// and later runs are still recorded
+		reloaded.record("job", 3000, new String[] { "scan", "scan" },
+				new long[] { 0, 100 });
+		reloaded.record("other", 500, null, null);
+		assertEquals(500, awaitExpectedDuration(reloaded, "other"));
+		assertEquals(3000, reloaded.getExpectedDuration("job"));
+	}
+
+	@Test
+	public void corruptCountIsStartedOver() throws Exception {
+		File file = new File(folder.getRoot(), "history");
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(0x50444853);
+			out.writeInt(1);
+			out.writeInt(1);
+			out.writeUTF("job");
+			out.writeInt(-1);
+		} finally {
+			out.close();
+		}
+		DurationHistory history = new DurationHistory(file);
+		history.record("job", 1000, null, null);
+		assertEquals(1000, awaitExpectedDuration(history, "job"));
+		history.record("job", 3000, null, null);
+		history.record("job", 2000, null, null);
+		assertEquals(2000, awaitExpectedDuration(history, "job", 2000));
+
+		// the file has been repaired
+		DurationHistory reloaded = new DurationHistory(file);
+		assertEquals(2000, awaitExpectedDuration(reloaded, "job"));
+		assertNull(reloaded.getFailure());
+	}
+
+	@Test
+	public void unwritableFileIsReported() throws Exception {
+		File notDirectory = folder.newFile("file");
+		DurationHistory history = new DurationHistory(new File(notDirectory,
+				"history"));
+		history.record("job", 1000, null, null);
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (history.getFailure() == null
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertNotNull(history.getFailure());
+	}
+
+	/** Waits for the history to know the expected duration of a task. */
+	private static long awaitExpectedDuration(DurationHistory history,
+			String task) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		long expected;
+		while ((expected = history.getExpectedDuration(task)) < 0
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		return expected;
+	}
+
+	/** Waits for the history to expect a task to take a duration. */
+	private static long awaitExpectedDuration(DurationHistory history,
+			String task, long duration) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		long expected;
+		while ((expected = history.getExpectedDuration(task)) != duration
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		return expected;
+	}
+}
@@ -0,0 +1,54 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+/**
+ * Tests status text built only when read, and that the lazy variants leave
+ * the existing calls with a <code>null</code> text unambiguous.
+ *
+ * @author Erich Schroeter
+ */
+public class LazyStatusTextTest {
+
+	@Test
+	public void nullTextIsUnambiguous() {
+		DeterminateProgressMonitor determinate = new DeterminateProgressMonitor(
+				0, 10, 0);
+		determinate.setCurrent(1, null);
+		assertNull(determinate.getStatusText());
+		determinate.updateStatusText(null);
+		assertNull(determinate.getStatusText());
+		IndeterminateProgressMonitor indeterminate = new IndeterminateProgressMonitor();
+		indeterminate.updateStatusText(null);
+		assertNull(indeterminate.getStatusText());
+	}
+
+	@Test
+	public void textIsBuiltOnlyWhenRead() {
+		final AtomicInteger built = new AtomicInteger();
+		Supplier<String> status = new Supplier<String>() {
+			@Override
+			public String get() {
+				built.incrementAndGet();
+				return "item";
+			}
+		};
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		for (int current = 1; current < 10; current++) {
+			monitor.setCurrentLazy(current, status);
+		}
+		assertEquals(0, built.get());
+		assertEquals("item", monitor.getStatusText());
+		assertEquals(1, built.get());
+
+		monitor.setCurrent(10, "item %d of %d", 10, 10);
+		assertEquals("item 10 of 10", monitor.getStatusText());
+	}
+}
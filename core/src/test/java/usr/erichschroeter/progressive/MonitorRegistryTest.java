@@ -0,0 +1,86 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link MonitorRegistry} finds monitors by tag and parent, and
+ * removes them once they finish, are unregistered or are collected.
+ *
+ * @author Erich Schroeter
+ */
+public class MonitorRegistryTest {
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	@Test
+	public void monitorsAreFoundByTagAndParent() {
+		MonitorRegistry registry = new MonitorRegistry();
+		DeterminateProgressMonitor job = new DeterminateProgressMonitor(0, 10,
+				0);
+		DeterminateProgressMonitor step = new DeterminateProgressMonitor(0, 10,
+				0);
+		registry.register(job, "import");
+		registry.register(step, job, "import", "parse");
+		assertEquals(2, registry.size());
+		assertEquals(Arrays.asList(step), registry.getMonitors("parse"));
+		assertEquals(2, registry.getMonitors("import").size());
+		assertEquals(Arrays.asList(step), registry.getChildren(job));
+		assertSame(job, registry.getEntry(step.getId()).getParent());
+	}
+
+	@Test
+	public void finishedMonitorsAreRemoved() {
+		MonitorRegistry registry = new MonitorRegistry();
+		DeterminateProgressMonitor completed = new DeterminateProgressMonitor(
+				0, 10, 0);
+		DeterminateProgressMonitor canceled = new DeterminateProgressMonitor(
+				0, 10, 0);
+		DeterminateProgressMonitor unregistered = new DeterminateProgressMonitor(
+				0, 10, 0);
+		registry.register(completed);
+		registry.register(canceled);
+		registry.register(unregistered);
+		assertEquals(3, registry.size());
+
+		completed.start();
+		completed.setCurrent(10);
+		assertNull(registry.getMonitor(completed.getId()));
+		canceled.start();
+		canceled.cancel();
+		assertNull(registry.getMonitor(canceled.getId()));
+		registry.unregister(unregistered);
+		assertEquals(0, registry.size());
+
+		// a finished monitor is not registered again
+		registry.register(completed);
+		assertEquals(0, registry.size());
+	}
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void abandonedMonitorIsRemoved() throws Exception {
+		MonitorRegistry registry = new MonitorRegistry();
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		monitor.start();
+		registry.register(monitor, "abandoned");
+		WeakReference<DeterminateProgressMonitor> reference = new WeakReference<DeterminateProgressMonitor>(
+				monitor);
+		monitor = null;
+		while (reference.get() != null) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		while (registry.size() != 0) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(0, registry.getMonitors("abandoned").size());
+	}
+}
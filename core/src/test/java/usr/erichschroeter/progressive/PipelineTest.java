@@ -0,0 +1,103 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link Pipeline} reports the progress of its stages and names the
+ * stage limiting its throughput.
+ *
+ * @author Erich Schroeter
+ */
+public class PipelineTest {
+
+	private static final int ITEMS = 400;
+
+	@Test(timeout = 30000)
+	public void slowSourceIsTheBottleneck() throws Exception {
+		Pipeline pipeline = Pipeline.source("read", new Pipeline.Source<Integer>() {
+			@Override
+			public void produce(Pipeline.Emitter<Integer> out)
+					throws Exception {
+				for (int i = 0; i < ITEMS; i++) {
+					spin(1000);
+					out.emit(i);
+				}
+			}
+		}).stage("transform", 1, new Pipeline.Stage<Integer, Integer>() {
+			@Override
+			public void process(Integer item, Pipeline.Emitter<Integer> out)
+					throws Exception {
+				spin(100);
+				out.emit(item);
+			}
+		}).sink("write", 1, new Pipeline.Sink<Integer>() {
+			@Override
+			public void consume(Integer item) throws Exception {
+				spin(50);
+			}
+		});
+		pipeline.setBatchSize(8);
+		pipeline.setPeriodMillis(50);
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				0, 0);
+		assertTrue(pipeline.run(monitor, ITEMS));
+
+		Pipeline.StageMetrics bottleneck = pipeline.getBottleneck();
+		assertNotNull(bottleneck);
+		assertEquals("read", bottleneck.getName());
+		assertTrue(bottleneck.getUtilization() > 0.5);
+		for (Pipeline.StageMetrics stage : pipeline.getStages()) {
+			assertEquals(ITEMS, stage.getProcessed());
+			assertTrue(stage.getMonitor().isFinished());
+		}
+		assertEquals(AbstractProgressMonitor.State.COMPLETED,
+				monitor.getState());
+		assertEquals(ITEMS, monitor.getCurrent());
+	}
+
+	@Test(timeout = 30000)
+	public void unknownCountCompletesOnlyAtTheEnd() throws Exception {
+		final DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+				0, 0, 0);
+		final boolean[] finishedEarly = new boolean[1];
+		Pipeline pipeline = Pipeline.source("read", new Pipeline.Source<Integer>() {
+			@Override
+			public void produce(Pipeline.Emitter<Integer> out)
+					throws Exception {
+				for (int i = 0; i < ITEMS; i++) {
+					out.emit(i);
+				}
+			}
+		}).sink("write", 2, new Pipeline.Sink<Integer>() {
+			@Override
+			public void consume(Integer item) throws Exception {
+				spin(200);
+				if (monitor.isFinished()) {
+					finishedEarly[0] = true;
+				}
+			}
+		});
+		pipeline.setPeriodMillis(10);
+		assertTrue(pipeline.run(monitor, 0));
+		assertFalse(finishedEarly[0]);
+		assertTrue(monitor.isTotalKnown());
+		assertEquals(ITEMS, monitor.getMax());
+		assertEquals(AbstractProgressMonitor.State.COMPLETED,
+				monitor.getState());
+	}
+
+	/** Keeps the thread busy for a number of microseconds. */
+	private static void spin(long micros) {
+		long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+		while (System.nanoTime() < end) {
+			Thread.onSpinWait();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ProgressPublisher} honors each subscriber's demand,
+ * conflates the events it cannot deliver yet, and signals in order.
+ *
+ * @author Erich Schroeter
+ */
+public class ProgressPublisherTest {
+
+	@Test
+	public void eventsWithoutDemandAreConflated() {
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		ProgressPublisher publisher = new ProgressPublisher(monitor);
+		Recorder recorder = new Recorder();
+		publisher.subscribe(recorder);
+		for (int current = 1; current <= 5; current++) {
+			monitor.setCurrent(current);
+		}
+		assertEquals(0, recorder.events.size());
+
+		recorder.subscription.request(1);
+		assertEquals(1, recorder.events.size());
+		assertEquals(5, current(recorder.events.get(0)));
+
+		// the delivered event is a copy later updates do not change
+		monitor.setCurrent(6);
+		assertEquals(5, current(recorder.events.get(0)));
+		recorder.subscription.request(2);
+		assertEquals(6, current(recorder.events.get(1)));
+		monitor.setCurrent(7);
+		assertEquals(7, current(recorder.events.get(2)));
+		monitor.setCurrent(8);
+		assertEquals(3, recorder.events.size());
+	}
+
+	@Test
+	public void terminalSignalsDoNotWaitForDemand() {
+		DeterminateProgressMonitor completed = new DeterminateProgressMonitor(
+				0, 10, 0);
+		ProgressPublisher publisher = new ProgressPublisher(completed);
+		Recorder recorder = new Recorder();
+		publisher.subscribe(recorder);
+		completed.setCurrent(10);
+		assertEquals("[subscribe, complete]", recorder.signals.toString());
+
+		DeterminateProgressMonitor canceled = new DeterminateProgressMonitor(
+				0, 10, 0);
+		recorder = new Recorder();
+		new ProgressPublisher(canceled).subscribe(recorder);
+		canceled.start();
+		canceled.cancel();
+		assertEquals("[subscribe, error]", recorder.signals.toString());
+		assertTrue(recorder.error instanceof CancellationException);
+	}
+
+	@Test
+	public void completionWhileSubscribingFollowsOnSubscribe() {
+		final DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+				0, 10, 0);
+		ProgressPublisher publisher = new ProgressPublisher(monitor);
+		Recorder recorder = new Recorder() {
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				// another thread completing the monitor meanwhile
+				monitor.setCurrent(10);
+				super.onSubscribe(subscription);
+			}
+		};
+		publisher.subscribe(recorder);
+		assertEquals("[subscribe, complete]", recorder.signals.toString());
+
+		// a subscriber to a completed monitor is terminated immediately
+		recorder = new Recorder();
+		publisher.subscribe(recorder);
+		assertEquals("[subscribe, complete]", recorder.signals.toString());
+	}
+
+	@Test(timeout = 30000)
+	public void concurrentUpdatesAreNeverTorn() throws Exception {
+		final DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+				0, Integer.MAX_VALUE, 0);
+		ProgressPublisher publisher = new ProgressPublisher(monitor);
+		final int[] torn = new int[1];
+		Recorder recorder = new Recorder() {
+			@Override
+			public void onNext(StatusEvent item) {
+				if (!String.valueOf(current(item)).equals(item.getText())) {
+					torn[0]++;
+				}
+			}
+		};
+		publisher.subscribe(recorder);
+		recorder.subscription.request(Long.MAX_VALUE);
+		Thread[] writers = new Thread[4];
+		for (int w = 0; w < writers.length; w++) {
+			final int offset = w;
+			writers[w] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = offset; i < 400000; i += writers.length) {
+						monitor.setCurrent(i, String.valueOf(i));
+					}
+				}
+			});
+			writers[w].start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		assertEquals(0, torn[0]);
+	}
+
+	private static int current(StatusEvent e) {
+		return ((DeterminateStatusEvent) e).getCurrent();
+	}
+
+	/** Records the signals it receives, requesting nothing by itself. */
+	private static class Recorder implements Flow.Subscriber<StatusEvent> {
+
+		final List<String> signals = new ArrayList<String>();
+		final List<StatusEvent> events = new ArrayList<StatusEvent>();
+		Flow.Subscription subscription;
+		Throwable error;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			signals.add("subscribe");
+		}
+
+		@Override
+		public void onNext(StatusEvent item) {
+			signals.add("next");
+			events.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			signals.add("error");
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			signals.add("complete");
+		}
+	}
+}
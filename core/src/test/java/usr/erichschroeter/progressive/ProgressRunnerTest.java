@@ -0,0 +1,148 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ProgressRunner} processes every index once in chunks,
+ * reports monotonic progress completing once, and stops on failure and
+ * cancellation.
+ *
+ * @author Erich Schroeter
+ */
+public class ProgressRunnerTest {
+
+	private static final int ITEMS = 100000;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test(timeout = 30000)
+	public void everyIndexIsProcessedOnce() throws Exception {
+		final AtomicIntegerArray processed = new AtomicIntegerArray(ITEMS);
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(5,
+				0, 5);
+		Recorder recorder = new Recorder();
+		monitor.addProgressListener(recorder);
+		monitor.start();
+		assertTrue(ProgressRunner.forRange(executor, 1000, 1000 + ITEMS,
+				monitor, new ProgressRunner.RangeTask() {
+					@Override
+					public void run(int index) {
+						processed.incrementAndGet(index - 1000);
+					}
+				}));
+		for (int i = 0; i < ITEMS; i++) {
+			assertEquals(1, processed.get(i));
+		}
+		assertEquals(5 + ITEMS, monitor.getMax());
+		assertEquals(AbstractProgressMonitor.State.COMPLETED,
+				monitor.getState());
+		assertEquals(1, recorder.completions);
+		assertFalse(recorder.decreased);
+	}
+
+	@Test(timeout = 30000)
+	public void failureStopsTheRemainingWork() throws Exception {
+		final IllegalStateException failure = new IllegalStateException();
+		final AtomicInteger processed = new AtomicInteger();
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				0, 0);
+		monitor.start();
+		try {
+			ProgressRunner.forRange(executor, 0, ITEMS, monitor,
+					new ProgressRunner.RangeTask() {
+						@Override
+						public void run(int index) {
+							if (index == 100) {
+								throw failure;
+							}
+							processed.incrementAndGet();
+						}
+					});
+			fail("the failure was not thrown");
+		} catch (ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+		assertTrue(processed.get() < ITEMS - 1);
+		assertFalse(monitor.isFinished());
+	}
+
+	@Test(timeout = 30000)
+	public void cancelStopsAtTheNextChunk() throws Exception {
+		final DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+				0, 0, 0);
+		final AtomicInteger processed = new AtomicInteger();
+		monitor.start();
+		assertFalse(ProgressRunner.forRange(executor, 0, ITEMS, monitor,
+				new ProgressRunner.RangeTask() {
+					@Override
+					public void run(int index) {
+						if (processed.incrementAndGet() == 100) {
+							monitor.cancel();
+						}
+					}
+				}));
+		assertTrue(processed.get() < ITEMS);
+		assertEquals(AbstractProgressMonitor.State.CANCELED,
+				monitor.getState());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rangeWiderThanTheMonitorIsRejected() throws Exception {
+		ProgressRunner.forRange(executor, 0, Integer.MAX_VALUE - 5,
+				new DeterminateProgressMonitor(10, 10, 10),
+				new ProgressRunner.RangeTask() {
+					@Override
+					public void run(int index) {
+						fail("no index may be processed");
+					}
+				});
+	}
+
+	/** Records whether progress ever went back and how often it completed. */
+	private static class Recorder implements ProgressListener {
+
+		int latest = Integer.MIN_VALUE;
+		int completions;
+		boolean decreased;
+
+		@Override
+		public synchronized void statusChanged(StatusEvent e) {
+			DeterminateStatusEvent event = (DeterminateStatusEvent) e;
+			if (event.getCurrent() < latest) {
+				decreased = true;
+			}
+			latest = event.getCurrent();
+			if (event.getCurrent() == event.getMax() && event.getMax() > 5) {
+				completions++;
+			}
+		}
+
+		@Override
+		public void canceled(StatusEvent e) {
+		}
+	}
+}
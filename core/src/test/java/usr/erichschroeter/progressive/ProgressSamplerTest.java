@@ -0,0 +1,89 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ProgressSampler} fires the counted progress of its
+ * monitors, survives listeners which throw and lets abandoned monitors be
+ * collected.
+ *
+ * @author Erich Schroeter
+ */
+public class ProgressSamplerTest {
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void countedProgressIsSampled() throws Exception {
+		SampledProgressMonitor monitor = new SampledProgressMonitor(0, 100,
+				new ProgressSampler(10));
+		monitor.start();
+		SampledProgressMonitor.Counter counter = monitor.newCounter();
+		counter.add(40);
+		while (monitor.getCurrent() != 40) {
+			Thread.sleep(10);
+		}
+		counter.add(60);
+		while (!monitor.isFinished()) {
+			Thread.sleep(10);
+		}
+		assertEquals(AbstractProgressMonitor.State.COMPLETED,
+				monitor.getState());
+	}
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void throwingListenerDoesNotStopTheSampler() throws Exception {
+		ProgressSampler sampler = new ProgressSampler(10);
+		SampledProgressMonitor failing = new SampledProgressMonitor(0, 100,
+				sampler);
+		failing.start();
+		failing.addProgressListener(new ProgressListener() {
+			@Override
+			public void statusChanged(StatusEvent e) {
+				throw new AssertionError("listener failed");
+			}
+
+			@Override
+			public void canceled(StatusEvent e) {
+			}
+		});
+		failing.newCounter().increment();
+		while (sampler.getFailure() == null) {
+			Thread.sleep(10);
+		}
+		assertTrue(sampler.getFailure() instanceof AssertionError);
+
+		// monitors are still sampled after the failure
+		SampledProgressMonitor monitor = new SampledProgressMonitor(0, 100,
+				sampler);
+		monitor.start();
+		monitor.newCounter().add(100);
+		while (!monitor.isFinished()) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void abandonedMonitorIsCollected() throws Exception {
+		ProgressSampler sampler = new ProgressSampler(10);
+		SampledProgressMonitor monitor = new SampledProgressMonitor(0, 100,
+				sampler);
+		monitor.start();
+		monitor.newCounter().add(10);
+		while (monitor.getCurrent() != 10) {
+			Thread.sleep(10);
+		}
+		WeakReference<SampledProgressMonitor> reference = new WeakReference<SampledProgressMonitor>(
+				monitor);
+		monitor = null;
+		while (reference.get() != null) {
+			System.gc();
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests snapshots are consistent: never taken while a write is in progress,
+ * never a mix of different updates, and versioned so pollers can skip them.
+ *
+ * @author Erich Schroeter
+ */
+public class ProgressSnapshotTest {
+
+	@Test
+	public void versionChangesOnlyWithUpdates() {
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		ProgressSnapshot snapshot = new ProgressSnapshot();
+		assertSame(snapshot, monitor.snapshot(snapshot));
+		long version = snapshot.getVersion();
+		assertEquals(0, version % 2);
+		assertEquals(version, monitor.snapshot(snapshot).getVersion());
+
+		monitor.start();
+		monitor.setCurrent(4, "four");
+		monitor.snapshot(snapshot);
+		assertTrue(snapshot.getVersion() > version);
+		assertEquals(AbstractProgressMonitor.State.RUNNING,
+				snapshot.getState());
+		assertTrue(snapshot.isDeterminate());
+		assertEquals(4, snapshot.getCurrent());
+		assertEquals(10, snapshot.getMax());
+		assertEquals("four", snapshot.getText());
+	}
+
+	@Test(timeout = 10000)
+	public void snapshotWaitsForTheWriteInProgress() throws Exception {
+		final DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+				0, 10, 0);
+		final ProgressSnapshot snapshot = new ProgressSnapshot();
+		final CountDownLatch taken = new CountDownLatch(1);
+		long stamp = monitor.beginWrite();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				monitor.snapshot(snapshot);
+				taken.countDown();
+			}
+		});
+		reader.start();
+		assertFalse(taken.await(100, TimeUnit.MILLISECONDS));
+		monitor.endWrite(stamp);
+		reader.join();
+		assertEquals(stamp + 1, snapshot.getVersion());
+	}
+
+	@Test(timeout = 30000)
+	public void concurrentUpdatesAreNeverTorn() throws Exception {
+		final DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+				0, Integer.MAX_VALUE, 0);
+		monitor.start();
+		Thread[] writers = new Thread[2];
+		for (int w = 0; w < writers.length; w++) {
+			final int offset = w;
+			writers[w] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = offset; i < 200000; i += writers.length) {
+						monitor.setCurrent(i, String.valueOf(i));
+					}
+				}
+			});
+			writers[w].start();
+		}
+		int torn = 0;
+		long version = -1;
+		boolean decreased = false;
+		ProgressSnapshot snapshot = new ProgressSnapshot();
+		boolean writing = true;
+		while (writing) {
+			monitor.snapshot(snapshot);
+			if (snapshot.getText() != null
+					&& !snapshot.getText().equals(
+							String.valueOf(snapshot.getCurrent()))) {
+				torn++;
+			}
+			if (snapshot.getVersion() < version) {
+				decreased = true;
+			}
+			version = snapshot.getVersion();
+			writing = writers[0].isAlive() || writers[1].isAlive();
+		}
+		assertEquals(0, torn);
+		assertFalse(decreased);
+		assertEquals(0, version % 2);
+	}
+}
@@ -0,0 +1,133 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import usr.erichschroeter.progressive.AbstractProgressMonitor.State;
+
+/**
+ * Tests the {@link ProgressTable} keeps each row and the totals of all rows
+ * in step, rolls up ranges, finds the slowest items and views an item as a
+ * monitor.
+ *
+ * @author Erich Schroeter
+ */
+public class ProgressTableTest {
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	@Test
+	public void rowsAndTotalsAreUpdatedTogether() {
+		rowsAndTotalsAreUpdatedTogether(new ProgressTable(10, false));
+		rowsAndTotalsAreUpdatedTogether(new ProgressTable(10, true));
+	}
+
+	private void rowsAndTotalsAreUpdatedTogether(ProgressTable table) {
+		assertEquals(10, table.getCount(State.NEW));
+		table.start(1, 100);
+		table.start(2, 50);
+		table.start(3, 10);
+		table.setCurrent(1, 40);
+		table.advance(1, 5);
+		table.advance(2, 20);
+		table.complete(3);
+		table.cancel(2);
+
+		assertEquals(45, table.getCurrent(1));
+		assertEquals(100, table.getMax(1));
+		assertEquals(State.RUNNING, table.getState(1));
+		assertEquals(20, table.getCurrent(2));
+		assertTrue(table.isCanceled(2));
+		assertEquals(10, table.getCurrent(3));
+		assertEquals(State.COMPLETED, table.getState(3));
+		assertEquals(State.NEW, table.getState(4));
+		assertEquals(0, table.getElapsedMillis(4));
+
+		assertEquals(75, table.getTotalCurrent());
+		assertEquals(160, table.getTotalMax());
+		assertEquals(7, table.getCount(State.NEW));
+		assertEquals(1, table.getCount(State.RUNNING));
+		assertEquals(1, table.getCount(State.COMPLETED));
+		assertEquals(1, table.getCount(State.CANCELED));
+
+		// restarting resets the row and its share of the totals
+		table.start(1, 30);
+		assertEquals(0, table.getCurrent(1));
+		assertEquals(30, table.getTotalCurrent());
+		assertEquals(90, table.getTotalMax());
+	}
+
+	@Test
+	public void rollupCoversOnlyItsRange() {
+		ProgressTable table = new ProgressTable(100, false);
+		for (int i = 0; i < 100; i++) {
+			table.start(i, 10);
+			table.setCurrent(i, i % 10);
+		}
+		table.complete(5);
+		table.cancel(50);
+		ProgressTable.Rollup rollup = table.rollup(0, 50);
+		assertEquals(10 * 50, rollup.getMax());
+		assertEquals(5 * 45 + 5, rollup.getCurrent());
+		assertEquals(49, rollup.getCount(State.RUNNING));
+		assertEquals(1, rollup.getCount(State.COMPLETED));
+		assertEquals(0, rollup.getCount(State.CANCELED));
+		assertEquals(1, table.rollup(50, 100).getCount(State.CANCELED));
+	}
+
+	@Test
+	public void slowestItemsComeFirst() throws Exception {
+		ProgressTable table = new ProgressTable(1000, false);
+		table.start(700, 1);
+		Thread.sleep(30);
+		table.start(20, 1);
+		Thread.sleep(30);
+		table.start(300, 1);
+		table.start(5, 1);
+		// a finished item no longer gets slower
+		table.complete(5);
+		Thread.sleep(30);
+
+		assertArrayEquals(new int[] { 700, 20 }, table.slowest(2));
+		int[] started = table.slowest(10);
+		assertEquals(4, started.length);
+		assertEquals(700, started[0]);
+		assertEquals(20, started[1]);
+		assertEquals(0, table.slowest(0).length);
+	}
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void viewedItemFollowsItsRow() throws Exception {
+		ProgressTable table = new ProgressTable(10, false);
+		DeterminateProgressMonitor monitor = table.monitor(3, 10);
+		Thread.sleep(30);
+		assertEquals(State.NEW, monitor.getState());
+		assertFalse(monitor.isTotalKnown());
+
+		table.start(3, 100);
+		table.advance(3, 40);
+		while (monitor.getCurrent() != 40) {
+			Thread.sleep(10);
+		}
+		assertEquals(State.RUNNING, monitor.getState());
+		assertEquals(100, monitor.getMax());
+		table.complete(3);
+		while (!monitor.isFinished()) {
+			Thread.sleep(10);
+		}
+		assertEquals(State.COMPLETED, monitor.getState());
+
+		// canceling the view cancels the item
+		DeterminateProgressMonitor canceled = table.monitor(4, 10);
+		table.start(4, 100);
+		while (canceled.getState() != State.RUNNING) {
+			Thread.sleep(10);
+		}
+		canceled.cancel();
+		assertTrue(table.isCanceled(4));
+	}
+}
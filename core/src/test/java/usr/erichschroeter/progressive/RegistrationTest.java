@@ -0,0 +1,107 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+/**
+ * Tests listener registrations detach once their listener is collected or
+ * their monitor finishes, and never keep an abandoned monitor reachable.
+ *
+ * @author Erich Schroeter
+ */
+public class RegistrationTest {
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void collectedListenerIsDetachedByTheNextEvent() throws Exception {
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		Counter listener = new Counter();
+		ListenerRegistration registration = monitor
+				.registerWeakListener(listener);
+		monitor.setCurrent(1);
+		assertEquals(1, listener.events);
+		assertFalse(registration.isClosed());
+
+		WeakReference<Counter> reference = new WeakReference<Counter>(listener);
+		listener = null;
+		awaitCollected(reference);
+		monitor.setCurrent(2);
+		assertTrue(registration.isClosed());
+	}
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void abandonedMonitorIsCollected() throws Exception {
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		Counter listener = new Counter();
+		monitor.registerWeakListener(listener);
+		monitor.start();
+		WeakReference<Counter> collectedListener = new WeakReference<Counter>(
+				listener);
+		listener = null;
+		awaitCollected(collectedListener);
+
+		// the collected listener's reference is queued, unexpunged
+		WeakReference<DeterminateProgressMonitor> reference = new WeakReference<DeterminateProgressMonitor>(
+				monitor);
+		monitor = null;
+		awaitCollected(reference);
+	}
+
+	@Test
+	public void registrationUntilFinishedDetachesOnCompletion() {
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		Counter listener = new Counter();
+		ListenerRegistration registration = monitor
+				.registerProgressListener(listener);
+		monitor.setCurrent(5);
+		assertFalse(registration.isClosed());
+		monitor.setCurrent(10);
+		assertTrue(registration.isClosed());
+		assertEquals(2, listener.events);
+
+		// a reused monitor no longer reaches the listener
+		monitor.setCurrent(0);
+		assertEquals(2, listener.events);
+
+		registration = monitor.registerProgressListener(listener);
+		monitor.start();
+		monitor.cancel();
+		assertTrue(registration.isClosed());
+		assertEquals(1, listener.canceled);
+	}
+
+	/** Collects garbage until the reference is cleared. */
+	private static void awaitCollected(WeakReference<?> reference)
+			throws InterruptedException {
+		while (reference.get() != null) {
+			System.gc();
+			Thread.sleep(10);
+		}
+	}
+
+	/** Counts the events it receives. */
+	private static class Counter implements ProgressListener {
+
+		int events;
+		int canceled;
+
+		@Override
+		public void statusChanged(StatusEvent e) {
+			events++;
+		}
+
+		@Override
+		public void canceled(StatusEvent e) {
+			canceled++;
+		}
+	}
+}
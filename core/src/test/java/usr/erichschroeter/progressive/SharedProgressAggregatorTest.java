@@ -0,0 +1,100 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link SharedProgressAggregator} combines the slots of a region
+ * into the range of its monitor.
+ *
+ * @author Erich Schroeter
+ */
+public class SharedProgressAggregatorTest {
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void negativeMinimumIsScaledIntoRange() throws Exception {
+		SharedProgressRegion region = SharedProgressRegion.create(new File(
+				folder.getRoot(), "region"), 2);
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+				-10, 0, -10);
+		SharedProgressAggregator aggregator = new SharedProgressAggregator(
+				region, monitor);
+		region.slot(0).setMax(100);
+		region.slot(0).setCurrent(50);
+		aggregator.poll();
+		assertEquals(90, monitor.getMax());
+		assertEquals(40, monitor.getCurrent());
+
+		// totals beyond the monitor's range are scaled down
+		region.slot(1).setMax(Long.MAX_VALUE / 2);
+		aggregator.poll();
+		assertTrue(monitor.getMax() > 0);
+		assertTrue(monitor.getCurrent() < monitor.getMax());
+		region.close();
+	}
+
+	@Test
+	public void slotCompletedWithoutMaximumCompletes() throws Exception {
+		SharedProgressRegion region = SharedProgressRegion.create(new File(
+				folder.getRoot(), "region"), 2);
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+				0, 0, 0);
+		SharedProgressAggregator aggregator = new SharedProgressAggregator(
+				region, monitor);
+		region.slot(0).setMax(10);
+		region.slot(0).complete();
+		aggregator.poll();
+		// the idle slot is still pending
+		assertEquals(AbstractProgressMonitor.State.RUNNING, monitor.getState());
+
+		region.slot(1).complete();
+		aggregator.poll();
+		assertEquals(AbstractProgressMonitor.State.COMPLETED,
+				monitor.getState());
+		region.close();
+	}
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void failingListenerDoesNotStopPolling() throws Exception {
+		SharedProgressRegion region = SharedProgressRegion.create(new File(
+				folder.getRoot(), "region"), 1);
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+				0, 0, 0);
+		monitor.addProgressListener(new ProgressListener() {
+			@Override
+			public void statusChanged(StatusEvent e) {
+				throw new IllegalStateException("listener failed");
+			}
+
+			@Override
+			public void canceled(StatusEvent e) {
+			}
+		});
+		SharedProgressAggregator aggregator = new SharedProgressAggregator(
+				region, monitor);
+		aggregator.start(10);
+		region.slot(0).setMax(10);
+		region.slot(0).setCurrent(5);
+		while (aggregator.getFailure() == null) {
+			Thread.sleep(10);
+		}
+		region.slot(0).complete();
+		while (!monitor.isFinished()) {
+			Thread.sleep(10);
+		}
+		assertNotNull(aggregator.getFailure());
+		region.close();
+	}
+}
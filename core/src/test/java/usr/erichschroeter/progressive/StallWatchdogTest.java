@@ -0,0 +1,93 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link StallWatchdog} reports stalls and resumes, and survives
+ * stall listeners which throw.
+ *
+ * @author Erich Schroeter
+ */
+public class StallWatchdogTest {
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void stallAndResumeAreReported() throws Exception {
+		StallWatchdog watchdog = new StallWatchdog(10);
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		Latches latches = new Latches();
+		monitor.addStallListener(latches);
+		monitor.start();
+		watchdog.watch(monitor, 50);
+		assertFalse(watchdog.isStalled(monitor));
+		assertTrue(latches.stalled.await(TIMEOUT_MILLIS,
+				TimeUnit.MILLISECONDS));
+		assertTrue(watchdog.isStalled(monitor));
+
+		monitor.setCurrent(1);
+		assertTrue(latches.resumed.await(TIMEOUT_MILLIS,
+				TimeUnit.MILLISECONDS));
+		assertFalse(watchdog.isStalled(monitor));
+		watchdog.unwatch(monitor);
+	}
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void throwingListenerDoesNotStopTheWatchdog() throws Exception {
+		StallWatchdog watchdog = new StallWatchdog(10);
+		DeterminateProgressMonitor failing = new DeterminateProgressMonitor(0,
+				10, 0);
+		failing.addStallListener(new StallListener() {
+			@Override
+			public void stalled(StallEvent e) {
+				throw new AssertionError("listener failed");
+			}
+
+			@Override
+			public void resumed(StallEvent e) {
+			}
+		});
+		failing.start();
+		watchdog.watch(failing, 20);
+		while (watchdog.getFailure() == null) {
+			Thread.sleep(10);
+		}
+		assertTrue(watchdog.getFailure() instanceof AssertionError);
+
+		// monitors are still checked after the failure
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		Latches latches = new Latches();
+		monitor.addStallListener(latches);
+		monitor.start();
+		watchdog.watch(monitor, 20);
+		assertTrue(latches.stalled.await(TIMEOUT_MILLIS,
+				TimeUnit.MILLISECONDS));
+		watchdog.unwatch(failing);
+		watchdog.unwatch(monitor);
+	}
+
+	/** Counts down once stalled and once resumed. */
+	private static class Latches implements StallListener {
+
+		final CountDownLatch stalled = new CountDownLatch(1);
+		final CountDownLatch resumed = new CountDownLatch(1);
+
+		@Override
+		public void stalled(StallEvent e) {
+			stalled.countDown();
+		}
+
+		@Override
+		public void resumed(StallEvent e) {
+			resumed.countDown();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link StatusLog} reads ranges of texts spanning compressed
+ * blocks and memory, continues an earlier log, and skips texts which cannot
+ * be built.
+ *
+ * @author Erich Schroeter
+ */
+public class StatusLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test(timeout = 30000)
+	public void rangesSpanBlocksOnDiskAndInMemory() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		StatusLog log = new StatusLog(directory, 4, 2, 1);
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				100, 0);
+		monitor.addProgressListener(log);
+		for (int i = 1; i <= 10; i++) {
+			monitor.setCurrent(i, "item\t" + i);
+		}
+		Thread.sleep(20);
+		long between = System.currentTimeMillis();
+		Thread.sleep(20);
+		for (int i = 11; i <= 30; i++) {
+			monitor.setCurrent(i, "item\t" + i);
+		}
+		List<StatusLog.Entry> entries = log.follow(29, 1, 10,
+				TimeUnit.SECONDS);
+		assertEquals(1, entries.size());
+
+		// from the middle of a block evicted from memory into the open one
+		entries = log.read(2, 27);
+		assertEquals(27, entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			assertEquals(2 + i, entries.get(i).getSequence());
+			assertEquals("item\t" + (3 + i), entries.get(i).getText());
+			assertEquals(monitor.getId(), entries.get(i).getMonitorId());
+		}
+		assertEquals(3, log.read(27, 100).size());
+
+		entries = log.readBetween(between, Long.MAX_VALUE, 100);
+		assertEquals(20, entries.size());
+		assertEquals(10, entries.get(0).getSequence());
+		assertEquals(5, log.readBetween(0, between, 5).size());
+		log.close();
+	}
+
+	@Test(timeout = 30000)
+	public void reopenedLogContinuesAfterTheEarlierTexts() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		StatusLog log = new StatusLog(directory, 4, 2, 1);
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				100, 0);
+		monitor.addProgressListener(log);
+		for (int i = 1; i <= 10; i++) {
+			monitor.setCurrent(i, "first " + i);
+		}
+		log.close();
+		assertEquals(10, log.getNextSequence());
+
+		StatusLog reopened = new StatusLog(directory, 4, 2, 1);
+		assertEquals(10, reopened.getNextSequence());
+		monitor.removeProgressListener(log);
+		monitor.addProgressListener(reopened);
+		monitor.setCurrent(11, "second");
+		reopened.close();
+
+		List<StatusLog.Entry> entries = reopened.read(0, 100);
+		assertEquals(11, entries.size());
+		assertEquals("first 1", entries.get(0).getText());
+		assertEquals("first 10", entries.get(9).getText());
+		assertEquals(10, entries.get(10).getSequence());
+		assertEquals("second", entries.get(10).getText());
+	}
+
+	@Test(timeout = 30000)
+	public void failingTextIsSkippedAndCounted() throws Exception {
+		StatusLog log = new StatusLog(folder.getRoot().toPath());
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				100, 0);
+		monitor.addProgressListener(log);
+		final IllegalStateException failure = new IllegalStateException();
+		monitor.setCurrentLazy(1, new Supplier<String>() {
+			@Override
+			public String get() {
+				throw failure;
+			}
+		});
+		monitor.setCurrent(2, "logged");
+		log.close();
+		assertEquals(1, log.getSkippedTexts());
+		assertSame(failure, log.getTextFailure());
+		List<StatusLog.Entry> entries = log.read(0, 100);
+		assertEquals(1, entries.size());
+		assertEquals("logged", entries.get(0).getText());
+	}
+}
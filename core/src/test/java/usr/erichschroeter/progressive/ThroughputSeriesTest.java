@@ -0,0 +1,112 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ThroughputSeries} merges full buckets pairwise, keeping
+ * the lowest and highest throughput of each, and downsamples them to columns.
+ *
+ * @author Erich Schroeter
+ */
+public class ThroughputSeriesTest {
+
+	private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final float DELTA = 0.01f;
+
+	@Test
+	public void fullBucketsAreMergedPairwise() {
+		ThroughputSeries series = new ThroughputSeries(
+				new DeterminateProgressMonitor(0, 1000, 0), 4, 1);
+		// a column per bucket
+		series.setColumnCount(4);
+		// units per millisecond in each bucket of a millisecond
+		Sampler sampler = new Sampler(series);
+		sampler.advance(1, 5, 2, 3);
+		assertEquals(MILLI, series.getBucketNanos());
+		assertColumns(series.getColumns(), 1000, 1000, 5000, 5000, 2000,
+				2000, 3000, 3000);
+
+		// a fifth bucket merges the four and doubles their duration
+		series.setColumnCount(3);
+		sampler.advance(10);
+		assertEquals(2 * MILLI, series.getBucketNanos());
+		assertColumns(series.getColumns(), 1000, 5000, 2000, 3000, 10000,
+				10000);
+		assertEquals(10000, series.getColumns().getPeak(), DELTA);
+		assertEquals(5 * MILLI, series.getColumns().getDurationNanos());
+
+		// the next bucket stays open for the doubled duration
+		series.setColumnCount(4);
+		sampler.advance(4);
+		assertColumns(series.getColumns(), 1000, 5000, 2000, 3000, 10000,
+				10000, 4000, 4000);
+		assertEquals(4000, series.getLatestRate(), DELTA);
+		sampler.advance(6);
+		assertEquals(2 * MILLI, series.getBucketNanos());
+		assertColumns(series.getColumns(), 1000, 5000, 2000, 3000, 10000,
+				10000, 4000, 6000);
+	}
+
+	@Test
+	public void oddLastBucketIsKeptAsItIs() {
+		ThroughputSeries series = new ThroughputSeries(
+				new DeterminateProgressMonitor(0, 1000, 0), 3, 1);
+		series.setColumnCount(3);
+		Sampler sampler = new Sampler(series);
+		sampler.advance(1, 5, 2, 3);
+		assertEquals(2 * MILLI, series.getBucketNanos());
+		assertColumns(series.getColumns(), 1000, 5000, 2000, 2000, 3000, 3000);
+	}
+
+	@Test
+	public void columnsKeepTheExtremesOfTheirBuckets() {
+		ThroughputSeries series = new ThroughputSeries(
+				new DeterminateProgressMonitor(0, 1000, 0), 8, 1);
+		Sampler sampler = new Sampler(series);
+		sampler.advance(3, 1, 4, 1);
+		assertEquals(0, series.getColumns().getCount());
+
+		series.setColumnCount(2);
+		sampler.advance(5);
+		assertColumns(series.getColumns(), 1000, 3000, 1000, 5000);
+		series.setColumnCount(1);
+		sampler.advance(2);
+		assertColumns(series.getColumns(), 1000, 5000);
+	}
+
+	/** Asserts the lowest and highest throughput of each column, in turn. */
+	private static void assertColumns(ThroughputSeries.Columns columns,
+			float... extremes) {
+		assertEquals(extremes.length / 2, columns.getCount());
+		for (int c = 0; c < columns.getCount(); c++) {
+			assertEquals(extremes[2 * c], columns.getMin(c), DELTA);
+			assertEquals(extremes[2 * c + 1], columns.getMax(c), DELTA);
+		}
+	}
+
+	/** Feeds the series a sample every millisecond. */
+	private static class Sampler {
+
+		final ThroughputSeries series;
+		long now = TimeUnit.SECONDS.toNanos(1);
+		int value;
+
+		Sampler(ThroughputSeries series) {
+			this.series = series;
+			series.sample(now, value);
+		}
+
+		/** Samples after each millisecond, making the units in it. */
+		void advance(int... units) {
+			for (int u : units) {
+				now += MILLI;
+				value += u;
+				series.sample(now, value);
+			}
+		}
+	}
+}
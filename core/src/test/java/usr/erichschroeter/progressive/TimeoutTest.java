@@ -0,0 +1,114 @@
+package usr.erichschroeter.progressive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import usr.erichschroeter.progressive.AbstractProgressMonitor.State;
+
+/**
+ * Tests deadlines and idle timeouts cancel monitors which do not finish or
+ * progress in time, are re-armed by progress and restarts, and are disarmed
+ * by completion.
+ *
+ * @author Erich Schroeter
+ */
+public class TimeoutTest {
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void deadlineCancelsAnUnfinishedMonitor() throws Exception {
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		CancelLatch latch = new CancelLatch();
+		monitor.addProgressListener(latch);
+		monitor.setDeadline(50, TimeUnit.MILLISECONDS);
+		long started = System.nanoTime();
+		monitor.start();
+		latch.canceled.await();
+		assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS
+				.toNanos(50));
+		assertEquals(State.CANCELED, monitor.getState());
+		assertEquals("Not finished within 50 ms", latch.text);
+
+		// starting again re-arms the deadline
+		latch = new CancelLatch();
+		monitor.addProgressListener(latch);
+		monitor.start();
+		assertEquals(State.RUNNING, monitor.getState());
+		latch.canceled.await();
+		assertEquals(State.CANCELED, monitor.getState());
+	}
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void progressRearmsTheIdleTimeout() throws Exception {
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				100, 0);
+		CancelLatch latch = new CancelLatch();
+		monitor.addProgressListener(latch);
+		monitor.setIdleTimeout(100, TimeUnit.MILLISECONDS);
+		monitor.start();
+		// progress for three times the timeout
+		for (int i = 1; i <= 15; i++) {
+			Thread.sleep(20);
+			monitor.setCurrent(i);
+		}
+		assertEquals(State.RUNNING, monitor.getState());
+
+		long stopped = System.nanoTime();
+		latch.canceled.await();
+		assertTrue(System.nanoTime() - stopped >= TimeUnit.MILLISECONDS
+				.toNanos(100));
+		assertEquals("No progress for 100 ms", latch.text);
+	}
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void completionDisarmsTheTimeouts() throws Exception {
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		CancelLatch latch = new CancelLatch();
+		monitor.addProgressListener(latch);
+		monitor.setDeadline(50, TimeUnit.MILLISECONDS);
+		monitor.setIdleTimeout(50, TimeUnit.MILLISECONDS);
+		monitor.start();
+		monitor.setCurrent(10);
+		assertFalse(latch.canceled.await(200, TimeUnit.MILLISECONDS));
+		assertEquals(State.COMPLETED, monitor.getState());
+	}
+
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void clearedDeadlineIsDisarmed() throws Exception {
+		DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(0,
+				10, 0);
+		CancelLatch latch = new CancelLatch();
+		monitor.addProgressListener(latch);
+		monitor.setDeadline(50, TimeUnit.MILLISECONDS);
+		monitor.start();
+		monitor.setDeadline(0, TimeUnit.MILLISECONDS);
+		assertFalse(latch.canceled.await(200, TimeUnit.MILLISECONDS));
+		assertEquals(State.RUNNING, monitor.getState());
+	}
+
+	/** Counts down once canceled, keeping the reason. */
+	private static class CancelLatch implements ProgressListener {
+
+		final CountDownLatch canceled = new CountDownLatch(1);
+		volatile String text;
+
+		@Override
+		public void statusChanged(StatusEvent e) {
+		}
+
+		@Override
+		public void canceled(StatusEvent e) {
+			text = e.getText();
+			canceled.countDown();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package usr.erichschroeter.progressive.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+
+import usr.erichschroeter.progressive.AbstractProgressMonitor;
+import usr.erichschroeter.progressive.DeterminateStatusEvent;
+import usr.erichschroeter.progressive.LatencyHistogram;
+import usr.erichschroeter.progressive.ListenerRegistration;
+import usr.erichschroeter.progressive.ProgressListener;
+import usr.erichschroeter.progressive.StatusEvent;
+
+/**
+ * Stands in for a <code>ProgressDialog</code> where no display is available.
+ * Events are handed to the EDT and coalesced the same way the dialog does,
+ * and the values the dialog would display are read on the EDT.
+ * <p>
+ * The latency from an update being fired to it being displayed on the EDT is
+ * recorded, measured from the first event of each coalesced batch. A stub
+ * may also be {@link #attach(AbstractProgressMonitor) attached} and
+ * {@link #dispose() disposed} the way the dialog registers itself.
+ * 
+ * @author Erich Schroeter
+ */
+class HeadlessDialogStub implements ProgressListener {
+
+	private final AtomicReference<StatusEvent> pendingEvent = new AtomicReference<StatusEvent>();
+	/** When the first event of the pending batch was fired. */
+	private volatile long pendingSince;
+	private final LatencyHistogram latency;
+	private final AtomicLong displayed;
+	/** Keeps the displayed values reachable so reading them is not elided. */
+	int displayedValue;
+	String displayedText;
+	private ListenerRegistration registration;
+
+	HeadlessDialogStub(LatencyHistogram latency, AtomicLong displayed) {
+		this.latency = latency;
+		this.displayed = displayed;
+	}
+
+	/**
+	 * Registers the stub weakly with a monitor, as the dialog does once
+	 * created.
+	 */
+	void attach(AbstractProgressMonitor monitor) {
+		registration = monitor.registerWeakListener(this);
+	}
+
+	/** Detaches the stub from its monitor, as the dialog does when disposed. */
+	void dispose() {
+		if (registration != null) {
+			registration.close();
+		}
+	}
+
+	@Override
+	public void statusChanged(StatusEvent e) {
+		long now = System.nanoTime();
+		if (pendingEvent.getAndSet(e) != null) {
+			return;
+		}
+		pendingSince = now;
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				long since = pendingSince;
+				StatusEvent latest = pendingEvent.getAndSet(null);
+				if (latest != null) {
+					display(latest);
+					latency.record(System.nanoTime() - since);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void canceled(StatusEvent e) {
+	}
+
+	private void display(StatusEvent e) {
+		displayedText = e.getText();
+		if (e instanceof DeterminateStatusEvent) {
+			displayedValue = ((DeterminateStatusEvent) e).getCurrent();
+		}
+		displayed.incrementAndGet();
+	}
+}
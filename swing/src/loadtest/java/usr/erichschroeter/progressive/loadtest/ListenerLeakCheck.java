@@ -0,0 +1,222 @@
+package usr.erichschroeter.progressive.loadtest;
+
+import java.awt.Frame;
+import java.awt.GraphicsEnvironment;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import usr.erichschroeter.progressive.AbstractProgressMonitor;
+import usr.erichschroeter.progressive.DeterminateProgressMonitor;
+import usr.erichschroeter.progressive.LatencyHistogram;
+import usr.erichschroeter.progressive.ListenerRegistration;
+import usr.erichschroeter.progressive.ProgressListener;
+import usr.erichschroeter.progressive.StatusEvent;
+import usr.erichschroeter.progressive.swing.ProgressDialog;
+
+/**
+ * Checks that a long-lived monitor reused across many runs does not keep the
+ * dialogs and listeners of earlier runs reachable.
+ * <p>
+ * Each cycle runs the monitor once with a dialog holding a document of
+ * {@link #DOCUMENT_BYTES} bytes attached, and a listener registered until the
+ * run finishes, the way <code>ProgressUtil</code> registers its own. Where a
+ * display is available the dialog is a real {@link ProgressDialog}, created
+ * on the EDT but not shown, so its refresh timer, its throughput series on
+ * the shared scheduler and its weak registration are all cycled; it closes
+ * itself when the run completes or is canceled. Headless, a
+ * {@link HeadlessDialogStub} stands in, which only covers the registration
+ * and not the dialog's own resources, and the check says so.
+ * <p>
+ * Every tenth dialog is abandoned rather than closed, and keeps receiving
+ * events until it is collected, and every tenth run is canceled rather than
+ * completed. The heap in use after a full collection is measured once the
+ * first cycles have run and again at the end, and the check fails if it grew
+ * by more than {@link #MAX_GROWTH_BYTES}. Run it with a display, such as
+ * under <code>xvfb-run</code>, with
+ * <code>gradle :swing:leakCheck [-PleakCheckArgs="cycles=100000"]</code>.
+ *
+ * @author Erich Schroeter
+ */
+public class ListenerLeakCheck {
+
+	/** The bytes each dialog and listener holds, so a leak shows quickly. */
+	static final int DOCUMENT_BYTES = 10 * 1024;
+	/** The most the heap in use may grow between the measurements. */
+	static final long MAX_GROWTH_BYTES = 1024 * 1024;
+
+	private final int cycles;
+	private final int warmupCycles;
+	/** Whether the stand-in replaces the dialog, without a display. */
+	private final boolean headless = GraphicsEnvironment.isHeadless();
+	private final DeterminateProgressMonitor monitor = new DeterminateProgressMonitor(
+			0, 10, 0);
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong displayed = new AtomicLong();
+
+	ListenerLeakCheck(int cycles) {
+		this.cycles = cycles;
+		this.warmupCycles = Math.max(1, cycles / 10);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int cycles = 100000;
+		for (String arg : args) {
+			if (!arg.startsWith("cycles=")) {
+				throw new IllegalArgumentException("expected cycles=<n>: "
+						+ arg);
+			}
+			cycles = Integer.parseInt(arg.substring("cycles=".length()));
+		}
+		boolean flat = new ListenerLeakCheck(cycles).run();
+		System.exit(flat ? 0 : 1);
+	}
+
+	boolean run() throws InterruptedException, InvocationTargetException {
+		long baseline = 0;
+		for (int cycle = 0; cycle < cycles; cycle++) {
+			cycle(cycle);
+			if (cycle + 1 == warmupCycles) {
+				baseline = usedAfterCollection();
+			}
+		}
+		long used = usedAfterCollection();
+		long growth = used - baseline;
+		System.out.printf(
+				"leak.cycles=%d dialog=%s baselineBytes=%d usedBytes=%d growthBytes=%d displayed=%d%n",
+				cycles, headless ? "HeadlessDialogStub" : "ProgressDialog",
+				baseline, used, growth, displayed.get());
+		if (headless) {
+			System.out.println("headless: the stand-in only covers the"
+					+ " registration, not the dialog's timer and throughput"
+					+ " series; run with a display to check ProgressDialog");
+		}
+		if (growth > MAX_GROWTH_BYTES) {
+			System.out.printf("heap grew by %d bytes, more than %d%n", growth,
+					MAX_GROWTH_BYTES);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the monitor once with a dialog and a listener of its own, and
+	 * waits for the dialog to display the run as a user would.
+	 */
+	private void cycle(int cycle) throws InterruptedException,
+			InvocationTargetException {
+		boolean abandoned = cycle % 10 == 4;
+		DocumentDialog stub = null;
+		if (headless) {
+			stub = new DocumentDialog(latency, displayed);
+			stub.attach(monitor);
+		} else {
+			openDialog(abandoned);
+		}
+		monitor.registerProgressListener(new DocumentListener());
+		monitor.start();
+		for (int current = 1; current < monitor.getMax(); current++) {
+			monitor.setCurrent(current, "Processing item %d", current);
+		}
+		if (cycle % 10 == 9) {
+			monitor.cancel();
+		} else {
+			monitor.setCurrent(monitor.getMax());
+		}
+		awaitDisplayed();
+		if (stub != null && !abandoned) {
+			stub.dispose();
+		}
+		monitor.setCurrent(0);
+	}
+
+	/**
+	 * Creates a dialog for the monitor on the EDT, which closes itself when
+	 * the run finishes unless it is to be abandoned.
+	 */
+	private void openDialog(final boolean abandoned)
+			throws InterruptedException, InvocationTargetException {
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				ProgressDialog dialog = new DocumentProgressDialog(monitor);
+				dialog.setAutoCloseOnComplete(!abandoned);
+				dialog.setAutoCloseOnCancel(!abandoned);
+			}
+		});
+	}
+
+	/** Waits for the events handed to the EDT so far to be displayed. */
+	private static void awaitDisplayed() throws InterruptedException,
+			InvocationTargetException {
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+	}
+
+	/**
+	 * Returns the heap in use once the events handed to the EDT are displayed
+	 * and the abandoned dialogs are collected and detached.
+	 */
+	private long usedAfterCollection() throws InterruptedException,
+			InvocationTargetException {
+		awaitDisplayed();
+		collect();
+		// registering detaches the weak listeners collected so far
+		ListenerRegistration probe = monitor
+				.registerWeakListener(new DocumentListener());
+		probe.close();
+		collect();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void collect() throws InterruptedException {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			TimeUnit.MILLISECONDS.sleep(50);
+		}
+	}
+
+	/** A dialog stand-in holding a document, as the dialog does. */
+	private static class DocumentDialog extends HeadlessDialogStub {
+
+		@SuppressWarnings("unused")
+		final byte[] document = new byte[DOCUMENT_BYTES];
+
+		DocumentDialog(LatencyHistogram latency, AtomicLong displayed) {
+			super(latency, displayed);
+		}
+	}
+
+	/** A dialog holding a document, as an application's dialog might. */
+	@SuppressWarnings("serial")
+	private static class DocumentProgressDialog extends ProgressDialog {
+
+		@SuppressWarnings("unused")
+		final byte[] document = new byte[DOCUMENT_BYTES];
+
+		DocumentProgressDialog(AbstractProgressMonitor monitor) {
+			super((Frame) null, monitor, null);
+		}
+	}
+
+	/** A listener holding a document, registered until a run finishes. */
+	private static class DocumentListener implements ProgressListener {
+
+		@SuppressWarnings("unused")
+		final byte[] document = new byte[DOCUMENT_BYTES];
+
+		@Override
+		public void statusChanged(StatusEvent e) {
+		}
+
+		@Override
+		public void canceled(StatusEvent e) {
+		}
+	}
+}
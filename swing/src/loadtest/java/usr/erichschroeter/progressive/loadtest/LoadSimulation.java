@@ -0,0 +1,294 @@
+package usr.erichschroeter.progressive.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import usr.erichschroeter.progressive.AbstractProgressMonitor;
+import usr.erichschroeter.progressive.DeterminateProgressMonitor;
+import usr.erichschroeter.progressive.IndeterminateProgressMonitor;
+import usr.erichschroeter.progressive.LatencyHistogram;
+import usr.erichschroeter.progressive.ProgressListener;
+import usr.erichschroeter.progressive.StatusEvent;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Simulates the production load on the library: thousands of monitors updated
+ * concurrently by many producer threads, each monitor with a few listeners,
+ * and dialogs displaying some of them on the EDT. Each producer owns its share
+ * of the monitors and updates them round robin as fast as it can.
+ * <p>
+ * After a warmup the simulation measures the update throughput, the latency
+ * from an update to it being displayed on the EDT, the allocation rate of the
+ * producers, and the GC pauses, and prints them in a form which can be
+ * compared between releases. Run it with
+ * <code>gradle :swing:loadTest -Pscenario=&lt;name&gt;</code>, see
+ * {@link Scenario}.
+ *
+ * @author Erich Schroeter
+ */
+public class LoadSimulation {
+
+	private final Scenario scenario;
+	private final List<AbstractProgressMonitor> monitors = new ArrayList<AbstractProgressMonitor>();
+	private final LatencyHistogram displayLatency = new LatencyHistogram();
+	private final LatencyHistogram gcPauses = new LatencyHistogram();
+	private final AtomicLong displayed = new AtomicLong();
+	/** Counted without contention, as every producer thread adds to it. */
+	private final LongAdder listened = new LongAdder();
+	private volatile boolean measuring;
+	private volatile boolean running = true;
+
+	LoadSimulation(Scenario scenario) {
+		this.scenario = scenario;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Scenario scenario = Scenario.load(args);
+		System.out.println("scenario " + scenario);
+		new LoadSimulation(scenario).run();
+		System.exit(0);
+	}
+
+	void run() throws InterruptedException {
+		createMonitors();
+		watchGarbageCollections();
+
+		Producer[] producers = new Producer[scenario.producers];
+		for (int i = 0; i < producers.length; i++) {
+			producers[i] = new Producer(i);
+		}
+		for (Producer producer : producers) {
+			producer.start();
+		}
+
+		TimeUnit.SECONDS.sleep(scenario.warmupSeconds);
+		displayLatency.reset();
+		gcPauses.reset();
+		displayed.set(0);
+		listened.reset();
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long[] ids = new long[producers.length];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = producers[i].getId();
+		}
+		long[] allocatedBefore = threads.getThreadAllocatedBytes(ids);
+		long updatesBefore = updates(producers);
+		long began = System.nanoTime();
+		measuring = true;
+
+		TimeUnit.SECONDS.sleep(scenario.durationSeconds);
+		measuring = false;
+		long elapsed = System.nanoTime() - began;
+		long updates = updates(producers) - updatesBefore;
+		long[] allocatedAfter = threads.getThreadAllocatedBytes(ids);
+		running = false;
+		for (Producer producer : producers) {
+			producer.join();
+		}
+
+		long allocated = 0;
+		for (int i = 0; i < ids.length; i++) {
+			allocated += allocatedAfter[i] - allocatedBefore[i];
+		}
+		report(elapsed, updates, allocated);
+	}
+
+	/** Creates the monitors and adds the listeners and dialogs to them. */
+	private void createMonitors() {
+		int determinate = (int) Math.round(scenario.monitors
+				* scenario.determinateRatio);
+		for (int i = 0; i < scenario.monitors; i++) {
+			AbstractProgressMonitor monitor;
+			if (i < determinate) {
+				monitor = new DeterminateProgressMonitor(0,
+						scenario.maxProgress, 0);
+			} else {
+				monitor = new IndeterminateProgressMonitor();
+			}
+			for (int l = 0; l < scenario.listenersPerMonitor; l++) {
+				monitor.addProgressListener(new CountingListener(l));
+			}
+			monitors.add(monitor);
+		}
+		// spread the dialogs over both kinds of monitor
+		for (int d = 0; d < scenario.dialogs && d < monitors.size(); d++) {
+			int index = (int) ((long) d * monitors.size() / scenario.dialogs);
+			monitors.get(index).addProgressListener(
+					new HeadlessDialogStub(displayLatency, displayed));
+		}
+	}
+
+	/** Records the duration of every garbage collection while measuring. */
+	private void watchGarbageCollections() {
+		NotificationListener listener = new NotificationListener() {
+			@Override
+			public void handleNotification(Notification notification,
+					Object handback) {
+				if (!measuring
+						|| !GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+								.equals(notification.getType())) {
+					return;
+				}
+				GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+						.from((CompositeData) notification.getUserData());
+				gcPauses.record(TimeUnit.MILLISECONDS.toNanos(info.getGcInfo()
+						.getDuration()));
+			}
+		};
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			if (gc instanceof NotificationEmitter) {
+				((NotificationEmitter) gc).addNotificationListener(listener,
+						null, null);
+			}
+		}
+	}
+
+	private static long updates(Producer[] producers) {
+		long updates = 0;
+		for (Producer producer : producers) {
+			updates += producer.updates;
+		}
+		return updates;
+	}
+
+	private void report(long elapsedNanos, long updates, long allocatedBytes) {
+		double seconds = elapsedNanos / 1e9;
+		System.out.printf("throughput.updatesPerSecond=%.0f%n", updates
+				/ seconds);
+		System.out.printf("throughput.listenerCallsPerSecond=%.0f%n",
+				listened.sum() / seconds);
+		System.out.printf("display.eventsPerSecond=%.0f%n", displayed.get()
+				/ seconds);
+		System.out.printf(
+				"display.latencyMicros p50=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+				displayLatency.getValueAtPercentile(50) / 1e3,
+				displayLatency.getValueAtPercentile(99) / 1e3,
+				displayLatency.getValueAtPercentile(99.9) / 1e3,
+				displayLatency.getMax() / 1e3);
+		System.out.printf("allocation.bytesPerSecond=%.0f%n", allocatedBytes
+				/ seconds);
+		System.out.printf("allocation.bytesPerUpdate=%.2f%n",
+				updates == 0 ? 0.0 : (double) allocatedBytes / updates);
+		System.out.printf(
+				"gc.pauses count=%d totalMillis=%.0f p99Millis=%.1f maxMillis=%.1f%n",
+				gcPauses.getCount(),
+				gcPauses.getMean() * gcPauses.getCount() / 1e6,
+				gcPauses.getValueAtPercentile(99) / 1e6,
+				gcPauses.getMax() / 1e6);
+	}
+
+	/**
+	 * Updates every monitor whose index modulo the number of producers is the
+	 * producer's index. Monitors are not safe to update from several threads,
+	 * so each is only ever updated by its own producer.
+	 */
+	private class Producer extends Thread {
+
+		private final int index;
+		/** Read by the main thread, written only by this producer. */
+		volatile long updates;
+
+		Producer(int index) {
+			super("load-producer-" + index);
+			this.index = index;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			List<AbstractProgressMonitor> owned = new ArrayList<AbstractProgressMonitor>();
+			for (int i = index; i < monitors.size(); i += scenario.producers) {
+				owned.add(monitors.get(i));
+			}
+			for (AbstractProgressMonitor monitor : owned) {
+				monitor.start("Starting");
+			}
+			long count = 0;
+			while (running) {
+				for (int i = 0; i < owned.size(); i++) {
+					update(owned.get(i), count);
+				}
+				count++;
+				updates += owned.size();
+				if (owned.isEmpty()) {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}
+
+		private void update(AbstractProgressMonitor monitor, final long count) {
+			if (monitor instanceof DeterminateProgressMonitor) {
+				DeterminateProgressMonitor determinate = (DeterminateProgressMonitor) monitor;
+				// wrap around so determinate monitors complete repeatedly
+				final int current = (determinate.getCurrent() + 1)
+						% (scenario.maxProgress + 1);
+				if (scenario.lazyText) {
+					determinate.setCurrent(current, "Processing item %d",
+							current);
+				} else {
+					determinate.setCurrent(current, "Processing item "
+							+ current);
+				}
+			} else {
+				IndeterminateProgressMonitor indeterminate = (IndeterminateProgressMonitor) monitor;
+				if (scenario.lazyText) {
+					indeterminate.updateStatusTextLazy(new Supplier<String>() {
+						@Override
+						public String get() {
+							return "Pass " + count;
+						}
+					});
+				} else {
+					indeterminate.updateStatusText("Pass " + count);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A listener doing the little work typical listeners do. Every third
+	 * listener reads the status text, which builds lazily set text.
+	 */
+	private class CountingListener implements ProgressListener {
+
+		private final boolean readsText;
+		private int textLength;
+
+		CountingListener(int index) {
+			this.readsText = index % 3 == 2;
+		}
+
+		@Override
+		public void statusChanged(StatusEvent e) {
+			if (readsText) {
+				String text = e.getText();
+				textLength += text == null ? 0 : text.length();
+			}
+			if (measuring) {
+				listened.increment();
+			}
+		}
+
+		@Override
+		public void canceled(StatusEvent e) {
+		}
+	}
+}
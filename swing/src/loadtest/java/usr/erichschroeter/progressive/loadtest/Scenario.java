@@ -0,0 +1,99 @@
+package usr.erichschroeter.progressive.loadtest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * The configuration of a load simulation, read from a properties file. A
+ * scenario is named after a file in the <code>scenarios</code> resource
+ * directory or given as a path, and any of its properties may be overridden
+ * with <code>key=value</code> arguments.
+ * 
+ * @author Erich Schroeter
+ */
+class Scenario {
+
+	final String name;
+	/** The number of monitors updated concurrently. */
+	final int monitors;
+	/** The number of threads updating the monitors. */
+	final int producers;
+	/** The fraction of the monitors which are determinate. */
+	final double determinateRatio;
+	/** The number of listeners added to each monitor. */
+	final int listenersPerMonitor;
+	/** The number of monitors a dialog on the EDT is subscribed to. */
+	final int dialogs;
+	/** The maximum progress of determinate monitors, which then restart. */
+	final int maxProgress;
+	/** Whether status text is set lazily or formatted on every update. */
+	final boolean lazyText;
+	final int warmupSeconds;
+	final int durationSeconds;
+
+	private Scenario(String name, Properties properties) {
+		this.name = name;
+		monitors = Integer.parseInt(properties.getProperty("monitors", "5000"));
+		producers = Integer.parseInt(properties.getProperty("producers", "64"));
+		determinateRatio = Double.parseDouble(properties.getProperty(
+				"determinateRatio", "0.8"));
+		listenersPerMonitor = Integer.parseInt(properties.getProperty(
+				"listenersPerMonitor", "3"));
+		dialogs = Integer.parseInt(properties.getProperty("dialogs", "1"));
+		maxProgress = Integer.parseInt(properties.getProperty("maxProgress",
+				"10000"));
+		lazyText = Boolean.parseBoolean(properties.getProperty("lazyText",
+				"true"));
+		warmupSeconds = Integer.parseInt(properties.getProperty(
+				"warmupSeconds", "5"));
+		durationSeconds = Integer.parseInt(properties.getProperty(
+				"durationSeconds", "30"));
+	}
+
+	/**
+	 * Loads the scenario named by the first argument, applying the remaining
+	 * <code>key=value</code> arguments as overrides.
+	 */
+	static Scenario load(String[] args) throws IOException {
+		String name = args.length > 0 ? args[0] : "default";
+		Properties properties = new Properties();
+		InputStream in;
+		File file = new File(name);
+		if (file.isFile()) {
+			in = new FileInputStream(file);
+		} else {
+			in = Scenario.class.getClassLoader().getResourceAsStream(
+					"scenarios/" + name + ".properties");
+			if (in == null) {
+				throw new IOException("unknown scenario: " + name);
+			}
+		}
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		for (int i = 1; i < args.length; i++) {
+			int split = args[i].indexOf('=');
+			if (split <= 0) {
+				throw new IllegalArgumentException("expected key=value: "
+						+ args[i]);
+			}
+			properties.setProperty(args[i].substring(0, split),
+					args[i].substring(split + 1));
+		}
+		return new Scenario(name, properties);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%s: monitors=%d producers=%d determinateRatio=%.2f listenersPerMonitor=%d dialogs=%d maxProgress=%d lazyText=%b warmup=%ds duration=%ds",
+				name, monitors, producers, determinateRatio,
+				listenersPerMonitor, dialogs, maxProgress, lazyText,
+				warmupSeconds, durationSeconds);
+	}
+}
@@ -0,0 +1,993 @@
+package usr.erichschroeter.progressive.swing;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dialog;
+import java.awt.Dimension;
+import java.awt.Frame;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.HeadlessException;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.AbstractAction;
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JSeparator;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.jdesktop.swingx.JXCollapsiblePane;
+
+import usr.erichschroeter.progressive.AbstractProgressMonitor;
+import usr.erichschroeter.progressive.CancelHandler;
+import usr.erichschroeter.progressive.DeterminateProgressMonitor;
+import usr.erichschroeter.progressive.DisplayLatencyProbe;
+import usr.erichschroeter.progressive.DurationEstimate;
+import usr.erichschroeter.progressive.IndeterminateProgressMonitor;
+import usr.erichschroeter.progressive.LatencyHistogram;
+import usr.erichschroeter.progressive.ListenerRegistration;
+import usr.erichschroeter.progressive.ProgressListener;
+import usr.erichschroeter.progressive.StallEvent;
+import usr.erichschroeter.progressive.StallListener;
+import usr.erichschroeter.progressive.StatusEvent;
+import usr.erichschroeter.progressive.ThroughputSeries;
+
+/**
+ * A dialog providing an interface for the user to be updated on progress of an
+ * action being performed by an application.
+ * <p>
+ * The dialog is displayed differently based on some constraints. Namely, if
+ * there is no delegate defined to handle canceling the action it is assumed
+ * that the action is not cancelable, and thus no cancel button is displayed.
+ * <p>
+ * The progress bar is displayed depending on whether the progress of an action
+ * is determinate or indeterminate. See {@link JProgressBar} for its features.
+ * A determinate monitor whose total is not known yet is displayed as
+ * indeterminate, with the work counted so far, and a progress bar never moves
+ * backwards because its total grew.
+ * <p>
+ * Another feature provided by the dialog is to allow the dialog to
+ * automatically be closed based on two switches.
+ * <ul>
+ * <li>once a the progress being monitored is completed (via
+ * {@link #setAutoCloseOnComplete(boolean)})</li>
+ * <li>if the progress is canceled (via {@link #setAutoCloseOnCancel(boolean)})</li>
+ * </ul>
+ * 
+ * @author Santhosh Kumar T, Erich Schroeter
+ * @see ProgressUtil
+ * @see DeterminateProgressMonitor
+ * @see IndeterminateProgressMonitor
+ */
+@SuppressWarnings("serial")
+public class ProgressDialog extends JDialog implements ProgressListener,
+		StallListener {
+
+	protected static final ResourceBundle i18ln = ResourceBundle
+			.getBundle("usr.erichschroeter.progressive.swing.i18ln.ProgressDialog");
+	/** Milliseconds between refreshing estimates and details. */
+	private static final int REFRESH_MILLIS = 500;
+	/** The progress bar maximum while displaying an estimated progress. */
+	private static final int ESTIMATE_RESOLUTION = 1000;
+
+	/** A label displaying the latest status text. */
+	private JLabel statusLabel;
+	/** The progress bar for displaying the progress. */
+	private ProgressBar progressBar;
+	/** A place to aggregate all status text. */
+	private JTextArea statusHistory;
+	/** The collapsible details pane holding the status history. */
+	private JXCollapsiblePane collapsePane;
+	/** Statistics displayed below the status history. */
+	private JPanel detailsPanel;
+	/** The per item latencies of a monitor with a latency histogram. */
+	private JLabel latencyLabel;
+	/** The display latencies of a monitor with a display latency probe. */
+	private JLabel displayLatencyLabel;
+	/** The throughput of a determinate monitor, or <code>null</code>. */
+	private ThroughputSeries throughput;
+	/** The latest and peak throughput above the sparkline. */
+	private JLabel throughputLabel;
+	/** The throughput over the whole run. */
+	private Sparkline sparkline;
+	/** The monitor monitoring progress. */
+	private AbstractProgressMonitor monitor;
+	/**
+	 * The dialog's registration with the monitor. The monitor only holds the
+	 * dialog weakly, and the dialog detaches itself once disposed.
+	 */
+	private ListenerRegistration registration;
+	/**
+	 * The cancel button. Not displayed if progress is not cancelable.
+	 * 
+	 * @see #isCancelable()
+	 */
+	private JButton cancelButton;
+	/**
+	 * The delegate called if the progress monitoring is canceled. By default,
+	 * this determines if the progress is cancelable.
+	 * 
+	 * @see #isCancelable()
+	 */
+	private CancelHandler cancelDelegate;
+	/** Whether to automatically close the dialog when progress completes. */
+	private boolean autoCloseOnComplete;
+	/** Whether to automatically close the dialog when progress is canceled. */
+	private boolean autoCloseOnCancel;
+	/** The previous status text. */
+	private String previousStatus;
+	/**
+	 * Refreshes the estimated progress of an indeterminate monitor with a
+	 * duration history, and the statistics in the details pane.
+	 * 
+	 * @see IndeterminateProgressMonitor#getEstimate()
+	 */
+	private Timer refreshTimer;
+	/** Whether the watched monitor is currently stalled. */
+	private boolean stalled;
+	/** Whether the progress bar is displaying an estimated progress. */
+	private boolean estimating;
+	/** Whether the total of a determinate monitor is still being counted. */
+	private boolean counting;
+	/**
+	 * The fraction the progress bar is held at after its total grew, until
+	 * the progress catches up, or 0 if not held.
+	 */
+	private double heldFraction;
+	/** Whether the progress has completed. */
+	private boolean completed;
+	/** Whether the dialog is iconified or hidden. */
+	private boolean hidden;
+	/** The latest status event waiting to be displayed on the EDT. */
+	private final AtomicReference<StatusEvent> pendingEvent = new AtomicReference<StatusEvent>();
+
+	/**
+	 * Constructs a <code>ProgressDialog</code> specifying the owner, the
+	 * progress monitor, and an optional cancel delegate.
+	 * 
+	 * @param owner
+	 *            the owner of the dialog
+	 * @param monitor
+	 *            the progress monitor
+	 * @param cancelDelegate
+	 *            the cancel delegate (<code>null</code> permitted)
+	 * @throws HeadlessException
+	 *             if <code>GraphicsEnvironment.isHeadless()</code> returns
+	 *             <code>true</code>
+	 * @see #ProgressDialog(Frame, String, AbstractProgressMonitor,
+	 *      CancelHandler)
+	 */
+	public ProgressDialog(Frame owner, AbstractProgressMonitor monitor,
+			CancelHandler cancelDelegate) throws HeadlessException {
+		this(owner, i18ln.getString("defaultDialogTitle"), monitor,
+				cancelDelegate);
+	}
+
+	/**
+	 * Constructs a <code>ProgressDialog</code> specifying the owner, the
+	 * dialog's title, the progress monitor, and an optional cancel delegate.
+	 * 
+	 * @param owner
+	 *            the owner of the dialog
+	 * @param title
+	 *            the <code>String</code> to display in the dialog's title bar
+	 * @param monitor
+	 *            the progress monitor
+	 * @param cancelDelegate
+	 *            the cancel delegate (<code>null</code> permitted)
+	 * @throws HeadlessException
+	 *             if <code>GraphicsEnvironment.isHeadless()</code> returns
+	 *             <code>true</code>
+	 */
+	public ProgressDialog(Frame owner, String title,
+			AbstractProgressMonitor monitor, CancelHandler cancelDelegate)
+			throws HeadlessException {
+		super(owner, title, true);
+		this.cancelDelegate = cancelDelegate;
+		init(monitor);
+	}
+
+	/**
+	 * Constructs a <code>ProgressDialog</code> specifying the owner, the
+	 * progress monitor, and an optional cancel delegate.
+	 * 
+	 * @param owner
+	 *            the owner of the dialog
+	 * @param monitor
+	 *            the progress monitor
+	 * @param cancelDelegate
+	 *            the cancel delegate (<code>null</code> permitted)
+	 * @throws HeadlessException
+	 *             if <code>GraphicsEnvironment.isHeadless()</code> returns
+	 *             <code>true</code>
+	 * @see #ProgressDialog(Dialog, String, AbstractProgressMonitor,
+	 *      CancelHandler)
+	 */
+	public ProgressDialog(Dialog owner, AbstractProgressMonitor monitor,
+			CancelHandler cancelDelegate) throws HeadlessException {
+		this(owner, i18ln.getString("defaultDialogTitle"), monitor,
+				cancelDelegate);
+	}
+
+	/**
+	 * Constructs a <code>ProgressDialog</code> specifying the owner, the
+	 * dialog's title, the progress monitor, and an optional cancel delegate.
+	 * 
+	 * @param owner
+	 *            the owner of the dialog
+	 * @param title
+	 *            the <code>String</code> to display in the dialog's title bar
+	 * @param monitor
+	 *            the progress monitor
+	 * @param cancelDelegate
+	 *            the cancel delegate (<code>null</code> permitted)
+	 * @throws HeadlessException
+	 *             if <code>GraphicsEnvironment.isHeadless()</code> returns
+	 *             <code>true</code>
+	 */
+	public ProgressDialog(Dialog owner, String title,
+			AbstractProgressMonitor monitor, CancelHandler cancelDelegate)
+			throws HeadlessException {
+		super(owner, title);
+		this.cancelDelegate = cancelDelegate;
+		init(monitor);
+	}
+
+	private void init(AbstractProgressMonitor monitor) {
+		this.monitor = monitor;
+		this.autoCloseOnCancel = true;
+		this.autoCloseOnComplete = true;
+
+		if (monitor instanceof DeterminateProgressMonitor) {
+			DeterminateProgressMonitor dMonitor = (DeterminateProgressMonitor) monitor;
+			progressBar = new ProgressBar(dMonitor.getMin(), dMonitor.getMax());
+			progressBar.setValue(dMonitor.getCurrent());
+			if (!dMonitor.isTotalKnown()) {
+				counting = true;
+				progressBar.setIndeterminate(true);
+			}
+		} else {
+			progressBar = new ProgressBar(0, 100);
+			progressBar.setIndeterminate(true);
+		}
+		refreshTimer = new Timer(REFRESH_MILLIS, new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				updateEstimate();
+				updateDetails();
+			}
+		});
+		refreshTimer.start();
+
+		getContentPane().setLayout(new BorderLayout());
+
+		GridBagConstraints c;
+		JPanel north = new JPanel(new GridBagLayout());
+
+		statusHistory = new JTextArea();
+		collapsePane = new JXCollapsiblePane();
+		collapsePane.setLayout(new BorderLayout());
+		collapsePane.setCollapsed(true);
+		collapsePane.add(new JScrollPane(statusHistory), BorderLayout.CENTER);
+		detailsPanel = new JPanel();
+		detailsPanel.setLayout(new BoxLayout(detailsPanel, BoxLayout.Y_AXIS));
+		latencyLabel = new JLabel();
+		latencyLabel.setVisible(false);
+		detailsPanel.add(latencyLabel);
+		displayLatencyLabel = new JLabel();
+		displayLatencyLabel.setVisible(false);
+		detailsPanel.add(displayLatencyLabel);
+		if (monitor instanceof DeterminateProgressMonitor) {
+			throughput = new ThroughputSeries(
+					(DeterminateProgressMonitor) monitor);
+			throughputLabel = new JLabel();
+			throughputLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+			detailsPanel.add(throughputLabel);
+			sparkline = new Sparkline(throughput);
+			sparkline.setAlignmentX(Component.LEFT_ALIGNMENT);
+			detailsPanel.add(sparkline);
+			throughput.start();
+		}
+		collapsePane.add(detailsPanel, BorderLayout.SOUTH);
+
+		c = new GridBagConstraints(0, 0, 1, 1, 0.0, 1.0,
+				GridBagConstraints.NORTHWEST, GridBagConstraints.BOTH,
+				new Insets(2, 2, 2, 2), 0, 0);
+		statusLabel = new JLabel();
+		north.add(statusLabel, c);
+		c = new GridBagConstraints(0, 1, 1, 1, 0.0, 0.0,
+				GridBagConstraints.NORTHWEST, GridBagConstraints.BOTH,
+				new Insets(2, 2, 2, 2), 0, 0);
+		north.add(progressBar, c);
+
+		AbstractAction detailsAction = (AbstractAction) collapsePane
+				.getActionMap().get(JXCollapsiblePane.TOGGLE_ACTION);
+		detailsAction.putValue(AbstractAction.NAME,
+				i18ln.getString("detailsButton"));
+		detailsAction.putValue(
+				JXCollapsiblePane.COLLAPSE_ICON,
+				Utils.imageIcon(R.png("collapse.png"),
+						ProgressDialog.class.getClassLoader()));
+		detailsAction.putValue(
+				JXCollapsiblePane.EXPAND_ICON,
+				Utils.imageIcon(R.png("expand.png"),
+						ProgressDialog.class.getClassLoader()));
+		JButton collapseButton = new JButton(detailsAction);
+
+		JPanel horizPanel = new JPanel(new GridBagLayout());
+		c = new GridBagConstraints(0, 0, 1, 1, 0.0, 0.0,
+				GridBagConstraints.NORTHWEST, GridBagConstraints.BOTH,
+				new Insets(2, 2, 2, 2), 0, 0);
+		horizPanel.add(collapseButton, c);
+		c = new GridBagConstraints(1, 0, 1, 1, 1.0, 1.0,
+				GridBagConstraints.BASELINE, GridBagConstraints.BOTH,
+				new Insets(2, 2, 2, 2), 0, 0);
+		horizPanel.add(new JSeparator(), c);
+
+		if (isCancelable()) {
+			cancelButton = new JButton(new AbstractAction(
+					i18ln.getString("cancelButton")) {
+
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					// the cancel button is dual purposed. Once the progress has
+					// completed it turns into a close button, and this logic is
+					// implemented here.
+					if (getTitle().equals(i18ln.getString("closeButton"))) {
+						dispose();
+					} else {
+						ProgressDialog.this.monitor.cancel();
+					}
+				}
+			});
+			c = new GridBagConstraints(2, 0, 1, 1, 0.0, 0.0,
+					GridBagConstraints.NORTHWEST, GridBagConstraints.BOTH,
+					new Insets(2, 2, 2, 2), 0, 0);
+			horizPanel.add(cancelButton, c);
+		}
+		c = new GridBagConstraints(0, 2, 1, 1, 1.0, 0.0,
+				GridBagConstraints.NORTHWEST, GridBagConstraints.BOTH,
+				new Insets(2, 2, 2, 2), 0, 0);
+		north.add(horizPanel, c);
+
+		// add Progress components and the Collapsable Details
+		// c = new GridBagConstraints(0, 0, 1, 1, 1.0, 0.0,
+		// GridBagConstraints.NORTHWEST, GridBagConstraints.BOTH,
+		// new Insets(2, 2, 2, 2), 0, 0);
+		getContentPane().add(north, BorderLayout.NORTH);
+		// c = new GridBagConstraints(0, 1, 1, 1, 1.0, 1.0,
+		// GridBagConstraints.NORTHWEST, GridBagConstraints.BOTH,
+		// new Insets(2, 2, 2, 2), 0, 0);
+		getContentPane().add(collapsePane, BorderLayout.CENTER);
+
+		// nothing is animated while the user cannot see it
+		addWindowListener(new WindowAdapter() {
+
+			@Override
+			public void windowIconified(WindowEvent e) {
+				setHidden(true);
+			}
+
+			@Override
+			public void windowDeiconified(WindowEvent e) {
+				setHidden(false);
+			}
+		});
+		addComponentListener(new ComponentAdapter() {
+
+			@Override
+			public void componentHidden(ComponentEvent e) {
+				setHidden(true);
+			}
+
+			@Override
+			public void componentShown(ComponentEvent e) {
+				setHidden(false);
+			}
+		});
+
+		setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+		registration = monitor.registerWeakListener(this);
+	}
+
+	/**
+	 * Allows derived classes to customize how the dialog decides whether or not
+	 * the progress is cancelable.
+	 * <p>
+	 * The default implementation decides by whether the cancel delegate is
+	 * <code>null</code> or not.
+	 * 
+	 * @return <code>true</code> if the progress is cancelable, else
+	 *         <code>false</code> if not cancelable
+	 */
+	protected boolean isCancelable() {
+		return cancelDelegate != null;
+	}
+
+	/**
+	 * Sets whether to automatically close the dialog if the progress has been
+	 * canceled.
+	 * 
+	 * @param autoCloseOnCancel
+	 *            <code>true</code> to automatically close the dialog, or
+	 *            <code>false</code> to leave open
+	 */
+	public void setAutoCloseOnCancel(boolean autoCloseOnCancel) {
+		this.autoCloseOnCancel = autoCloseOnCancel;
+	}
+
+	/**
+	 * Sets whether to automatically close the dialog once the progress has
+	 * completed.
+	 * 
+	 * @param autoCloseOnComplete
+	 *            <code>true</code> to automatically close the dialog, or
+	 *            <code>false</code> to leave open
+	 */
+	public void setAutoCloseOnComplete(boolean autoCloseOnComplete) {
+		this.autoCloseOnComplete = autoCloseOnComplete;
+	}
+
+	/**
+	 * Sets the latest status of the progress. This updates the status label on
+	 * the dialog and pushes the previous status to the status history text
+	 * area.
+	 * <p>
+	 * If <code>status</code> is <code>null</code> the status label is cleared.
+	 * The status history will be appended only if the previous status is not
+	 * <code>null</code> and the previous status is not equal to
+	 * <code>status</code>.
+	 * 
+	 * @param status
+	 *            the latest status
+	 */
+	public void updateStatus(String status) {
+		previousStatus = statusLabel.getText();
+		statusLabel.setText(status);
+		if (previousStatus != null && !previousStatus.equals(status)) {
+			statusHistory.append(String.format("%s%n", previousStatus));
+		}
+	}
+
+	/**
+	 * Updates the status label with the status event text. If the dialog's
+	 * progress monitor is a {@link DeterminateProgressMonitor} the progress bar
+	 * is synced with the status event's values.
+	 * <p>
+	 * While the total of a determinate monitor is not known, the progress bar
+	 * is indeterminate and displays the work counted so far. Once the total is
+	 * known, a total which still grows holds the progress bar until the
+	 * progress catches up, rather than moving it backwards.
+	 * <p>
+	 * If the progress is completed and the auto-close on complete feature is
+	 * enabled, the dialog is disposed. If the progress is completed and the
+	 * auto-close on complete feature is disabled, the cancel button is changed
+	 * to a close button and the default close operation of the dialog is set to
+	 * dispose.
+	 * <p>
+	 * Events fired off the EDT faster than the EDT can display them are
+	 * coalesced, and only the latest is displayed. The status text of the
+	 * skipped events is never read, so it is never built.
+	 * <p>
+	 * If the monitor has a {@link DisplayLatencyProbe}, the time each update
+	 * waits for the EDT, and the time from updating the monitor to painting
+	 * the progress bar, are recorded in the probe.
+	 * 
+	 * @param e
+	 *            the status event
+	 * @see #updateStatus(String)
+	 */
+	@Override
+	public void statusChanged(final StatusEvent e) {
+		// to ensure EDT thread
+		if (!SwingUtilities.isEventDispatchThread()) {
+			StatusEvent pending;
+			do {
+				pending = pendingEvent.get();
+				// a pending completion must not be replaced
+				if (pending != null && pending.isCompleted()) {
+					return;
+				}
+			} while (!pendingEvent.compareAndSet(pending, e));
+			if (pending == null) {
+				final DisplayLatencyProbe probe = getDisplayLatencyProbe();
+				final long posted = probe == null ? 0 : System.nanoTime();
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (probe != null) {
+							probe.recordQueueDelay(System.nanoTime() - posted);
+						}
+						StatusEvent latest = pendingEvent.getAndSet(null);
+						if (latest != null) {
+							statusChanged(latest);
+						}
+					}
+				});
+			}
+			return;
+		}
+		// identical text is neither redisplayed nor added to the history
+		String text = e.getText();
+		String displayed = statusLabel.getText();
+		if (text == null ? displayed != null : !text.equals(displayed)) {
+			updateStatus(text);
+		}
+		if (monitor instanceof DeterminateProgressMonitor) {
+			DeterminateProgressMonitor dMonitor = (DeterminateProgressMonitor) monitor;
+			// the time is read first, so a newer value is never credited to
+			// an older update
+			DisplayLatencyProbe probe = dMonitor.getDisplayLatencyProbe();
+			long updated = probe == null || hidden ? 0 : dMonitor
+					.getUpdateNanos();
+			progressBar.probe = probe;
+			int min = dMonitor.getMin();
+			int max = dMonitor.getMax();
+			int current = dMonitor.getCurrent();
+			if (counting != !dMonitor.isTotalKnown()) {
+				counting = !counting;
+				heldFraction = 0;
+				updateAnimation();
+				progressBar.setStringPainted(counting || stalled);
+			}
+			if (counting) {
+				if (!stalled) {
+					progressBar.setString(String.format(
+							i18ln.getString("countingText"), current - min,
+							(long) max - min));
+					progressBar.awaitPaint(updated);
+				}
+			} else {
+				if (max > progressBar.getMaximum()
+						&& progressBar.getMaximum() > progressBar.getMinimum()) {
+					// the total grew, hold the bar where it is
+					heldFraction = Math.max(heldFraction,
+							progressBar.getPercentComplete());
+				}
+				// sync the min and max values with the monitor
+				if (progressBar.getMinimum() != min) {
+					progressBar.setMinimum(min);
+				}
+				if (progressBar.getMaximum() != max) {
+					progressBar.setMaximum(max);
+				}
+				long range = (long) max - min;
+				if (heldFraction > 0 && range > 0) {
+					if (current - min < heldFraction * range) {
+						current = min + (int) Math.ceil(heldFraction * range);
+					} else {
+						heldFraction = 0;
+					}
+				}
+				progressBar.setVisibleValue(current, updated);
+			}
+		}
+		// automatically close if feature enabled
+		if (e.isCompleted()) {
+			// regardless of whether the monitor is determinate or
+			// indeterminate, we need to stop the progress monitor and force it
+			// to the max value to notify the user that the progress has
+			// finished
+			refreshTimer.stop();
+			updateDetails();
+			completed = true;
+			updateAnimation();
+			progressBar.setStringPainted(false);
+			progressBar.setValue(progressBar.getMaximum());
+			if (autoCloseOnComplete) {
+				dispose();
+			} else {
+				setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+				if (cancelButton != null) {
+					cancelButton.setText(i18ln.getString("closeButton"));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Displays the estimated progress of an indeterminate monitor which has a
+	 * duration history. The progress bar stays indeterminate until an estimate
+	 * is available.
+	 * 
+	 * @see IndeterminateProgressMonitor#getEstimate()
+	 */
+	protected void updateEstimate() {
+		if (stalled || !(monitor instanceof IndeterminateProgressMonitor)) {
+			return;
+		}
+		DurationEstimate estimate = ((IndeterminateProgressMonitor) monitor)
+				.getEstimate();
+		if (estimate == null) {
+			return;
+		}
+		if (!estimating) {
+			estimating = true;
+			updateAnimation();
+			progressBar.setMinimum(0);
+			progressBar.setMaximum(ESTIMATE_RESOLUTION);
+			progressBar.setStringPainted(true);
+		}
+		progressBar.setVisibleValue(
+				(int) (estimate.getFraction() * ESTIMATE_RESOLUTION), 0);
+		progressBar.setString(String.format(i18ln.getString("estimateText"),
+				Math.round(estimate.getFraction() * 100),
+				Utils.formatDuration(estimate.getRemainingMillis())));
+	}
+
+	/**
+	 * Displays that the progress has stalled on the progress bar. An
+	 * indeterminate progress bar stops animating so a hung task no longer
+	 * looks like a slow one.
+	 * 
+	 * @param e
+	 *            the stall event
+	 */
+	@Override
+	public void stalled(final StallEvent e) {
+		// to ensure EDT thread
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					stalled(e);
+				}
+			});
+			return;
+		}
+		if (e.getSource() != monitor || monitor.isFinished()) {
+			return;
+		}
+		stalled = true;
+		updateAnimation();
+		progressBar.setStringPainted(true);
+		progressBar.setString(String.format(i18ln.getString("stalledText"),
+				Utils.formatDuration(e.getIdleMillis())));
+	}
+
+	/**
+	 * Restores the progress bar once a stalled progress resumes.
+	 * 
+	 * @param e
+	 *            the stall event
+	 */
+	@Override
+	public void resumed(final StallEvent e) {
+		// to ensure EDT thread
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					resumed(e);
+				}
+			});
+			return;
+		}
+		if (!stalled || monitor.isFinished()) {
+			return;
+		}
+		stalled = false;
+		progressBar.setStringPainted(estimating || counting);
+		updateAnimation();
+		updateEstimate();
+	}
+
+	/**
+	 * Sets whether the dialog is iconified or hidden. While hidden, the
+	 * indeterminate progress bar animation and the estimate refreshing are
+	 * paused.
+	 */
+	private void setHidden(boolean hidden) {
+		if (this.hidden == hidden) {
+			return;
+		}
+		this.hidden = hidden;
+		updateAnimation();
+		// an update waiting to be painted while hidden is not a display lag
+		progressBar.awaitPaint(0);
+		if (!completed) {
+			if (hidden) {
+				refreshTimer.stop();
+			} else {
+				refreshTimer.start();
+			}
+		}
+	}
+
+	/**
+	 * Animates the progress bar only while the progress is indeterminate or its
+	 * total is being counted, has not stalled, and can be seen. The
+	 * indeterminate animation repaints the progress bar continuously, so it is
+	 * stopped whenever it is not useful.
+	 */
+	private void updateAnimation() {
+		boolean animate = (monitor instanceof IndeterminateProgressMonitor
+				&& !estimating || counting)
+				&& !stalled && !completed && !hidden;
+		if (progressBar.isIndeterminate() != animate) {
+			progressBar.setIndeterminate(animate);
+		}
+	}
+
+	/**
+	 * Updates the statistics in the details pane, while it is expanded.
+	 * <p>
+	 * For a {@link DeterminateProgressMonitor} with a
+	 * {@link LatencyHistogram}, the percentiles of the per item latency are
+	 * displayed, and with a {@link DisplayLatencyProbe}, the percentiles of
+	 * the display latency and the EDT queue delay. For any
+	 * {@link DeterminateProgressMonitor}, the sparkline of its throughput is
+	 * repainted.
+	 */
+	protected void updateDetails() {
+		if (collapsePane.isCollapsed()) {
+			return;
+		}
+		LatencyHistogram histogram = monitor instanceof DeterminateProgressMonitor ? ((DeterminateProgressMonitor) monitor)
+				.getLatencyHistogram() : null;
+		latencyLabel.setVisible(histogram != null);
+		if (histogram != null) {
+			latencyLabel.setText(String.format(
+					i18ln.getString("latencyText"),
+					Utils.formatNanos(histogram.getValueAtPercentile(50)),
+					Utils.formatNanos(histogram.getValueAtPercentile(99)),
+					Utils.formatNanos(histogram.getValueAtPercentile(99.9)),
+					Utils.formatNanos(histogram.getMax())));
+		}
+		if (throughput != null) {
+			throughputLabel.setText(String.format(
+					i18ln.getString("throughputText"),
+					throughput.getLatestRate(),
+					throughput.getColumns().getPeak()));
+			sparkline.repaint();
+		}
+		DisplayLatencyProbe probe = getDisplayLatencyProbe();
+		displayLatencyLabel.setVisible(probe != null);
+		if (probe != null) {
+			LatencyHistogram display = probe.getDisplayLatency();
+			LatencyHistogram queue = probe.getQueueDelay();
+			displayLatencyLabel.setText(String.format(
+					i18ln.getString("displayLatencyText"),
+					Utils.formatNanos(display.getValueAtPercentile(50)),
+					Utils.formatNanos(display.getValueAtPercentile(99)),
+					Utils.formatNanos(display.getMax()),
+					Utils.formatNanos(queue.getValueAtPercentile(50)),
+					Utils.formatNanos(queue.getValueAtPercentile(99))));
+		}
+	}
+
+	/** Returns the display latency probe of the monitor, if any. */
+	private DisplayLatencyProbe getDisplayLatencyProbe() {
+		return monitor instanceof DeterminateProgressMonitor ? ((DeterminateProgressMonitor) monitor)
+				.getDisplayLatencyProbe() : null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Also stops refreshing the estimated progress and details, and detaches
+	 * the dialog from the monitor.
+	 */
+	@Override
+	public void dispose() {
+		refreshTimer.stop();
+		if (throughput != null) {
+			throughput.stop();
+		}
+		registration.close();
+		super.dispose();
+	}
+
+	/**
+	 * Calls the {@link CancelHandler} delegate, if any, on the thread which
+	 * canceled the progress. If the auto-close on cancel feature is enabled,
+	 * the dialog is disposed, else the reason for canceling is displayed.
+	 * <p>
+	 * A monitor may be canceled off the EDT, such as by a deadline, in which
+	 * case the dialog is updated on the EDT.
+	 * 
+	 * @param e
+	 *            the status event
+	 */
+	@Override
+	public void canceled(final StatusEvent e) {
+		if (cancelDelegate != null) {
+			cancelDelegate.canceled();
+		}
+		Runnable close = new Runnable() {
+			public void run() {
+				if (autoCloseOnCancel) {
+					dispose();
+				} else if (e.getText() != null) {
+					updateStatus(e.getText());
+				}
+			}
+		};
+		if (SwingUtilities.isEventDispatchThread()) {
+			close.run();
+		} else {
+			SwingUtilities.invokeLater(close);
+		}
+	}
+
+	/**
+	 * Draws the throughput of a {@link ThroughputSeries} over the whole run,
+	 * one column per pixel, from the lowest to the highest throughput within
+	 * the column. The series is downsampled to the width off the EDT, so
+	 * painting only costs the width.
+	 */
+	private static class Sparkline extends JComponent {
+
+		private final ThroughputSeries series;
+
+		Sparkline(ThroughputSeries series) {
+			this.series = series;
+			setPreferredSize(new Dimension(200, 32));
+			setMaximumSize(new Dimension(Integer.MAX_VALUE, 32));
+			addComponentListener(new ComponentAdapter() {
+
+				@Override
+				public void componentResized(ComponentEvent e) {
+					Insets insets = getInsets();
+					Sparkline.this.series.setColumnCount(getWidth()
+							- insets.left - insets.right);
+				}
+			});
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			super.paintComponent(g);
+			ThroughputSeries.Columns columns = series.getColumns();
+			Insets insets = getInsets();
+			int width = Math.min(columns.getCount(), getWidth() - insets.left
+					- insets.right);
+			int height = getHeight() - insets.top - insets.bottom - 1;
+			float peak = columns.getPeak();
+			if (width <= 0 || height <= 0 || peak <= 0) {
+				return;
+			}
+			g.setColor(getForeground());
+			int bottom = insets.top + height;
+			for (int x = 0; x < width; x++) {
+				int low = (int) (Math.max(0, columns.getMin(x)) * height / peak);
+				int high = (int) (columns.getMax(x) * height / peak);
+				g.drawLine(insets.left + x, bottom - low, insets.left + x,
+						bottom - high);
+			}
+		}
+	}
+
+	/**
+	 * A progress bar which only repaints what changed. A new value which does
+	 * not move the filled part of the bar by a whole pixel is skipped, and a
+	 * value which does only repaints the pixels between the old and new end of
+	 * the filled part.
+	 * <p>
+	 * With a {@link DisplayLatencyProbe}, an update is recorded as displayed
+	 * once it is painted, or at once if it does not change what is painted.
+	 */
+	private static class ProgressBar extends JProgressBar {
+
+		/** The probe of the monitor displayed, or <code>null</code>. */
+		DisplayLatencyProbe probe;
+		/** The time of the latest update not yet painted, or 0 if none. */
+		private long unpaintedNanos;
+
+		/** Whether a repaint is due to setting a visible value. */
+		private boolean valueChanging;
+		/** The end of the filled part when last painted, or -1 if unknown. */
+		private int paintedPixel = -1;
+
+		ProgressBar(int min, int max) {
+			super(min, max);
+		}
+
+		/**
+		 * Sets the value unless the filled part of the bar would not change
+		 * by a whole pixel.
+		 * 
+		 * @param updateNanos
+		 *            the time of the update of the value, or 0 if not probed
+		 */
+		void setVisibleValue(int value, long updateNanos) {
+			boolean unchanged = value == getValue();
+			if (!unchanged && !isIndeterminate() && !isStringPainted()) {
+				int pixel = fillPixel(value);
+				unchanged = pixel >= 0 && pixel == fillPixel(getValue());
+			}
+			if (unchanged) {
+				if (unpaintedNanos != 0 || updateNanos == 0) {
+					// displayed by the pending paint
+					awaitPaint(updateNanos);
+				} else {
+					probe.recordDisplayed(updateNanos);
+				}
+				return;
+			}
+			awaitPaint(updateNanos);
+			valueChanging = true;
+			try {
+				setValue(value);
+			} finally {
+				valueChanging = false;
+			}
+		}
+
+		/**
+		 * Returns the pixel the filled part of the bar ends at for
+		 * <code>value</code>, or -1 if it cannot be determined.
+		 */
+		private int fillPixel(int value) {
+			if (getOrientation() != HORIZONTAL
+					|| !getComponentOrientation().isLeftToRight()) {
+				return -1;
+			}
+			Insets insets = getInsets();
+			int width = getWidth() - insets.left - insets.right;
+			long range = (long) getMaximum() - getMinimum();
+			if (width <= 0 || range <= 0) {
+				return -1;
+			}
+			long filled = Math.max(0, Math.min(range, (long) value - getMinimum()));
+			return insets.left + (int) (filled * width / range);
+		}
+
+		@Override
+		public void repaint(long tm, int x, int y, int width, int height) {
+			if (valueChanging && !isIndeterminate() && !isStringPainted()
+					&& paintedPixel >= 0) {
+				int pixel = fillPixel(getValue());
+				if (pixel >= 0) {
+					// the margin covers borders and rounded ends drawn by the
+					// look and feel around the end of the filled part
+					int margin = getHeight();
+					int from = Math.max(0, Math.min(pixel, paintedPixel) - margin);
+					int to = Math.min(getWidth(),
+							Math.max(pixel, paintedPixel) + margin);
+					super.repaint(tm, from, 0, to - from, getHeight());
+					return;
+				}
+			}
+			super.repaint(tm, x, y, width, height);
+		}
+
+		/**
+		 * Records the update as displayed once the bar is next painted.
+		 * 
+		 * @param updateNanos
+		 *            the time of the update, or 0 to record none
+		 */
+		void awaitPaint(long updateNanos) {
+			if (updateNanos != 0 || unpaintedNanos != 0) {
+				unpaintedNanos = updateNanos;
+			}
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			super.paintComponent(g);
+			if (unpaintedNanos != 0 && probe != null) {
+				probe.recordDisplayed(unpaintedNanos);
+				unpaintedNanos = 0;
+			}
+			paintedPixel = isIndeterminate() || isStringPainted() ? -1
+					: fillPixel(getValue());
+		}
+	}
+}
\ No newline at end of file
@@ -1,4 +1,4 @@
-package usr.erichschroeter.progressive;
+package usr.erichschroeter.progressive.swing;
 
 import java.awt.Component;
 import java.awt.Dialog;
@@ -11,6 +11,15 @@ import java.util.ResourceBundle;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
+import usr.erichschroeter.progressive.AbstractProgressMonitor;
+import usr.erichschroeter.progressive.CancelHandler;
+import usr.erichschroeter.progressive.DeterminateProgressMonitor;
+import usr.erichschroeter.progressive.IndeterminateProgressMonitor;
+import usr.erichschroeter.progressive.ListenerRegistration;
+import usr.erichschroeter.progressive.MonitorRegistry;
+import usr.erichschroeter.progressive.ProgressListener;
+import usr.erichschroeter.progressive.StatusEvent;
+
 /**
  * Utility class which providing methods for creating progress monitors. The
  * progress monitors created via this utility use a custom
@@ -22,9 +31,37 @@ import javax.swing.Timer;
 public class ProgressUtil {
 
 	protected static final ResourceBundle i18ln = ResourceBundle
-			.getBundle("usr.erichschroeter.progressive.i18ln.ProgressDialog");
+			.getBundle("usr.erichschroeter.progressive.swing.i18ln.ProgressDialog");
+
+	/** The registry the created monitors are registered in, if any. */
+	private static volatile MonitorRegistry registry;
 
-	/** Custom progress listener to handle displaying a dialog. */
+	/**
+	 * Sets the registry the monitors created from now on are registered in,
+	 * tagged with the title of their dialog. By default monitors are not
+	 * registered.
+	 * 
+	 * @param registry
+	 *            the registry, or <code>null</code> to stop registering
+	 */
+	public static void setMonitorRegistry(MonitorRegistry registry) {
+		ProgressUtil.registry = registry;
+	}
+
+	/** Registers the monitor, if a registry is set. */
+	private static void register(AbstractProgressMonitor monitor, String title) {
+		MonitorRegistry r = registry;
+		if (r != null) {
+			r.register(monitor, title == null ? new String[0]
+					: new String[] { title });
+		}
+	}
+
+	/**
+	 * Custom progress listener to handle displaying a dialog. The listener is
+	 * registered until the monitor finishes, and detaches itself once the
+	 * dialog is displayed and takes over.
+	 */
 	static class MonitorListener implements ProgressListener, ActionListener {
 
 		AbstractProgressMonitor monitor;
@@ -33,6 +70,7 @@ public class ProgressUtil {
 		Timer timer;
 		CancelHandler cancelDelegate;
 		ProgressDialog dlg;
+		ListenerRegistration registration;
 
 		public MonitorListener(Window owner, String title,
 				AbstractProgressMonitor monitor, CancelHandler handler) {
@@ -44,59 +82,48 @@ public class ProgressUtil {
 
 		@Override
 		public void statusChanged(StatusEvent e) {
-			AbstractProgressMonitor monitor = (AbstractProgressMonitor) e
-					.getSource();
-			if (monitor instanceof DeterminateProgressMonitor) {
-				DeterminateProgressMonitor dMonitor = (DeterminateProgressMonitor) monitor;
-				if (dMonitor.getCurrent() != dMonitor.getMax()) {
-					if (timer == null) {
-						timer = new Timer(monitor.getMilliSecondsToWait(), this);
-						timer.setRepeats(false);
-						timer.start();
-					}
-				} else {
-					if (timer != null && timer.isRunning())
-						timer.stop();
-					monitor.removeProgressListener(this);
-				}
-			} else {
-				if (timer == null) {
-					timer = new Timer(monitor.getMilliSecondsToWait(), this);
-					timer.setRepeats(false);
-					timer.start();
-				} else {
-					if (timer != null && timer.isRunning())
-						timer.stop();
-					monitor.removeProgressListener(this);
+			if (e.isCompleted()) {
+				// finished before the dialog was displayed
+				if (timer != null) {
+					timer.stop();
 				}
+			} else if (timer == null) {
+				timer = new Timer(monitor.getMilliSecondsToWait(), this);
+				timer.setRepeats(false);
+				timer.start();
 			}
 		}
 
 		@Override
 		public void canceled(StatusEvent e) {
-			String cancelText = e.getText();
-			if (cancelText == null) {
-				cancelText = i18ln.getString("defaultCanceledText");
+			// canceled before the dialog was displayed, which would otherwise
+			// have called the delegate
+			if (timer != null) {
+				timer.stop();
+			}
+			if (cancelDelegate != null) {
+				cancelDelegate.canceled();
 			}
-			dlg.updateStatus(cancelText);
-			cancelDelegate.canceled();
-
-			dlg.setVisible(false);
-			dlg.dispose();
 		}
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			monitor.removeProgressListener(this);
+			registration.close();
+			if (monitor.isFinished()) {
+				return;
+			}
 			dlg = owner instanceof Frame ? new ProgressDialog((Frame) owner,
 					title, monitor, cancelDelegate) : new ProgressDialog(
 					(Dialog) owner, title, monitor, cancelDelegate);
-			monitor.addProgressListener(dlg);
 			dlg.pack();
 			dlg.setLocationRelativeTo(null);
 			dlg.setVisible(true);
 		}
 
+		/** Registers the listener with its monitor. */
+		void register() {
+			registration = monitor.registerProgressListener(this);
+		}
 	}
 
 	/**
@@ -130,8 +157,8 @@ public class ProgressUtil {
 		Window window = owner instanceof Window ? (Window) owner
 				: (owner != null ? SwingUtilities.getWindowAncestor(owner)
 						: null);
-		monitor.addProgressListener(new MonitorListener(window, title, monitor,
-				cancelDelegate));
+		new MonitorListener(window, title, monitor, cancelDelegate).register();
+		register(monitor, title);
 		return monitor;
 	}
 
@@ -160,8 +187,8 @@ public class ProgressUtil {
 		Window window = owner instanceof Window ? (Window) owner
 				: (owner != null ? SwingUtilities.getWindowAncestor(owner)
 						: null);
-		monitor.addProgressListener(new MonitorListener(window, title, monitor,
-				cancelDelegate));
+		new MonitorListener(window, title, monitor, cancelDelegate).register();
+		register(monitor, title);
 		return monitor;
 	}
 
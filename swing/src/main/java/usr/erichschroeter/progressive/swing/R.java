@@ -1,15 +1,15 @@
-package usr.erichschroeter.progressive;
+package usr.erichschroeter.progressive.swing;
 
 /**
  * The <code>R</code> class contains methods for specifying resources in the
- * <code>usr.erichschroeter.progressive</code> package.
+ * <code>usr.erichschroeter.progressive.swing</code> package.
  * 
  * @author Erich Schroeter
  */
 class R {
 
 	/** The root package resources are located in. */
-	public static final String resourcePackage = "usr/erichschroeter/progressive";
+	public static final String resourcePackage = "usr/erichschroeter/progressive/swing";
 
 	/**
 	 * Returns the resource string that refers to the <code>resource</code> file
@@ -1,4 +1,4 @@
-package usr.erichschroeter.progressive;
+package usr.erichschroeter.progressive.swing;
 
 import java.io.IOException;
 
@@ -45,4 +45,40 @@ class Utils {
 		return icon;
 	}
 
+	/**
+	 * Returns <code>millis</code> formatted as <code>h:mm:ss</code>, or
+	 * <code>m:ss</code> for durations under an hour.
+	 * 
+	 * @param millis
+	 *            the duration in milliseconds
+	 * @return the formatted duration
+	 */
+	public static String formatDuration(long millis) {
+		long seconds = Math.max(0, (millis + 999) / 1000);
+		if (seconds >= 3600) {
+			return String.format("%d:%02d:%02d", seconds / 3600,
+					(seconds / 60) % 60, seconds % 60);
+		}
+		return String.format("%d:%02d", seconds / 60, seconds % 60);
+	}
+
+	/**
+	 * Returns <code>nanos</code> formatted in the most readable unit, such as
+	 * <code>850 ns</code>, <code>1.2 ms</code>, or <code>4.0 s</code>.
+	 * 
+	 * @param nanos
+	 *            the duration in nanoseconds
+	 * @return the formatted duration
+	 */
+	public static String formatNanos(long nanos) {
+		if (nanos < 1000L) {
+			return String.format("%d ns", nanos);
+		} else if (nanos < 1000000L) {
+			return String.format("%.1f \u00b5s", nanos / 1e3);
+		} else if (nanos < 1000000000L) {
+			return String.format("%.1f ms", nanos / 1e6);
+		}
+		return String.format("%.1f s", nanos / 1e9);
+	}
+
 }